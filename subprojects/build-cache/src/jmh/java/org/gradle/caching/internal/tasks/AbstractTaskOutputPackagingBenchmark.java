@@ -55,6 +55,8 @@ public abstract class AbstractTaskOutputPackagingBenchmark {
         .put("tar.small", new AntTarPacker(2))
         .put("tar.large", new AntTarPacker(64))
         .put("tar.gz", new GzipPacker(new AntTarPacker(4)))
+        .put("tar.gz.parallel", new ParallelGzipPacker(new AntTarPacker(4), Runtime.getRuntime().availableProcessors(), 1024 * 1024))
+        .put("tar.gz.parallel.small", new ParallelGzipPacker(new AntTarPacker(4), Runtime.getRuntime().availableProcessors(), 128 * 1024))
         .put("zip", new ZipPacker(4))
         .build();
 
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses independent blocks as separate GZIP members concurrently, using the same framing as {@code ParallelGZipTaskOutputPacker}.
+ */
+public class ParallelGzipPacker implements Packer {
+    private final Packer delegate;
+    private final int blockSize;
+    private final int maxBlocksInFlight;
+    private final ExecutorService executor;
+
+    public ParallelGzipPacker(Packer delegate, int parallelism, int blockSize) {
+        this.delegate = delegate;
+        this.blockSize = blockSize;
+        this.maxBlocksInFlight = parallelism * 2;
+        this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "parallel gzip packer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void pack(List<DataSource> inputs, DataTarget output) throws IOException {
+        delegate.pack(inputs, new DelegatingDataTarget(output) {
+            @Override
+            public OutputStream openOutput() throws IOException {
+                return new BlockCompressingOutputStream(super.openOutput());
+            }
+        });
+    }
+
+    @Override
+    public void unpack(DataSource input, DataTargetFactory targetFactory) throws IOException {
+        delegate.unpack(new DelegatingDataSource(input) {
+            @Override
+            public InputStream openInput() throws IOException {
+                return new BlockDecompressingInputStream(super.openInput());
+            }
+        }, targetFactory);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private class BlockCompressingOutputStream extends OutputStream {
+        private final DataOutputStream output;
+        private final Deque<Future<byte[]>> compressed = new ArrayDeque<Future<byte[]>>();
+        private final Deque<Integer> lengths = new ArrayDeque<Integer>();
+        private byte[] block = new byte[blockSize];
+        private int length;
+
+        BlockCompressingOutputStream(OutputStream output) {
+            this.output = new DataOutputStream(output);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                if (length == block.length) {
+                    submitBlock();
+                }
+                int chunk = Math.min(count, block.length - length);
+                System.arraycopy(bytes, offset, block, length, chunk);
+                length += chunk;
+                offset += chunk;
+                count -= chunk;
+            }
+        }
+
+        private void submitBlock() throws IOException {
+            if (compressed.size() >= maxBlocksInFlight) {
+                writeFrame();
+            }
+            final byte[] uncompressed = block;
+            final int uncompressedLength = length;
+            compressed.addLast(executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(uncompressedLength / 2 + 64);
+                    GZIPOutputStream gzipOutput = new GZIPOutputStream(bytes);
+                    gzipOutput.write(uncompressed, 0, uncompressedLength);
+                    gzipOutput.close();
+                    return bytes.toByteArray();
+                }
+            }));
+            lengths.addLast(uncompressedLength);
+            block = new byte[blockSize];
+            length = 0;
+        }
+
+        private void writeFrame() throws IOException {
+            byte[] frame = await(compressed.removeFirst());
+            output.writeInt(lengths.removeFirst());
+            output.writeInt(frame.length);
+            output.write(frame);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (length > 0) {
+                submitBlock();
+            }
+            while (!compressed.isEmpty()) {
+                writeFrame();
+            }
+            output.writeInt(0);
+            output.writeInt(0);
+            output.close();
+        }
+    }
+
+    private class BlockDecompressingInputStream extends InputStream {
+        private final DataInputStream input;
+        private final Deque<Future<byte[]>> decompressed = new ArrayDeque<Future<byte[]>>();
+        private boolean endOfFrames;
+        private byte[] block = new byte[0];
+        private int position;
+
+        BlockDecompressingInputStream(InputStream input) {
+            this.input = new DataInputStream(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            return read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (position == block.length) {
+                readAhead();
+                if (decompressed.isEmpty()) {
+                    return -1;
+                }
+                block = await(decompressed.removeFirst());
+                position = 0;
+            }
+            int chunk = Math.min(count, block.length - position);
+            System.arraycopy(block, position, bytes, offset, chunk);
+            position += chunk;
+            return chunk;
+        }
+
+        private void readAhead() throws IOException {
+            while (!endOfFrames && decompressed.size() < maxBlocksInFlight) {
+                final int uncompressedLength = input.readInt();
+                int compressedLength = input.readInt();
+                if (uncompressedLength == 0) {
+                    endOfFrames = true;
+                    return;
+                }
+                final byte[] frame = new byte[compressedLength];
+                input.readFully(frame);
+                decompressed.addLast(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        byte[] uncompressed = new byte[uncompressedLength];
+                        ByteStreams.readFully(new GZIPInputStream(new ByteArrayInputStream(frame)), uncompressed);
+                        return uncompressed;
+                    }
+                }));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
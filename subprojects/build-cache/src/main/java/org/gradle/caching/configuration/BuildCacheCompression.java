@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.configuration;
+
+import org.gradle.api.Incubating;
+
+/**
+ * The compression used for the entries that are stored in the build cache.
+ *
+ * <p>Entries record the compression they were stored with, so entries stored with any compression can be loaded regardless of the current setting.</p>
+ *
+ * @since 4.4
+ */
+@Incubating
+public enum BuildCacheCompression {
+    /**
+     * Compresses entries with GZIP. This produces the smallest entries, and is the default.
+     */
+    GZIP,
+
+    /**
+     * Compresses entries with the fastest deflate level. Entries are larger than with {@link #GZIP}, but take considerably less time to store and load.
+     */
+    FAST,
+
+    /**
+     * Stores entries without compression, only adding a checksum. This is useful when the build cache is on a fast local network, where packing time matters more than the size of the entries.
+     */
+    STORE
+}
@@ -115,4 +115,21 @@ public interface BuildCacheConfiguration {
      * @throws IllegalStateException If no remote cache has been assigned yet
      */
     void remote(Action<? super BuildCache> configuration);
+
+    /**
+     * Returns the compression used for entries stored in the build cache. Defaults to {@link BuildCacheCompression#GZIP}.
+     *
+     * @since 4.4
+     */
+    BuildCacheCompression getCompression();
+
+    /**
+     * Sets the compression used for entries stored in the build cache.
+     *
+     * <p>Entries that were stored with a different compression can still be loaded.</p>
+     *
+     * @param compression the compression to use.
+     * @since 4.4
+     */
+    void setCompression(BuildCacheCompression compression);
 }
@@ -43,6 +43,7 @@ import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.RunnableBuildOperation;
@@ -58,6 +59,9 @@ import java.io.InputStream;
 
 public class DefaultBuildCacheController implements BuildCacheController {
 
+    private static final int MAX_QUEUED_REMOTE_STORES = 16;
+    private static final int MAX_CONCURRENT_REMOTE_STORES = 2;
+
     @VisibleForTesting
     final BuildCacheServiceHandle legacyLocal;
 
@@ -70,6 +74,9 @@ public class DefaultBuildCacheController implements BuildCacheController {
     private final BuildCacheTempFileStore tmp;
     private final BuildOperationExecutor buildOperationExecutor;
 
+    @Nullable
+    private final RemoteStoreQueue remoteStoreQueue;
+
     private boolean closed;
 
     public DefaultBuildCacheController(
@@ -77,6 +84,20 @@ public class DefaultBuildCacheController implements BuildCacheController {
         BuildOperationExecutor buildOperationExecutor,
         File gradleUserHomeDir,
         boolean logStackTraces
+    ) {
+        this(config, buildOperationExecutor, gradleUserHomeDir, logStackTraces, false, null);
+    }
+
+    /**
+     * @param executorFactory Creates the executor that stores entries in the remote cache in the background. Required when {@code asyncRemoteStore} is true.
+     */
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        File gradleUserHomeDir,
+        boolean logStackTraces,
+        boolean asyncRemoteStore,
+        @Nullable ExecutorFactory executorFactory
     ) {
         this.buildOperationExecutor = buildOperationExecutor;
 
@@ -92,6 +113,13 @@ public class DefaultBuildCacheController implements BuildCacheController {
         }
 
         this.remote = toHandle(config.remote, config.remotePush, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces);
+
+        if (asyncRemoteStore && remote.canStore()) {
+            DefaultBuildCacheTempFileStore queueTmp = new DefaultBuildCacheTempFileStore(new File(gradleUserHomeDir, "build-cache-tmp"), BuildCacheTempFileStore.PARTIAL_FILE_SUFFIX);
+            this.remoteStoreQueue = new RemoteStoreQueue(remote, queueTmp, buildOperationExecutor, executorFactory.create("Build cache remote store", MAX_CONCURRENT_REMOTE_STORES), MAX_QUEUED_REMOTE_STORES);
+        } else {
+            this.remoteStoreQueue = null;
+        }
     }
 
     @Nullable
@@ -214,7 +242,10 @@ public class DefaultBuildCacheController implements BuildCacheController {
                     legacyLocal.store(key, new StoreTarget(file));
                 }
 
-                if (remote.canStore()) {
+                if (remoteStoreQueue != null) {
+                    // The local cache moves the file, so the queue needs its own copy in that case
+                    remoteStoreQueue.store(key, file, !local.canStore());
+                } else if (remote.canStore()) {
                     remote.store(key, new StoreTarget(file));
                 }
 
@@ -263,6 +294,9 @@ public class DefaultBuildCacheController implements BuildCacheController {
     public void close() {
         if (!closed) {
             closed = true;
+            if (remoteStoreQueue != null) {
+                remoteStoreQueue.close();
+            }
             CompositeStoppable.stoppable(legacyLocal, local, remote).stop();
         }
     }
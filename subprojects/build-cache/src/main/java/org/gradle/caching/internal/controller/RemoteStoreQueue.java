@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller;
+
+import com.google.common.io.Files;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.controller.operations.StoreQueueOperationDetails;
+import org.gradle.caching.internal.controller.operations.StoreQueueOperationResult;
+import org.gradle.caching.internal.controller.service.BuildCacheServiceHandle;
+import org.gradle.caching.internal.controller.service.StoreTarget;
+import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores packed entries in the remote build cache on background threads, so that tasks do not wait for the remote build cache.
+ *
+ * <p>The number of entries that are waiting to be stored is bounded. When the queue is full, adding an entry blocks until an entry has been stored.
+ * Closing the queue waits for all entries to be stored.</p>
+ */
+class RemoteStoreQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteStoreQueue.class);
+
+    private final BuildCacheServiceHandle remote;
+    private final DefaultBuildCacheTempFileStore tmp;
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final ManagedExecutor executor;
+    private final Semaphore capacity;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger stored = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    RemoteStoreQueue(BuildCacheServiceHandle remote, DefaultBuildCacheTempFileStore tmp, BuildOperationExecutor buildOperationExecutor, ManagedExecutor executor, int capacity) {
+        this.remote = remote;
+        this.tmp = tmp;
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.executor = executor;
+        this.capacity = new Semaphore(capacity);
+    }
+
+    /**
+     * Queues the given packed entry to be stored. The file is copied, unless {@code moveFile} is true, in which case the queue takes ownership of it.
+     */
+    void store(final BuildCacheKey key, File file, boolean moveFile) {
+        capacity.acquireUninterruptibly();
+        final File queuedFile;
+        try {
+            queuedFile = takeFile(key, file, moveFile);
+        } catch (RuntimeException e) {
+            capacity.release();
+            throw e;
+        }
+        queued.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                queued.decrementAndGet();
+                inFlight.incrementAndGet();
+                try {
+                    StoreTarget storeTarget = new StoreTarget(queuedFile);
+                    if (remote.canStore()) {
+                        remote.store(key, storeTarget);
+                    }
+                    if (storeTarget.isStored()) {
+                        stored.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                } finally {
+                    GFileUtils.deleteQuietly(queuedFile);
+                    inFlight.decrementAndGet();
+                    capacity.release();
+                }
+            }
+        });
+    }
+
+    private File takeFile(BuildCacheKey key, File file, boolean moveFile) {
+        File queuedFile = tmp.createTempFile(key);
+        if (moveFile && file.renameTo(queuedFile)) {
+            return queuedFile;
+        }
+        try {
+            Files.copy(file, queuedFile);
+        } catch (IOException e) {
+            GFileUtils.deleteQuietly(queuedFile);
+            throw new UncheckedIOException(e);
+        }
+        return queuedFile;
+    }
+
+    /**
+     * Waits for all queued entries to be stored.
+     */
+    void close() {
+        final int queuedCount = queued.get();
+        final int inFlightCount = inFlight.get();
+        if (queuedCount + inFlightCount == 0) {
+            executor.stop();
+            logCounts();
+            return;
+        }
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                executor.stop();
+                context.setResult(new StoreQueueOperationResult(stored.get(), failed.get()));
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Wait for entries to be stored in remote build cache")
+                    .details(new StoreQueueOperationDetails(queuedCount, inFlightCount))
+                    .progressDisplayName("Storing entries in remote build cache");
+            }
+        });
+        logCounts();
+    }
+
+    private void logCounts() {
+        if (stored.get() + failed.get() > 0) {
+            LOGGER.info("Stored {} entries in remote build cache in the background, {} entries could not be stored.", stored.get(), failed.get());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.internal.operations;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * Waits for the entries that are queued to be stored in the remote build cache in the background.
+ *
+ * Failures to store individual entries do not fail this operation, they are reported in the result.
+ */
+public final class BuildCacheRemoteStoreQueueBuildOperationType implements BuildOperationType<BuildCacheRemoteStoreQueueBuildOperationType.Details, BuildCacheRemoteStoreQueueBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The number of entries waiting to be stored when the operation started.
+         */
+        int getQueuedCount();
+
+        /**
+         * The number of entries being stored when the operation started.
+         */
+        int getInFlightCount();
+
+    }
+
+    public interface Result {
+
+        /**
+         * The number of entries stored during the build.
+         */
+        int getStoredCount();
+
+        /**
+         * The number of entries that could not be stored during the build.
+         */
+        int getFailedCount();
+
+    }
+
+    private BuildCacheRemoteStoreQueueBuildOperationType() {
+    }
+}
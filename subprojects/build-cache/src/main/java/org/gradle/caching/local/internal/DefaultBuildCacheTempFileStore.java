@@ -37,14 +37,7 @@ public class DefaultBuildCacheTempFileStore implements BuildCacheTempFileStore {
 
     @Override
     public void allocateTempFile(BuildCacheKey key, Action<? super File> action) {
-        String hashCode = key.getHashCode();
-        final File tempFile;
-        try {
-            tempFile = File.createTempFile(hashCode, partialFileSuffix, dir);
-        } catch (IOException ex) {
-            throw new UncheckedIOException(ex);
-        }
-
+        File tempFile = createTempFile(key);
         try {
             action.execute(tempFile);
         } finally {
@@ -54,4 +47,15 @@ public class DefaultBuildCacheTempFileStore implements BuildCacheTempFileStore {
         }
     }
 
+    /**
+     * Creates a temporary file for the given key. Unlike {@link #allocateTempFile(BuildCacheKey, Action)}, the caller is responsible for deleting the file.
+     */
+    public File createTempFile(BuildCacheKey key) {
+        try {
+            return File.createTempFile(key.getHashCode(), partialFileSuffix, dir);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
 }
@@ -23,11 +23,15 @@ import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.testing.internal.util.Specification
 import org.junit.Rule
 
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
 class DefaultBuildCacheControllerTest extends Specification {
 
     def key = Mock(BuildCacheKey) {
@@ -84,6 +88,8 @@ class DefaultBuildCacheControllerTest extends Specification {
 
     interface Local extends BuildCacheService, LocalBuildCacheService {}
 
+    def asyncRemoteStore = false
+
     BuildCacheController getController() {
         new DefaultBuildCacheController(
             new BuildCacheServicesConfiguration(
@@ -92,7 +98,9 @@ class DefaultBuildCacheControllerTest extends Specification {
             ),
             operations,
             tmpDir.file("dir"),
-            false
+            false,
+            asyncRemoteStore,
+            new DefaultExecutorFactory()
         )
     }
 
@@ -337,4 +345,45 @@ class DefaultBuildCacheControllerTest extends Specification {
         }
     }
 
+    def "stores to remote in the background when asynchronous remote store is enabled"() {
+        given:
+        asyncRemoteStore = true
+        def canStore = new CountDownLatch(1)
+        def stored = false
+        1 * remote.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            assert canStore.await(10, TimeUnit.SECONDS)
+            writer.writeTo(new ByteArrayOutputStream())
+            stored = true
+        }
+        def controller = getController()
+
+        when:
+        controller.store(storeCommand)
+        def storedWhenReturned = stored
+        canStore.countDown()
+        controller.close()
+
+        then:
+        !storedWhenReturned
+        stored
+        1 * local.store(key, _)
+        tmpDir.file("dir/build-cache-tmp").list().length == 0
+    }
+
+    def "does suppress exceptions from asynchronous remote store"() {
+        given:
+        asyncRemoteStore = true
+        local = null
+        def controller = getController()
+
+        when:
+        controller.store(storeCommand)
+        controller.close()
+
+        then:
+        noExceptionThrown()
+        1 * remote.store(key, _) >> { throw new RuntimeException() }
+        tmpDir.file("dir/build-cache-tmp").list().length == 0
+    }
+
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks
+
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.changedetection.state.DirContentSnapshot
+import org.gradle.api.internal.changedetection.state.FileHashSnapshot
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec
+import org.gradle.caching.configuration.BuildCacheCompression
+import org.gradle.caching.configuration.BuildCacheConfiguration
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginMetadata
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.hash.DefaultStreamHasher
+import org.gradle.internal.hash.Hashing
+import org.gradle.internal.id.UniqueId
+import org.gradle.internal.nativeplatform.filesystem.FileSystem
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.gradle.api.internal.tasks.OutputType.DIRECTORY
+
+@CleanupTestDirectory
+class CompressingTaskOutputPackerTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def readOrigin = Stub(TaskOutputOriginReader) {
+        execute(_) >> new TaskOutputOriginMetadata(UniqueId.generate())
+    }
+    def writeOrigin = Stub(TaskOutputOriginWriter)
+    def fileSystem = Stub(FileSystem) {
+        getUnixMode(_) >> 0644
+    }
+    def streamHasher = new DefaultStreamHasher({ Hashing.md5().newHasher() })
+    def tarPacker = new TarTaskOutputPacker(fileSystem, streamHasher, new StringInterner())
+    def configuration = Mock(BuildCacheConfiguration)
+    def executor = new DefaultExecutorFactory().create("test", 4)
+    def packer = new CompressingTaskOutputPacker(tarPacker, new GZipTaskOutputPacker(tarPacker), executor, 4, configuration)
+
+    def cleanup() {
+        executor.stop()
+    }
+
+    @Unroll
+    def "can unpack output packed with #compression compression regardless of current compression"() {
+        def sourceDir = temporaryFolder.createDir("source")
+        sourceDir.file("file.txt") << "content\n" * 1000
+        def targetDir = temporaryFolder.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        packer.pack(props(sourceDir), [test: snapshots(sourceDir)], output, writeOrigin)
+
+        then:
+        1 * configuration.getCompression() >> compression
+
+        when:
+        packer.unpack(props(targetDir), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        0 * configuration.getCompression()
+        targetDir.file("file.txt").text == "content\n" * 1000
+
+        where:
+        compression << BuildCacheCompression.values()
+    }
+
+    def "packs output with GZIP compression in the plain GZIP format"() {
+        def sourceDir = temporaryFolder.createDir("source")
+        sourceDir.file("file.txt") << "content"
+        def targetDir = temporaryFolder.file("target")
+        def output = new ByteArrayOutputStream()
+        configuration.getCompression() >> BuildCacheCompression.GZIP
+
+        when:
+        packer.pack(props(sourceDir), [test: snapshots(sourceDir)], output, writeOrigin)
+        new GZipTaskOutputPacker(tarPacker).unpack(props(targetDir), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        targetDir.file("file.txt").text == "content"
+    }
+
+    def "can unpack output packed in blocks"() {
+        def sourceDir = temporaryFolder.createDir("source")
+        (1..20).each { sourceDir.file("file${it}.txt") << "content of file $it\n" * it }
+        def targetDir = temporaryFolder.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new ParallelGZipTaskOutputPacker(tarPacker, executor, 4, 100).pack(props(sourceDir), [test: snapshots(sourceDir)], output, writeOrigin)
+        packer.unpack(props(targetDir), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        0 * configuration.getCompression()
+        (1..20).every { targetDir.file("file${it}.txt").text == "content of file $it\n" * it }
+    }
+
+    def "store compression produces larger entries than fast compression"() {
+        def sourceDir = temporaryFolder.createDir("source")
+        sourceDir.file("file.txt") << "content\n" * 1000
+        configuration.getCompression() >>> [BuildCacheCompression.FAST, BuildCacheCompression.STORE]
+
+        when:
+        def fast = new ByteArrayOutputStream()
+        packer.pack(props(sourceDir), [test: snapshots(sourceDir)], fast, writeOrigin)
+        def stored = new ByteArrayOutputStream()
+        packer.pack(props(sourceDir), [test: snapshots(sourceDir)], stored, writeOrigin)
+
+        then:
+        stored.size() > fast.size()
+        stored.size() > 8000
+    }
+
+    def "fails for unknown codec"() {
+        def bytes = [(int) 'G', (int) 'C', (int) 'E', CompressingTaskOutputPacker.FORMAT_VERSION, 42] as byte[]
+
+        when:
+        packer.unpack(props(temporaryFolder.file("target")), new ByteArrayInputStream(bytes), readOrigin)
+
+        then:
+        def e = thrown(IOException)
+        e.message.contains("unknown compression codec 42")
+    }
+
+    private static SortedSet<ResolvedTaskOutputFilePropertySpec> props(File dir) {
+        return [new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, dir)] as SortedSet
+    }
+
+    private static Map<String, Object> snapshots(TestFile dir) {
+        def snapshots = new TreeMap<String, Object>()
+        snapshots[dir.absolutePath] = DirContentSnapshot.INSTANCE
+        dir.eachFileRecurse { File file ->
+            snapshots[file.absolutePath] = file.directory ? DirContentSnapshot.INSTANCE : new FileHashSnapshot(TestFile.md5(file))
+        }
+        return snapshots
+    }
+}
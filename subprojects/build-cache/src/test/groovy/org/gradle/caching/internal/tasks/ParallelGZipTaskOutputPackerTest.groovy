@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks
+
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.changedetection.state.DirContentSnapshot
+import org.gradle.api.internal.changedetection.state.FileHashSnapshot
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginMetadata
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.hash.DefaultStreamHasher
+import org.gradle.internal.hash.Hashing
+import org.gradle.internal.id.UniqueId
+import org.gradle.internal.nativeplatform.filesystem.FileSystem
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import static org.gradle.api.internal.tasks.OutputType.DIRECTORY
+
+@CleanupTestDirectory
+class ParallelGZipTaskOutputPackerTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def readOrigin = Stub(TaskOutputOriginReader) {
+        execute(_) >> new TaskOutputOriginMetadata(UniqueId.generate())
+    }
+    def writeOrigin = Stub(TaskOutputOriginWriter)
+    def fileSystem = Stub(FileSystem) {
+        getUnixMode(_) >> 0644
+    }
+    def streamHasher = new DefaultStreamHasher({ Hashing.md5().newHasher() })
+    def executor = new DefaultExecutorFactory().create("test", 4)
+    def tarPacker = new TarTaskOutputPacker(fileSystem, streamHasher, new StringInterner(), executor)
+    def packer = new ParallelGZipTaskOutputPacker(tarPacker, executor, 4, 100)
+
+    def cleanup() {
+        packer.stop()
+    }
+
+    def "can pack and unpack output directory spanning many blocks"() {
+        def sourceDir = temporaryFolder.createDir("source")
+        (1..50).each { sourceDir.file("dir${it % 5}/file${it}.txt") << "content of file $it\n" * it }
+        def targetDir = temporaryFolder.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        packer.pack(props(sourceDir), [test: snapshots(sourceDir)], output, writeOrigin)
+        def result = packer.unpack(props(targetDir), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        (1..50).every { targetDir.file("dir${it % 5}/file${it}.txt").text == "content of file $it\n" * it }
+        result.snapshots.get("test")*.path == snapshots(targetDir).keySet() as List
+    }
+
+    def "writes files on the unpacking thread once too much content is waiting to be written"() {
+        def boundedPacker = new ParallelGZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem, streamHasher, new StringInterner(), executor, 1000), executor, 4, 100)
+        def sourceDir = temporaryFolder.createDir("source")
+        (1..50).each { sourceDir.file("file${it}.txt") << "content of file $it\n" * it }
+        def targetDir = temporaryFolder.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        boundedPacker.pack(props(sourceDir), [test: snapshots(sourceDir)], output, writeOrigin)
+        def result = boundedPacker.unpack(props(targetDir), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        (1..50).every { targetDir.file("file${it}.txt").text == "content of file $it\n" * it }
+        result.snapshots.get("test")*.path == snapshots(targetDir).keySet() as List
+    }
+
+    def "can unpack output packed as plain GZIP"() {
+        def sourceDir = temporaryFolder.createDir("source")
+        sourceDir.file("file.txt") << "content"
+        def targetDir = temporaryFolder.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        new GZipTaskOutputPacker(tarPacker).pack(props(sourceDir), [test: snapshots(sourceDir)], output, writeOrigin)
+        packer.unpack(props(targetDir), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        targetDir.file("file.txt").text == "content"
+    }
+
+    def "packs as plain GZIP when not packing in blocks"() {
+        def plainPacker = new ParallelGZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem, streamHasher, new StringInterner()), executor, 4, 100, false)
+        def sourceDir = temporaryFolder.createDir("source")
+        sourceDir.file("file.txt") << "content"
+        def targetDir = temporaryFolder.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        plainPacker.pack(props(sourceDir), [test: snapshots(sourceDir)], output, writeOrigin)
+        new GZipTaskOutputPacker(tarPacker).unpack(props(targetDir), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        targetDir.file("file.txt").text == "content"
+    }
+
+    def "unpacks output packed in blocks when not packing in blocks"() {
+        def plainPacker = new ParallelGZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem, streamHasher, new StringInterner()), executor, 4, 100, false)
+        def sourceDir = temporaryFolder.createDir("source")
+        (1..20).each { sourceDir.file("file${it}.txt") << "content of file $it\n" * it }
+        def targetDir = temporaryFolder.file("target")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        packer.pack(props(sourceDir), [test: snapshots(sourceDir)], output, writeOrigin)
+        plainPacker.unpack(props(targetDir), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        (1..20).every { targetDir.file("file${it}.txt").text == "content of file $it\n" * it }
+    }
+
+    def "fails when frames are truncated"() {
+        def sourceDir = temporaryFolder.createDir("source")
+        sourceDir.file("file.txt") << "content" * 100
+        def output = new ByteArrayOutputStream()
+        packer.pack(props(sourceDir), [test: snapshots(sourceDir)], output, writeOrigin)
+        def bytes = output.toByteArray()
+
+        when:
+        packer.unpack(props(temporaryFolder.file("target")), new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 20)), readOrigin)
+
+        then:
+        thrown(IOException)
+    }
+
+    private static SortedSet<ResolvedTaskOutputFilePropertySpec> props(File dir) {
+        return [new ResolvedTaskOutputFilePropertySpec("test", DIRECTORY, dir)] as SortedSet
+    }
+
+    private static Map<String, Object> snapshots(TestFile dir) {
+        def snapshots = new TreeMap<String, Object>()
+        snapshots[dir.absolutePath] = DirContentSnapshot.INSTANCE
+        dir.eachFileRecurse { File file ->
+            snapshots[file.absolutePath] = file.directory ? DirContentSnapshot.INSTANCE : new FileHashSnapshot(TestFile.md5(file))
+        }
+        return snapshots
+    }
+}
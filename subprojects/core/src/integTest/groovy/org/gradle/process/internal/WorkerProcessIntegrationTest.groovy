@@ -21,6 +21,7 @@ import org.gradle.api.internal.file.TmpDirTemporaryFileProvider
 import org.gradle.api.logging.LogLevel
 import org.gradle.api.logging.Logging
 import org.gradle.internal.Actions
+import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.event.ListenerBroadcast
 import org.gradle.internal.id.LongIdGenerator
 import org.gradle.internal.jvm.inspection.CachingJvmVersionDetector
@@ -28,6 +29,7 @@ import org.gradle.internal.jvm.inspection.DefaultJvmVersionDetector
 import org.gradle.internal.remote.ObjectConnectionBuilder
 import org.gradle.process.internal.health.memory.MemoryManager
 import org.gradle.process.internal.worker.DefaultWorkerProcessFactory
+import org.gradle.process.internal.worker.PreStartedWorkerProcessPool
 import org.gradle.process.internal.worker.WorkerProcess
 import org.gradle.process.internal.worker.WorkerProcessBuilder
 import org.gradle.process.internal.worker.WorkerProcessContext
@@ -124,6 +126,25 @@ class WorkerProcessIntegrationTest extends AbstractWorkerProcessIntegrationSpec
         0 * listenerMock._
     }
 
+    def "can use pre-started worker processes"() {
+        given:
+        def pool = new PreStartedWorkerProcessPool(services.get(ExecutorFactory), 1)
+        workerFactory = new DefaultWorkerProcessFactory(loggingManager(LogLevel.DEBUG), server, classPathRegistry, new LongIdGenerator(), tmpDir.file("gradleUserHome"), new TmpDirTemporaryFileProvider(), execHandleFactory, new CachingJvmVersionDetector(new DefaultJvmVersionDetector(execHandleFactory)), outputEventListener, Stub(MemoryManager), pool)
+
+        when:
+        execute(worker(new RemoteProcess()))
+        execute(worker(new RemoteProcess()))
+        execute(worker(new RemoteProcess()))
+
+        then:
+        3 * listenerMock.send("message 1", 1)
+        3 * listenerMock.send("message 2", 2)
+        0 * listenerMock._
+
+        cleanup:
+        pool.stop()
+    }
+
     def thisProcessCanSendEventsToWorkerProcess() {
         when:
         execute(worker(new PingRemoteProcess()).onServer(new Action<ObjectConnectionBuilder>() {
@@ -32,7 +32,12 @@ import org.gradle.internal.serialize.HashCodeSerializer;
 import java.io.File;
 
 public class CachingFileHasher implements FileHasher {
+    // Most entries are kept in the compact in-memory cache, so only keep a few objects in memory for the persistent cache
+    private static final int MAX_ENTRIES_IN_MEMORY = 400000;
+    private static final int MAX_ENTRIES_IN_MEMORY_FOR_PERSISTENT_CACHE = 1000;
+
     private final PersistentIndexedCache<String, FileInfo> cache;
+    private final CompactFileHashCache inMemoryCache = new CompactFileHashCache(MAX_ENTRIES_IN_MEMORY);
     private final FileHasher delegate;
     private final FileSystem fileSystem;
     private final StringInterner stringInterner;
@@ -41,7 +46,7 @@ public class CachingFileHasher implements FileHasher {
     public CachingFileHasher(FileHasher delegate, TaskHistoryStore store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem) {
         this.delegate = delegate;
         this.fileSystem = fileSystem;
-        this.cache = store.createCache(cacheName, String.class, new FileInfoSerializer(), 400000, true);
+        this.cache = store.createCache(cacheName, String.class, new FileInfoSerializer(), MAX_ENTRIES_IN_MEMORY_FOR_PERSISTENT_CACHE, true);
         this.stringInterner = stringInterner;
         this.timestampInspector = timestampInspector;
     }
@@ -78,9 +83,15 @@ public class CachingFileHasher implements FileHasher {
     private FileInfo snapshot(File file, long length, long timestamp) {
         String absolutePath = file.getAbsolutePath();
         if (timestampInspector.timestampCanBeUsedToDetectFileChange(absolutePath, timestamp)) {
+            HashCode hash = inMemoryCache.get(absolutePath, length, timestamp);
+            if (hash != null) {
+                return new FileInfo(hash, length, timestamp);
+            }
+
             FileInfo info = cache.get(absolutePath);
 
             if (info != null && length == info.length && timestamp == info.timestamp) {
+                inMemoryCache.put(absolutePath, length, timestamp, info.hash);
                 return info;
             }
         }
@@ -88,10 +99,12 @@ public class CachingFileHasher implements FileHasher {
         HashCode hash = delegate.hash(file);
         FileInfo info = new FileInfo(hash, length, timestamp);
         cache.put(stringInterner.intern(absolutePath), info);
+        inMemoryCache.put(absolutePath, length, timestamp, hash);
         return info;
     }
 
     public void discard(String path) {
+        inMemoryCache.remove(path);
         cache.remove(path);
     }
 
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.hash.Hashing;
+import org.gradle.internal.hash.HashCode;
+
+import javax.annotation.Nullable;
+
+/**
+ * An in-memory cache of file content hashes, which keeps each entry in a fixed-width record of a {@code long[]} rather than in objects.
+ *
+ * <p>Each record holds a 128 bit hash of the absolute path of the file, the length and timestamp of the file, and the 128 bit content hash of the file.
+ * Only content hashes of 16 bytes are cached. The records are kept in open addressing tables that are split into segments, each guarded by its own lock.
+ * When a segment reaches its maximum size, it is cleared.</p>
+ */
+class CompactFileHashCache {
+    static final int HASH_LENGTH = 16;
+    private static final int RECORD_LENGTH = 6;
+    private static final int PATH_HI = 0;
+    private static final int PATH_LO = 1;
+    private static final int LENGTH = 2;
+    private static final int TIMESTAMP = 3;
+    private static final int HASH_HI = 4;
+    private static final int HASH_LO = 5;
+    private static final int SEGMENT_COUNT = 16;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    CompactFileHashCache(int maxEntries) {
+        int maxSegmentEntries = Math.max(INITIAL_CAPACITY / 2, maxEntries / SEGMENT_COUNT);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(maxSegmentEntries);
+        }
+    }
+
+    @Nullable
+    HashCode get(String absolutePath, long length, long timestamp) {
+        byte[] pathHash = hashPath(absolutePath);
+        long pathHi = toLong(pathHash, 0);
+        long pathLo = nonZero(toLong(pathHash, 8));
+        return segmentFor(pathLo).get(pathHi, pathLo, length, timestamp);
+    }
+
+    void put(String absolutePath, long length, long timestamp, HashCode hash) {
+        if (hash.length() != HASH_LENGTH) {
+            return;
+        }
+        byte[] pathHash = hashPath(absolutePath);
+        long pathHi = toLong(pathHash, 0);
+        long pathLo = nonZero(toLong(pathHash, 8));
+        byte[] contentHash = hash.toByteArray();
+        segmentFor(pathLo).put(pathHi, pathLo, length, timestamp, toLong(contentHash, 0), toLong(contentHash, 8));
+    }
+
+    void remove(String absolutePath) {
+        byte[] pathHash = hashPath(absolutePath);
+        long pathHi = toLong(pathHash, 0);
+        long pathLo = nonZero(toLong(pathHash, 8));
+        segmentFor(pathLo).remove(pathHi, pathLo);
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(long pathLo) {
+        return segments[(int) (pathLo >>> 60)];
+    }
+
+    private static byte[] hashPath(String absolutePath) {
+        return Hashing.murmur3_128().hashUnencodedChars(absolutePath).asBytes();
+    }
+
+    // A path hash with a zero low word marks an empty slot
+    private static long nonZero(long pathLo) {
+        return pathLo == 0 ? 1 : pathLo;
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    private static void writeLong(long value, byte[] bytes, int offset) {
+        for (int i = offset + 7; i >= offset; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static class Segment {
+        private final int maxEntries;
+        private long[] records;
+        private int mask;
+        private int size;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+            allocate(INITIAL_CAPACITY);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        @Nullable
+        synchronized HashCode get(long pathHi, long pathLo, long length, long timestamp) {
+            int slot = find(pathHi, pathLo);
+            if (slot < 0) {
+                return null;
+            }
+            int offset = slot * RECORD_LENGTH;
+            if (records[offset + LENGTH] != length || records[offset + TIMESTAMP] != timestamp) {
+                return null;
+            }
+            byte[] hash = new byte[HASH_LENGTH];
+            writeLong(records[offset + HASH_HI], hash, 0);
+            writeLong(records[offset + HASH_LO], hash, 8);
+            return HashCode.fromBytes(hash);
+        }
+
+        synchronized void put(long pathHi, long pathLo, long length, long timestamp, long hashHi, long hashLo) {
+            int slot = find(pathHi, pathLo);
+            if (slot < 0) {
+                if (size >= maxEntries) {
+                    // Simplest possible eviction: the persistent cache still holds the entries
+                    allocate(INITIAL_CAPACITY);
+                } else if ((size + 1) * 4 > (mask + 1) * 3) {
+                    resize((mask + 1) * 2);
+                }
+                slot = freeSlot(pathHi);
+                size++;
+            }
+            write(records, slot * RECORD_LENGTH, pathHi, pathLo, length, timestamp, hashHi, hashLo);
+        }
+
+        synchronized void remove(long pathHi, long pathLo) {
+            int slot = find(pathHi, pathLo);
+            if (slot < 0) {
+                return;
+            }
+            size--;
+            // Shift back the following records of the probe sequence, so that lookups do not stop early at the removed slot
+            int free = slot;
+            int current = slot;
+            while (true) {
+                current = (current + 1) & mask;
+                int offset = current * RECORD_LENGTH;
+                if (records[offset + PATH_LO] == 0) {
+                    break;
+                }
+                int home = home(records[offset + PATH_HI]);
+                boolean canMove = free <= current ? (home <= free || home > current) : (home <= free && home > current);
+                if (canMove) {
+                    System.arraycopy(records, offset, records, free * RECORD_LENGTH, RECORD_LENGTH);
+                    free = current;
+                }
+            }
+            records[free * RECORD_LENGTH + PATH_LO] = 0;
+        }
+
+        private int find(long pathHi, long pathLo) {
+            int slot = home(pathHi);
+            while (true) {
+                int offset = slot * RECORD_LENGTH;
+                long candidate = records[offset + PATH_LO];
+                if (candidate == 0) {
+                    return -1;
+                }
+                if (candidate == pathLo && records[offset + PATH_HI] == pathHi) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private int freeSlot(long pathHi) {
+            int slot = home(pathHi);
+            while (records[slot * RECORD_LENGTH + PATH_LO] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private int home(long pathHi) {
+            return (int) (pathHi ^ (pathHi >>> 32)) & mask;
+        }
+
+        private void allocate(int capacity) {
+            records = new long[capacity * RECORD_LENGTH];
+            mask = capacity - 1;
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldRecords = records;
+            records = new long[capacity * RECORD_LENGTH];
+            mask = capacity - 1;
+            for (int offset = 0; offset < oldRecords.length; offset += RECORD_LENGTH) {
+                if (oldRecords[offset + PATH_LO] != 0) {
+                    int slot = freeSlot(oldRecords[offset + PATH_HI]);
+                    System.arraycopy(oldRecords, offset, records, slot * RECORD_LENGTH, RECORD_LENGTH);
+                }
+            }
+        }
+
+        private static void write(long[] records, int offset, long pathHi, long pathLo, long length, long timestamp, long hashHi, long hashLo) {
+            records[offset + PATH_HI] = pathHi;
+            records[offset + PATH_LO] = pathLo;
+            records[offset + LENGTH] = length;
+            records[offset + TIMESTAMP] = timestamp;
+            records[offset + HASH_HI] = hashHi;
+            records[offset + HASH_LO] = hashLo;
+        }
+    }
+}
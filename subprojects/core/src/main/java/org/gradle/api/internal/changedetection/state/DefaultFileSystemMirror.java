@@ -16,34 +16,95 @@
 
 package org.gradle.api.internal.changedetection.state;
 
+import org.gradle.api.Action;
+import org.gradle.api.internal.file.FileSystemSubset;
+import org.gradle.api.internal.file.TemporaryFileProvider;
 import org.gradle.api.internal.tasks.execution.TaskOutputsGenerationListener;
 import org.gradle.initialization.RootBuildLifecycleListener;
 import org.gradle.internal.classpath.CachedJarFileStore;
+import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.file.DefaultFileHierarchySet;
 import org.gradle.internal.file.FileHierarchySet;
+import org.gradle.internal.filewatch.FileWatcher;
+import org.gradle.internal.filewatch.FileWatcherEvent;
+import org.gradle.internal.filewatch.FileWatcherFactory;
+import org.gradle.internal.filewatch.FileWatcherListener;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * See {@link DefaultFileSystemSnapshotter} for some more details
+ *
+ * <p>When created with a {@link FileWatcherFactory}, the state is kept between builds. The locations that have been visited are watched for changes,
+ * and the state for changed locations is discarded at the start of the next build. Should the watcher fail or lose events, all state is discarded.</p>
+ *
+ * <p>A location is watched when it is first looked up and not found, which is before the snapshotter inspects it, so that no change made while
+ * the snapshot is taken goes unnoticed. State that is put for a location that was not watched beforehand is used for the current build only.
+ * As events are delivered asynchronously, the start of each build waits until the watcher has caught up, by touching a marker file in a
+ * private watched directory and waiting for its event. This adds a short wait to the start of each build, which is at most 5 seconds when the
+ * watcher does not respond. Should the event not arrive in time, all state is discarded.</p>
+ *
+ * <p>This relies on the watcher delivering events in the order the changes were made, across all watched directories, so that all events for
+ * changes made before the marker file was touched have arrived once the marker event arrives. Watchers that poll each directory on its own
+ * schedule, such as the JDK watch service on macOS, do not provide this and must not be used to retain state.</p>
  */
-public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGenerationListener, RootBuildLifecycleListener {
+public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGenerationListener, RootBuildLifecycleListener, Stoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFileSystemMirror.class);
+    private static final long SYNC_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
     // Maps from interned absolute path for a file to known details for the file.
-    private final Map<String, FileSnapshot> files = new ConcurrentHashMap<String, FileSnapshot>();
+    // The state for files outside the append-only caches is sorted by path, so that the state for a directory hierarchy can be discarded efficiently.
+    private final ConcurrentNavigableMap<String, FileSnapshot> files = new ConcurrentSkipListMap<String, FileSnapshot>();
     private final Map<String, FileSnapshot> cacheFiles = new ConcurrentHashMap<String, FileSnapshot>();
     // Maps from interned absolute path for a directory to known details for the directory.
-    private final Map<String, FileTreeSnapshot> trees = new ConcurrentHashMap<String, FileTreeSnapshot>();
+    private final ConcurrentNavigableMap<String, FileTreeSnapshot> trees = new ConcurrentSkipListMap<String, FileTreeSnapshot>();
     private final Map<String, FileTreeSnapshot> cacheTrees = new ConcurrentHashMap<String, FileTreeSnapshot>();
     // Maps from interned absolute path to a snapshot
-    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<String, Snapshot>();
+    private final ConcurrentNavigableMap<String, Snapshot> snapshots = new ConcurrentSkipListMap<String, Snapshot>();
     private final Map<String, Snapshot> cacheSnapshots = new ConcurrentHashMap<String, Snapshot>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
     private final FileHierarchySet cachedDirectories;
+    private final FileWatcherFactory fileWatcherFactory;
+    private final TemporaryFileProvider temporaryFileProvider;
+    private final Object watchLock = new Object();
+    // Only replaced while holding watchLock, but read without it to cheaply skip locations that are already watched
+    private volatile FileHierarchySet watchedLocations = DefaultFileHierarchySet.of();
+    // The following state is guarded by watchLock
+    private FileWatcher fileWatcher;
+    private File syncDir;
+    private long syncMarkersSent;
+    private long syncMarkersReceived;
+    private final Set<String> changedPaths = new HashSet<String>();
+    private boolean invalidateAll;
 
     public DefaultFileSystemMirror(List<CachedJarFileStore> fileStores) {
+        this(fileStores, null, null);
+    }
+
+    /**
+     * @param fileWatcherFactory When not null, the state is retained between builds and invalidated using file system events.
+     * @param temporaryFileProvider Provides the directory used to synchronize with the watcher. Required when a watcher factory is given.
+     */
+    public DefaultFileSystemMirror(List<CachedJarFileStore> fileStores, @Nullable FileWatcherFactory fileWatcherFactory, @Nullable TemporaryFileProvider temporaryFileProvider) {
+        this.fileWatcherFactory = fileWatcherFactory;
+        this.temporaryFileProvider = temporaryFileProvider;
         FileHierarchySet cachedDirectories = DefaultFileHierarchySet.of();
         for (CachedJarFileStore fileStore : fileStores) {
             for (File file : fileStore.getFileStoreRoots()) {
@@ -59,9 +120,13 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
         // Could potentially also look whether we have the details for an ancestor directory tree
         // Could possibly infer that the path refers to a directory, if we have details for a descendant path (and it's not a missing file)
         if (cachedDirectories.contains(path)) {
-            return cacheFiles.get(path);
+            return record(cacheFiles.get(path));
         } else {
-            return files.get(path);
+            FileSnapshot file = record(files.get(path));
+            if (file == null) {
+                watch(new File(path).getParentFile());
+            }
+            return file;
         }
     }
 
@@ -71,6 +136,7 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
             cacheFiles.put(file.getPath(), file);
         } else {
             files.put(file.getPath(), file);
+            retainIfWatched(file.getPath(), new File(file.getPath()).getParentFile());
         }
     }
 
@@ -78,9 +144,13 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
     @Override
     public Snapshot getContent(String path) {
         if (cachedDirectories.contains(path)) {
-            return cacheSnapshots.get(path);
+            return record(cacheSnapshots.get(path));
         } else {
-            return snapshots.get(path);
+            Snapshot snapshot = record(snapshots.get(path));
+            if (snapshot == null) {
+                watch(new File(path).getParentFile());
+            }
+            return snapshot;
         }
     }
 
@@ -90,6 +160,7 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
             cacheSnapshots.put(path, snapshot);
         } else {
             snapshots.put(path, snapshot);
+            retainIfWatched(path, new File(path).getParentFile());
         }
     }
 
@@ -99,9 +170,13 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
         // Could potentially also look whether we have the details for an ancestor directory tree
         // Could possibly also short-circuit some scanning if we have details for some sub trees
         if (cachedDirectories.contains(path)) {
-            return cacheTrees.get(path);
+            return record(cacheTrees.get(path));
         } else {
-            return trees.get(path);
+            FileTreeSnapshot tree = record(trees.get(path));
+            if (tree == null) {
+                watch(new File(path));
+            }
+            return tree;
         }
     }
 
@@ -111,24 +186,104 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
             cacheTrees.put(directory.getPath(), directory);
         } else {
             trees.put(directory.getPath(), directory);
+            retainIfWatched(directory.getPath(), new File(directory.getPath()));
         }
     }
 
     @Override
     public void beforeTaskOutputsGenerated() {
-        // When the task outputs are generated, throw away all state for files that do not live in an append-only cache.
-        // This is intentionally very simple, to be improved later
+        // The task may change anything, so throw away all state for files that do not live in an append-only cache.
+        invalidations.addAndGet(files.size() + trees.size() + snapshots.size());
         files.clear();
         trees.clear();
         snapshots.clear();
     }
 
+    @Override
+    public void beforeTaskOutputsGenerated(Iterable<File> affectedLocations) {
+        FileHierarchySet affected = DefaultFileHierarchySet.of();
+        for (File location : affectedLocations) {
+            if (!affected.contains(location)) {
+                affected = affected.plus(location);
+                invalidate(location.getAbsolutePath());
+            }
+        }
+    }
+
     @Override
     public void afterStart() {
+        synchronized (watchLock) {
+            if (fileWatcher != null && !invalidateAll) {
+                awaitPendingEvents();
+            }
+            if (invalidateAll) {
+                LOGGER.debug("Discarding all retained file system state.");
+                beforeTaskOutputsGenerated();
+            } else if (!changedPaths.isEmpty()) {
+                LOGGER.debug("Discarding retained file system state for {} changed locations.", changedPaths.size());
+                List<File> changed = new ArrayList<File>(changedPaths.size());
+                for (String path : changedPaths) {
+                    changed.add(new File(path));
+                }
+                beforeTaskOutputsGenerated(changed);
+            }
+            changedPaths.clear();
+            invalidateAll = false;
+        }
+    }
+
+    /**
+     * Discards the state for the given location, for everything below it and for the directories that contain it.
+     */
+    private void invalidate(String path) {
+        invalidate(files, path);
+        invalidate(trees, path);
+        invalidate(snapshots, path);
+    }
+
+    private void invalidate(ConcurrentNavigableMap<String, ?> state, String path) {
+        // Descendants sort between "path/" and "path0" (or "path\\" and "path]" on Windows).
+        // A file system root such as "/" or "C:\\" already ends with a separator.
+        String prefix = path.endsWith(File.separator) ? path.substring(0, path.length() - 1) : path;
+        Map<String, ?> descendants = state.subMap(prefix + File.separatorChar, prefix + (char) (File.separatorChar + 1));
+        invalidations.addAndGet(descendants.size());
+        descendants.clear();
+        for (String current = path; current != null; current = new File(current).getParent()) {
+            if (state.remove(current) != null) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    @Nullable
+    private <T> T record(@Nullable T value) {
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.get();
     }
 
     @Override
     public void beforeComplete() {
+        LOGGER.info("File system mirror: {} hits, {} misses, {} entries invalidated.", hits.getAndSet(0), misses.getAndSet(0), invalidations.getAndSet(0));
+        if (isRetainingState()) {
+            // Keep the state for the next build. The append-only caches never change, and everything else is being watched
+            return;
+        }
         // We throw away all state between builds
         files.clear();
         cacheFiles.clear();
@@ -137,4 +292,185 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
         snapshots.clear();
         cacheSnapshots.clear();
     }
+
+    private boolean isRetainingState() {
+        synchronized (watchLock) {
+            return fileWatcher != null && fileWatcher.isRunning() && !invalidateAll;
+        }
+    }
+
+    /**
+     * Starts watching the given location, if state is retained between builds. Does nothing when the location or one of its ancestors is already watched.
+     *
+     * @return true if changes to the location are being watched.
+     */
+    private boolean watch(@Nullable File location) {
+        if (fileWatcherFactory == null || location == null) {
+            return false;
+        }
+        if (watchedLocations.contains(location)) {
+            return true;
+        }
+        // A location that does not exist cannot be watched, so watch for it being created instead
+        while (location != null && !location.isDirectory()) {
+            location = location.getParentFile();
+        }
+        if (location == null) {
+            return false;
+        }
+        synchronized (watchLock) {
+            if (watchedLocations.contains(location)) {
+                return true;
+            }
+            if (!startWatcher()) {
+                return false;
+            }
+            try {
+                fileWatcher.watch(FileSystemSubset.builder().add(location).build());
+                watchedLocations = watchedLocations.plus(location);
+                return true;
+            } catch (IOException e) {
+                LOGGER.debug("Could not watch {} for changes. Discarding retained file system state.", location, e);
+                stopWatching();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Ensures that state put for the given path is only kept beyond the current build when its location was watched before the state was calculated.
+     */
+    private void retainIfWatched(String path, @Nullable File location) {
+        if (fileWatcherFactory == null || location == null || watchedLocations.contains(location)) {
+            return;
+        }
+        // The location was not watched before the snapshot was taken, so a change may have been missed. Start watching it now
+        // and discard the state at the start of the next build.
+        watch(location);
+        synchronized (watchLock) {
+            changedPaths.add(path);
+        }
+    }
+
+    private boolean startWatcher() {
+        if (fileWatcher != null) {
+            return true;
+        }
+        if (invalidateAll) {
+            // Watching failed during this build
+            return false;
+        }
+        fileWatcher = fileWatcherFactory.watch(new Action<Throwable>() {
+            @Override
+            public void execute(Throwable throwable) {
+                LOGGER.debug("Could not watch the file system for changes. Discarding retained file system state.", throwable);
+                onWatchFailed();
+            }
+        }, new FileWatcherListener() {
+            @Override
+            public void onChange(FileWatcher watcher, FileWatcherEvent event) {
+                onFileChanged(event);
+            }
+        });
+        try {
+            syncDir = temporaryFileProvider.createTemporaryDirectory("file-system-mirror", null);
+            fileWatcher.watch(FileSystemSubset.builder().add(syncDir).build());
+            return true;
+        } catch (IOException e) {
+            LOGGER.debug("Could not watch {} for changes. Discarding retained file system state.", syncDir, e);
+            stopWatching();
+            return false;
+        }
+    }
+
+    /**
+     * Waits until the watcher has delivered all events for changes made before this method was called. Touches a marker file in the watched sync
+     * directory and waits for its event, which the watcher delivers after the events that were already pending. Discards all state on timeout.
+     */
+    private void awaitPendingEvents() {
+        if (!fileWatcher.isRunning()) {
+            invalidateAll = true;
+            return;
+        }
+        long marker = ++syncMarkersSent;
+        File markerFile = new File(syncDir, String.valueOf(marker));
+        try {
+            if (!markerFile.createNewFile()) {
+                throw new IOException("Could not create " + markerFile);
+            }
+            long deadline = System.currentTimeMillis() + SYNC_TIMEOUT_MILLIS;
+            while (syncMarkersReceived < marker && !invalidateAll) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    LOGGER.debug("Timed out waiting for file system events. Discarding retained file system state.");
+                    invalidateAll = true;
+                    break;
+                }
+                watchLock.wait(remaining);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not synchronize with the file system watcher. Discarding retained file system state.", e);
+            invalidateAll = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            invalidateAll = true;
+        } finally {
+            markerFile.delete();
+        }
+    }
+
+    private void onFileChanged(FileWatcherEvent event) {
+        synchronized (watchLock) {
+            if (event.getType() == FileWatcherEvent.Type.UNDEFINED || event.getFile() == null) {
+                invalidateAll = true;
+            } else if (syncDir != null && syncDir.equals(event.getFile().getParentFile())) {
+                onSyncMarker(event);
+            } else {
+                changedPaths.add(event.getFile().getAbsolutePath());
+            }
+            watchLock.notifyAll();
+        }
+    }
+
+    private void onSyncMarker(FileWatcherEvent event) {
+        try {
+            syncMarkersReceived = Math.max(syncMarkersReceived, Long.parseLong(event.getFile().getName()));
+        } catch (NumberFormatException e) {
+            // Not a marker
+        }
+    }
+
+    private void onWatchFailed() {
+        synchronized (watchLock) {
+            invalidateAll = true;
+            fileWatcher = null;
+            watchedLocations = DefaultFileHierarchySet.of();
+            deleteSyncDir();
+            watchLock.notifyAll();
+        }
+    }
+
+    private void stopWatching() {
+        synchronized (watchLock) {
+            invalidateAll = true;
+            if (fileWatcher != null) {
+                fileWatcher.stop();
+                fileWatcher = null;
+            }
+            watchedLocations = DefaultFileHierarchySet.of();
+            deleteSyncDir();
+        }
+    }
+
+    private void deleteSyncDir() {
+        if (syncDir != null) {
+            GFileUtils.deleteQuietly(syncDir);
+            syncDir = null;
+        }
+    }
+
+    @Override
+    public void stop() {
+        stopWatching();
+    }
 }
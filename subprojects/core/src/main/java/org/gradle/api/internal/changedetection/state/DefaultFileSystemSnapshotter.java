@@ -18,6 +18,7 @@ package org.gradle.api.internal.changedetection.state;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import org.gradle.api.Transformer;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.file.FileVisitor;
@@ -61,9 +62,21 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
     private final ProducerGuard<String> producingTrees = ProducerGuard.striped();
     private final ProducerGuard<String> producingAllSnapshots = ProducerGuard.striped();
     private final DefaultGenericFileCollectionSnapshotter snapshotter;
+    private final ParallelSnapshotter parallelSnapshotter;
+    private final Transformer<FileSnapshot, FileVisitDetails> elementSnapshotter = new Transformer<FileSnapshot, FileVisitDetails>() {
+        @Override
+        public FileSnapshot transform(FileVisitDetails details) {
+            return snapshotElement(details);
+        }
+    };
 
     public DefaultFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, FileSystemMirror fileSystemMirror) {
+        this(hasher, stringInterner, fileSystem, directoryFileTreeFactory, fileSystemMirror, ParallelSnapshotter.SEQUENTIAL);
+    }
+
+    public DefaultFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, FileSystemMirror fileSystemMirror, ParallelSnapshotter parallelSnapshotter) {
         this.hasher = hasher;
+        this.parallelSnapshotter = parallelSnapshotter;
         this.stringInterner = stringInterner;
         this.fileSystem = fileSystem;
         this.directoryFileTreeFactory = directoryFileTreeFactory;
@@ -133,8 +146,7 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
         // Could potentially coordinate with a thread that is snapshotting an overlapping directory tree
         // Currently cache only those trees where we want everything from a directory
         if (!dirTree.getPatterns().isEmpty()) {
-            List<FileSnapshot> elements = Lists.newArrayList();
-            dirTree.visit(new FileVisitorImpl(elements));
+            List<FileSnapshot> elements = snapshotElements(dirTree);
             return new DirectoryTreeDetails(dirTree.getDir().getAbsolutePath(), elements);
         }
 
@@ -162,11 +174,42 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
 
     private FileTreeSnapshot doSnapshot(DirectoryFileTree directoryTree) {
         String path = getPath(directoryTree.getDir());
-        List<FileSnapshot> elements = Lists.newArrayList();
-        directoryTree.visit(new FileVisitorImpl(elements));
+        List<FileSnapshot> elements = snapshotElements(directoryTree);
         return new DirectoryTreeDetails(path, ImmutableList.copyOf(elements));
     }
 
+    /**
+     * Walks the directory tree on the calling thread, and hashes the files either while walking or, when snapshotting concurrently, afterwards.
+     * The elements are in the order of the walk.
+     */
+    private List<FileSnapshot> snapshotElements(DirectoryFileTree directoryTree) {
+        if (parallelSnapshotter.isSequential()) {
+            List<FileSnapshot> elements = Lists.newArrayList();
+            directoryTree.visit(new FileVisitorImpl(elements));
+            return elements;
+        }
+        final List<FileVisitDetails> visited = Lists.newArrayList();
+        directoryTree.visit(new FileVisitor() {
+            @Override
+            public void visitDir(FileVisitDetails dirDetails) {
+                visited.add(dirDetails);
+            }
+
+            @Override
+            public void visitFile(FileVisitDetails fileDetails) {
+                visited.add(fileDetails);
+            }
+        });
+        return parallelSnapshotter.snapshot(visited, elementSnapshotter);
+    }
+
+    private FileSnapshot snapshotElement(FileVisitDetails details) {
+        if (details.isDirectory()) {
+            return new DirectoryFileSnapshot(getPath(details.getFile()), details.getRelativePath(), false);
+        }
+        return new RegularFileSnapshot(getPath(details.getFile()), details.getRelativePath(), false, fileSnapshot(details));
+    }
+
     private String getPath(File file) {
         return stringInterner.intern(file.getAbsolutePath());
     }
@@ -216,12 +259,12 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
 
         @Override
         public void visitDir(FileVisitDetails dirDetails) {
-            fileTreeElements.add(new DirectoryFileSnapshot(getPath(dirDetails.getFile()), dirDetails.getRelativePath(), false));
+            fileTreeElements.add(snapshotElement(dirDetails));
         }
 
         @Override
         public void visitFile(FileVisitDetails fileDetails) {
-            fileTreeElements.add(new RegularFileSnapshot(getPath(fileDetails.getFile()), fileDetails.getRelativePath(), false, fileSnapshot(fileDetails)));
+            fileTreeElements.add(snapshotElement(fileDetails));
         }
     }
 }
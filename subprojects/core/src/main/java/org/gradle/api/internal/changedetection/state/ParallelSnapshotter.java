@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.Action;
+import org.gradle.api.Transformer;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.MultipleBuildOperationFailures;
+import org.gradle.internal.operations.RunnableBuildOperation;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Snapshots the elements of large directory trees concurrently, as build operations.
+ *
+ * <p>The elements are split into ranges which are snapshotted by separate operations, and the results are returned in the same order as the elements.
+ * The operations run on the shared build operation workers, so they are bounded by the maximum number of workers and each holds a worker lease.</p>
+ */
+public class ParallelSnapshotter {
+    /**
+     * A snapshotter that snapshots all elements on the calling thread.
+     */
+    public static final ParallelSnapshotter SEQUENTIAL = new ParallelSnapshotter(null, Integer.MAX_VALUE);
+
+    static final int DEFAULT_SPLIT_THRESHOLD = 128;
+
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final int splitThreshold;
+
+    public ParallelSnapshotter(BuildOperationExecutor buildOperationExecutor) {
+        this(buildOperationExecutor, DEFAULT_SPLIT_THRESHOLD);
+    }
+
+    ParallelSnapshotter(@Nullable BuildOperationExecutor buildOperationExecutor, int splitThreshold) {
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.splitThreshold = splitThreshold;
+    }
+
+    /**
+     * Returns true when this snapshotter snapshots all elements on the calling thread.
+     */
+    public boolean isSequential() {
+        return buildOperationExecutor == null;
+    }
+
+    /**
+     * Snapshots the given elements, concurrently when there are enough elements to make this worthwhile.
+     *
+     * @return the snapshots, in the same order as the elements.
+     */
+    public <T, S> List<S> snapshot(final List<? extends T> elements, final Transformer<? extends S, ? super T> snapshotter) {
+        if (buildOperationExecutor == null || elements.size() <= splitThreshold) {
+            List<S> snapshots = new ArrayList<S>(elements.size());
+            for (T element : elements) {
+                snapshots.add(snapshotter.transform(element));
+            }
+            return snapshots;
+        }
+
+        final Object[] snapshots = new Object[elements.size()];
+        try {
+            buildOperationExecutor.runAll(new Action<BuildOperationQueue<RunnableBuildOperation>>() {
+                @Override
+                public void execute(BuildOperationQueue<RunnableBuildOperation> queue) {
+                    for (int from = 0; from < elements.size(); from += splitThreshold) {
+                        queue.add(new SnapshotRange<T>(elements, snapshotter, snapshots, from, Math.min(from + splitThreshold, elements.size())));
+                    }
+                }
+            });
+        } catch (MultipleBuildOperationFailures e) {
+            // Fail in the same way as when snapshotting sequentially
+            throw UncheckedException.throwAsUncheckedException(e.getCauses().get(0));
+        }
+        @SuppressWarnings("unchecked")
+        List<S> result = (List<S>) Arrays.asList(snapshots);
+        return result;
+    }
+
+    private static class SnapshotRange<T> implements RunnableBuildOperation {
+        private final List<? extends T> elements;
+        private final Transformer<?, ? super T> snapshotter;
+        private final Object[] snapshots;
+        private final int from;
+        private final int to;
+
+        SnapshotRange(List<? extends T> elements, Transformer<?, ? super T> snapshotter, Object[] snapshots, int from, int to) {
+            this.elements = elements;
+            this.snapshotter = snapshotter;
+            this.snapshots = snapshots;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            for (int i = from; i < to; i++) {
+                snapshots[i] = snapshotter.transform(elements.get(i));
+            }
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Snapshot " + (to - from) + " files");
+        }
+    }
+}
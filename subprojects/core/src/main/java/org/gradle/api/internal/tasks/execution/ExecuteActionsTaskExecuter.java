@@ -15,14 +15,17 @@
  */
 package org.gradle.api.internal.tasks.execution;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.gradle.api.GradleException;
 import org.gradle.api.execution.TaskActionListener;
 import org.gradle.api.internal.TaskInternal;
 import org.gradle.api.internal.tasks.ContextAwareTaskAction;
+import org.gradle.api.internal.tasks.TaskDestroyablesInternal;
 import org.gradle.api.internal.tasks.TaskExecuter;
 import org.gradle.api.internal.tasks.TaskExecutionContext;
 import org.gradle.api.internal.tasks.TaskExecutionOutcome;
+import org.gradle.api.internal.tasks.TaskLocalStateInternal;
 import org.gradle.api.internal.tasks.TaskStateInternal;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
@@ -40,6 +43,7 @@ import org.gradle.internal.progress.BuildOperationDescriptor;
 import org.gradle.internal.progress.BuildOperationState;
 import org.gradle.internal.work.AsyncWorkTracker;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -63,7 +67,11 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
     public void execute(TaskInternal task, TaskStateInternal state, TaskExecutionContext context) {
         listener.beforeActions(task);
         if (!task.getTaskActions().isEmpty()) {
-            outputsGenerationListener.beforeTaskOutputsGenerated();
+            if (task.getOutputs().hasDeclaredOutputs()) {
+                outputsGenerationListener.beforeTaskOutputsGenerated(affectedLocations(task));
+            } else {
+                outputsGenerationListener.beforeTaskOutputsGenerated();
+            }
         }
         state.setExecuting(true);
         try {
@@ -82,6 +90,14 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
         }
     }
 
+    private static Iterable<File> affectedLocations(TaskInternal task) {
+        return Iterables.concat(
+            task.getOutputs().getFiles(),
+            ((TaskLocalStateInternal) task.getLocalState()).getFiles(),
+            ((TaskDestroyablesInternal) task.getDestroyables()).getFiles()
+        );
+    }
+
     private GradleException executeActions(TaskInternal task, TaskStateInternal state, TaskExecutionContext context) {
         LOGGER.debug("Executing actions for {}.", task);
         final List<ContextAwareTaskAction> actions = new ArrayList<ContextAwareTaskAction>(task.getTaskActions());
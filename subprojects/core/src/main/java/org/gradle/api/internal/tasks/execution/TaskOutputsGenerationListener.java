@@ -16,10 +16,18 @@
 
 package org.gradle.api.internal.tasks.execution;
 
+import java.io.File;
+
 public interface TaskOutputsGenerationListener {
     /**
      * Invoked when the outputs for a task are about to be generated.
      * This is for example just before the task actions are executed or the outputs are loaded from the cache.
      */
     void beforeTaskOutputsGenerated();
+
+    /**
+     * Invoked when the outputs for a task are about to be generated, and the task is known to only change the given locations.
+     * Listeners may discard state for these locations and everything below them, rather than all state.
+     */
+    void beforeTaskOutputsGenerated(Iterable<File> affectedLocations);
 }
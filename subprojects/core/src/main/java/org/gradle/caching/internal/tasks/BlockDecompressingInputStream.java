@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses the frames of task output packed in blocks by {@link ParallelGZipTaskOutputPacker}, decompressing the blocks concurrently.
+ */
+class BlockDecompressingInputStream extends InputStream {
+    private final DataInputStream input;
+    private final ExecutorService executor;
+    private final int maxBlocksInFlight;
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>();
+    private boolean endOfFrames;
+    private byte[] block = new byte[0];
+    private int position;
+
+    /**
+     * @param input the frames, following the header.
+     */
+    BlockDecompressingInputStream(InputStream input, ExecutorService executor, int maxBlocksInFlight) {
+        this.input = new DataInputStream(input);
+        this.executor = executor;
+        this.maxBlocksInFlight = maxBlocksInFlight;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlockIfNeeded()) {
+            return -1;
+        }
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        if (!nextBlockIfNeeded()) {
+            return -1;
+        }
+        int chunk = Math.min(count, block.length - position);
+        System.arraycopy(block, position, bytes, offset, chunk);
+        position += chunk;
+        return chunk;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    private boolean nextBlockIfNeeded() throws IOException {
+        if (position < block.length) {
+            return true;
+        }
+        readAhead();
+        if (inFlight.isEmpty()) {
+            return false;
+        }
+        block = ParallelGZipTaskOutputPacker.await(inFlight.removeFirst());
+        position = 0;
+        return true;
+    }
+
+    private void readAhead() throws IOException {
+        while (!endOfFrames && inFlight.size() < maxBlocksInFlight) {
+            final int uncompressedLength;
+            try {
+                uncompressedLength = input.readInt();
+            } catch (EOFException e) {
+                throw new IOException("Cached result format error, missing end of frames.", e);
+            }
+            int compressedLength = input.readInt();
+            if (uncompressedLength == 0) {
+                endOfFrames = true;
+                return;
+            }
+            if (uncompressedLength < 0 || compressedLength <= 0) {
+                throw new IOException("Cached result format error, invalid frame length.");
+            }
+            final byte[] compressed = new byte[compressedLength];
+            input.readFully(compressed);
+            inFlight.addLast(executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return decompress(compressed, uncompressedLength);
+                }
+            }));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : inFlight) {
+            future.cancel(false);
+        }
+        inFlight.clear();
+        input.close();
+    }
+
+    private static byte[] decompress(byte[] compressed, int uncompressedLength) throws IOException {
+        GZIPInputStream gzipInput = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        try {
+            byte[] block = new byte[uncompressedLength];
+            IOUtils.readFully(gzipInput, block);
+            if (gzipInput.read() >= 0) {
+                throw new IOException("Cached result format error, block is longer than expected.");
+            }
+            return block;
+        } finally {
+            gzipInput.close();
+        }
+    }
+}
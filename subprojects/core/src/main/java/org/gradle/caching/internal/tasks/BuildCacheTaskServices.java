@@ -31,6 +31,8 @@ import org.gradle.caching.internal.controller.BuildCacheControllerFactory.BuildC
 import org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteAccessMode;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginFactory;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -51,9 +53,21 @@ import static org.gradle.caching.internal.controller.BuildCacheControllerFactory
 import static org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteAccessMode.ONLINE;
 
 public class BuildCacheTaskServices {
+    private static final String PARALLEL_PACKING_PROPERTY = "org.gradle.caching.parallel-packing";
 
-    TaskOutputPacker createTaskResultPacker(FileSystem fileSystem, StreamHasher fileHasher, StringInterner stringInterner) {
-        return new GZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem, fileHasher, stringInterner));
+    TaskOutputPacker createTaskResultPacker(FileSystem fileSystem, StreamHasher fileHasher, StringInterner stringInterner, ExecutorFactory executorFactory, BuildCacheConfigurationInternal buildCacheConfiguration) {
+        boolean parallelPacking = Boolean.getBoolean(PARALLEL_PACKING_PROPERTY);
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ManagedExecutor executor = executorFactory.create("Build cache entry packing", parallelism);
+        TarTaskOutputPacker tarPacker;
+        if (parallelPacking) {
+            tarPacker = new TarTaskOutputPacker(fileSystem, fileHasher, stringInterner, executor);
+        } else {
+            tarPacker = new TarTaskOutputPacker(fileSystem, fileHasher, stringInterner);
+        }
+        // Entries packed in blocks by builds with parallel packing enabled are unpacked regardless of the flag, as they can come from a shared cache
+        TaskOutputPacker gzipPacker = new ParallelGZipTaskOutputPacker(tarPacker, executor, parallelism, parallelPacking);
+        return new CompressingTaskOutputPacker(tarPacker, gzipPacker, executor, parallelism, buildCacheConfiguration);
     }
 
     TaskOutputOriginFactory createTaskOutputOriginFactory(
@@ -84,6 +98,7 @@ public class BuildCacheTaskServices {
         BuildCacheConfigurationInternal buildCacheConfiguration,
         BuildOperationExecutor buildOperationExecutor,
         InstantiatorFactory instantiatorFactory,
+        ExecutorFactory executorFactory,
         GradleInternal gradle
     ) {
         StartParameter startParameter = gradle.getStartParameter();
@@ -105,7 +120,8 @@ public class BuildCacheTaskServices {
             buildCacheMode,
             remoteAccessMode,
             logStackTraces,
-            instantiatorFactory.inject(serviceRegistry)
+            instantiatorFactory.inject(serviceRegistry),
+            executorFactory
         );
 
         // Stop the controller early so that any logging emitted during stopping is visible.
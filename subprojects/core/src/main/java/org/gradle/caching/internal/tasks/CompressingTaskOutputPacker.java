@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.internal.changedetection.state.FileContentSnapshot;
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec;
+import org.gradle.caching.configuration.BuildCacheCompression;
+import org.gradle.caching.configuration.BuildCacheConfiguration;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.Stoppable;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the packed task output with the compression configured for the build cache.
+ *
+ * <p>Entries compressed with {@link BuildCacheCompression#GZIP} are packed by the given GZIP packer, so they stay in the same format as before.
+ * Entries compressed with other codecs start with a header that identifies the format version and the codec, so that they can be unpacked
+ * regardless of the compression that is currently configured.</p>
+ *
+ * <p>Output packed in blocks by {@link ParallelGZipTaskOutputPacker} is recognized by its own header and decompressed here, regardless of whether
+ * the GZIP packer packs in blocks. Any other output is unpacked by the GZIP packer.</p>
+ */
+public class CompressingTaskOutputPacker implements TaskOutputPacker, Stoppable {
+    static final int FORMAT_VERSION = 3;
+    private static final byte[] HEADER_PREFIX = {'G', 'C', 'E', FORMAT_VERSION};
+
+    private final TaskOutputPacker delegate;
+    private final TaskOutputPacker gzipPacker;
+    private final ExecutorService blockExecutor;
+    private final int maxBlocksInFlight;
+    private final BuildCacheConfiguration buildCacheConfiguration;
+
+    /**
+     * @param delegate the packer that packs the uncompressed output.
+     * @param gzipPacker the packer that compresses the output of the delegate with GZIP.
+     * @param blockExecutor the executor to decompress the blocks of output packed in blocks with.
+     * @param parallelism the number of blocks to decompress concurrently.
+     */
+    public CompressingTaskOutputPacker(TaskOutputPacker delegate, TaskOutputPacker gzipPacker, ExecutorService blockExecutor, int parallelism, BuildCacheConfiguration buildCacheConfiguration) {
+        this.delegate = delegate;
+        this.gzipPacker = gzipPacker;
+        this.blockExecutor = blockExecutor;
+        this.maxBlocksInFlight = ParallelGZipTaskOutputPacker.maxBlocksInFlight(parallelism);
+        this.buildCacheConfiguration = buildCacheConfiguration;
+    }
+
+    @Override
+    public PackResult pack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, Map<String, Map<String, FileContentSnapshot>> outputSnapshots, OutputStream output, TaskOutputOriginWriter writeOrigin) throws IOException {
+        // The compression is read for each entry, as the build cache is configured after this packer is created
+        Codec codec = Codec.of(buildCacheConfiguration.getCompression());
+        if (codec == null) {
+            return gzipPacker.pack(propertySpecs, outputSnapshots, output, writeOrigin);
+        }
+        output.write(HEADER_PREFIX);
+        output.write(codec.id);
+        OutputStream compressingOutput = codec.compress(output);
+        try {
+            return delegate.pack(propertySpecs, outputSnapshots, compressingOutput, writeOrigin);
+        } finally {
+            IOUtils.closeQuietly(compressingOutput);
+        }
+    }
+
+    @Override
+    public UnpackResult unpack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, InputStream input, TaskOutputOriginReader readOrigin) throws IOException {
+        BufferedInputStream bufferedInput = new BufferedInputStream(input);
+        bufferedInput.mark(HEADER_PREFIX.length + 1);
+        byte[] header = new byte[HEADER_PREFIX.length];
+        int read = IOUtils.read(bufferedInput, header);
+        InputStream decompressingInput;
+        if (read == header.length && Arrays.equals(header, ParallelGZipTaskOutputPacker.HEADER)) {
+            decompressingInput = new BlockDecompressingInputStream(bufferedInput, blockExecutor, maxBlocksInFlight);
+        } else if (read == header.length && Arrays.equals(header, HEADER_PREFIX)) {
+            int codecId = bufferedInput.read();
+            if (codecId < 0) {
+                throw new IOException("Cached result format error, missing compression codec.");
+            }
+            decompressingInput = Codec.of((byte) codecId).decompress(bufferedInput);
+        } else {
+            bufferedInput.reset();
+            return gzipPacker.unpack(propertySpecs, bufferedInput, readOrigin);
+        }
+        try {
+            return delegate.unpack(propertySpecs, decompressingInput, readOrigin);
+        } finally {
+            IOUtils.closeQuietly(decompressingInput);
+        }
+    }
+
+    @Override
+    public void stop() {
+        CompositeStoppable.stoppable(gzipPacker).stop();
+    }
+
+    private enum Codec {
+        FAST(1, Deflater.BEST_SPEED),
+        STORE(2, Deflater.NO_COMPRESSION);
+
+        private final byte id;
+        private final int level;
+
+        Codec(int id, int level) {
+            this.id = (byte) id;
+            this.level = level;
+        }
+
+        /**
+         * Returns the codec for the given compression, or {@code null} for GZIP.
+         */
+        static Codec of(BuildCacheCompression compression) {
+            switch (compression) {
+                case FAST:
+                    return FAST;
+                case STORE:
+                    return STORE;
+                default:
+                    return null;
+            }
+        }
+
+        static Codec of(byte id) throws IOException {
+            for (Codec codec : values()) {
+                if (codec.id == id) {
+                    return codec;
+                }
+            }
+            throw new IOException("Cached result format error, unknown compression codec " + id + ".");
+        }
+
+        OutputStream compress(OutputStream output) throws IOException {
+            // Both codecs use GZIP framing with a different deflate level, which keeps the CRC32 check of the content
+            return new GZIPOutputStream(output) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+
+        InputStream decompress(InputStream input) throws IOException {
+            return new GZIPInputStream(input);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.internal.changedetection.state.FileContentSnapshot;
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Adds compression and CRC32 checks to the packed task output, compressing and decompressing independent blocks concurrently.
+ *
+ * <p>The packed output starts with a header that identifies the format version, followed by a sequence of frames. Each frame holds the
+ * uncompressed length and compressed length of a block, followed by the block compressed as a GZIP member. A frame with an uncompressed
+ * length of 0 ends the sequence.</p>
+ *
+ * <p>Output that does not start with the header is unpacked as plain GZIP, as written by {@link GZipTaskOutputPacker}. Output is only packed in
+ * blocks when requested, otherwise it is packed as plain GZIP. Either way, output packed in blocks by other builds can be unpacked.</p>
+ */
+public class ParallelGZipTaskOutputPacker implements TaskOutputPacker, Stoppable {
+    static final int FORMAT_VERSION = 2;
+    static final byte[] HEADER = {'G', 'C', 'E', FORMAT_VERSION};
+    private static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private final TaskOutputPacker delegate;
+    private final ManagedExecutor executor;
+    private final int blockSize;
+    private final int maxBlocksInFlight;
+    private final boolean packInBlocks;
+
+    /**
+     * @param packInBlocks whether to pack output in blocks, or as plain GZIP.
+     */
+    public ParallelGZipTaskOutputPacker(TaskOutputPacker delegate, ManagedExecutor executor, int parallelism, boolean packInBlocks) {
+        this(delegate, executor, parallelism, DEFAULT_BLOCK_SIZE, packInBlocks);
+    }
+
+    ParallelGZipTaskOutputPacker(TaskOutputPacker delegate, ManagedExecutor executor, int parallelism, int blockSize) {
+        this(delegate, executor, parallelism, blockSize, true);
+    }
+
+    ParallelGZipTaskOutputPacker(TaskOutputPacker delegate, ManagedExecutor executor, int parallelism, int blockSize, boolean packInBlocks) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.maxBlocksInFlight = maxBlocksInFlight(parallelism);
+        this.packInBlocks = packInBlocks;
+    }
+
+    @Override
+    public PackResult pack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, Map<String, Map<String, FileContentSnapshot>> outputSnapshots, OutputStream output, TaskOutputOriginWriter writeOrigin) throws IOException {
+        if (!packInBlocks) {
+            GZIPOutputStream gzipOutput = new GZIPOutputStream(output);
+            try {
+                return delegate.pack(propertySpecs, outputSnapshots, gzipOutput, writeOrigin);
+            } finally {
+                IOUtils.closeQuietly(gzipOutput);
+            }
+        }
+        output.write(HEADER);
+        BlockCompressingOutputStream compressingOutput = new BlockCompressingOutputStream(output);
+        try {
+            PackResult result = delegate.pack(propertySpecs, outputSnapshots, compressingOutput, writeOrigin);
+            compressingOutput.finish();
+            return result;
+        } finally {
+            compressingOutput.discard();
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    @Override
+    public UnpackResult unpack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, InputStream input, TaskOutputOriginReader readOrigin) throws IOException {
+        BufferedInputStream bufferedInput = new BufferedInputStream(input);
+        bufferedInput.mark(HEADER.length);
+        byte[] header = new byte[HEADER.length];
+        int read = IOUtils.read(bufferedInput, header);
+        InputStream decompressingInput;
+        if (read == HEADER.length && Arrays.equals(header, HEADER)) {
+            decompressingInput = new BlockDecompressingInputStream(bufferedInput, executor, maxBlocksInFlight);
+        } else {
+            bufferedInput.reset();
+            decompressingInput = new GZIPInputStream(bufferedInput);
+        }
+        try {
+            return delegate.unpack(propertySpecs, decompressingInput, readOrigin);
+        } finally {
+            IOUtils.closeQuietly(decompressingInput);
+        }
+    }
+
+    static int maxBlocksInFlight(int parallelism) {
+        return Math.max(2, parallelism * 2);
+    }
+
+    @Override
+    public void stop() {
+        executor.stop();
+    }
+
+    private static byte[] compress(byte[] block, int length) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+        GZIPOutputStream gzipOutput = new GZIPOutputStream(compressed);
+        gzipOutput.write(block, 0, length);
+        gzipOutput.close();
+        return compressed.toByteArray();
+    }
+
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw UncheckedException.throwAsUncheckedException(e.getCause());
+        }
+    }
+
+    private class BlockCompressingOutputStream extends OutputStream {
+        private final DataOutputStream output;
+        private final Deque<Frame> inFlight = new ArrayDeque<Frame>();
+        private byte[] block = new byte[blockSize];
+        private int length;
+
+        BlockCompressingOutputStream(OutputStream output) {
+            this.output = new DataOutputStream(output);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == block.length) {
+                submitBlock();
+            }
+            block[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            while (count > 0) {
+                if (length == block.length) {
+                    submitBlock();
+                }
+                int chunk = Math.min(count, block.length - length);
+                System.arraycopy(bytes, offset, block, length, chunk);
+                length += chunk;
+                offset += chunk;
+                count -= chunk;
+            }
+        }
+
+        @Override
+        public void close() {
+            // The delegate closes the stream when it is done, the frames are written by finish()
+        }
+
+        private void submitBlock() throws IOException {
+            if (inFlight.size() >= maxBlocksInFlight) {
+                writeFrame(inFlight.removeFirst());
+            }
+            final byte[] uncompressed = block;
+            final int uncompressedLength = length;
+            Future<byte[]> compressed = executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return compress(uncompressed, uncompressedLength);
+                }
+            });
+            inFlight.addLast(new Frame(uncompressedLength, compressed));
+            block = new byte[blockSize];
+            length = 0;
+        }
+
+        private void writeFrame(Frame frame) throws IOException {
+            byte[] compressed = await(frame.compressed);
+            output.writeInt(frame.uncompressedLength);
+            output.writeInt(compressed.length);
+            output.write(compressed);
+        }
+
+        void finish() throws IOException {
+            if (length > 0) {
+                submitBlock();
+            }
+            while (!inFlight.isEmpty()) {
+                writeFrame(inFlight.removeFirst());
+            }
+            output.writeInt(0);
+            output.writeInt(0);
+            output.flush();
+        }
+
+        void discard() {
+            for (Frame frame : inFlight) {
+                frame.compressed.cancel(false);
+            }
+            inFlight.clear();
+        }
+    }
+
+    private static class Frame {
+        private final int uncompressedLength;
+        private final Future<byte[]> compressed;
+
+        Frame(int uncompressedLength, Future<byte[]> compressed) {
+            this.uncompressedLength = uncompressedLength;
+            this.compressed = compressed;
+        }
+    }
+}
@@ -19,8 +19,9 @@ package org.gradle.caching.internal.tasks;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableListMultimap;
-import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
@@ -43,22 +44,32 @@ import org.gradle.api.internal.tasks.TaskFilePropertySpec;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginMetadata;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter;
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 
+import javax.annotation.Nullable;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -82,14 +93,34 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
         }
     };
 
+    // Files up to this size are read into memory and written to disk concurrently when unpacking
+    private static final int MAX_CONCURRENTLY_UNPACKED_FILE_SIZE = 1024 * 1024;
+    // The most file content that is held in memory waiting to be written. Files are written on the unpacking thread while this is exceeded
+    private static final int MAX_BUFFERED_UNPACKED_BYTES = 64 * 1024 * 1024;
+
     private final FileSystem fileSystem;
     private final StreamHasher streamHasher;
     private final StringInterner stringInterner;
+    private final ExecutorService unpackExecutor;
+    private final Semaphore bufferedUnpackedBytes;
 
     public TarTaskOutputPacker(FileSystem fileSystem, StreamHasher streamHasher, StringInterner stringInterner) {
+        this(fileSystem, streamHasher, stringInterner, null);
+    }
+
+    /**
+     * Creates a packer that writes the unpacked files concurrently using the given executor, if any.
+     */
+    public TarTaskOutputPacker(FileSystem fileSystem, StreamHasher streamHasher, StringInterner stringInterner, @Nullable ExecutorService unpackExecutor) {
+        this(fileSystem, streamHasher, stringInterner, unpackExecutor, MAX_BUFFERED_UNPACKED_BYTES);
+    }
+
+    TarTaskOutputPacker(FileSystem fileSystem, StreamHasher streamHasher, StringInterner stringInterner, @Nullable ExecutorService unpackExecutor, int maxBufferedUnpackedBytes) {
         this.fileSystem = fileSystem;
         this.streamHasher = streamHasher;
         this.stringInterner = stringInterner;
+        this.unpackExecutor = unpackExecutor;
+        this.bufferedUnpackedBytes = new Semaphore(maxBufferedUnpackedBytes);
     }
 
     @Override
@@ -253,42 +284,46 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
         });
         TarArchiveEntry tarEntry;
         TaskOutputOriginMetadata originMetadata = null;
-        ImmutableListMultimap.Builder<String, FileSnapshot> propertyFileSnapshots = ImmutableListMultimap.builder();
+        UnpackedSnapshots propertyFileSnapshots = new UnpackedSnapshots();
 
-        long entries = 0;
-        while ((tarEntry = tarInput.getNextTarEntry()) != null) {
-            ++entries;
-            String name = tarEntry.getName();
+        try {
+            long entries = 0;
+            while ((tarEntry = tarInput.getNextTarEntry()) != null) {
+                ++entries;
+                String name = tarEntry.getName();
+
+                if (name.equals(METADATA_PATH)) {
+                    // handle origin metadata
+                    originMetadata = readOriginAction.execute(new CloseShieldInputStream(tarInput));
+                } else {
+                    // handle output property
+                    Matcher matcher = PROPERTY_PATH.matcher(name);
+                    if (!matcher.matches()) {
+                        throw new IllegalStateException("Cached result format error, invalid contents: " + name);
+                    }
 
-            if (name.equals(METADATA_PATH)) {
-                // handle origin metadata
-                originMetadata = readOriginAction.execute(new CloseShieldInputStream(tarInput));
-            } else {
-                // handle output property
-                Matcher matcher = PROPERTY_PATH.matcher(name);
-                if (!matcher.matches()) {
-                    throw new IllegalStateException("Cached result format error, invalid contents: " + name);
-                }
+                    String propertyName = matcher.group(2);
+                    ResolvedTaskOutputFilePropertySpec propertySpec = propertySpecsMap.get(propertyName);
+                    if (propertySpec == null) {
+                        throw new IllegalStateException(String.format("No output property '%s' registered", propertyName));
+                    }
 
-                String propertyName = matcher.group(2);
-                ResolvedTaskOutputFilePropertySpec propertySpec = propertySpecsMap.get(propertyName);
-                if (propertySpec == null) {
-                    throw new IllegalStateException(String.format("No output property '%s' registered", propertyName));
+                    boolean outputMissing = matcher.group(1) != null;
+                    String childPath = matcher.group(3);
+                    unpackPropertyEntry(propertySpec, tarInput, tarEntry, childPath, outputMissing, propertyFileSnapshots);
                 }
-
-                boolean outputMissing = matcher.group(1) != null;
-                String childPath = matcher.group(3);
-                unpackPropertyEntry(propertySpec, tarInput, tarEntry, childPath, outputMissing, propertyFileSnapshots);
             }
-        }
-        if (originMetadata == null) {
-            throw new IllegalStateException("Cached result format error, no origin metadata was found.");
-        }
+            if (originMetadata == null) {
+                throw new IllegalStateException("Cached result format error, no origin metadata was found.");
+            }
 
-        return new UnpackResult(originMetadata, entries, propertyFileSnapshots.build());
+            return new UnpackResult(originMetadata, entries, propertyFileSnapshots.build());
+        } finally {
+            propertyFileSnapshots.awaitCompletion();
+        }
     }
 
-    private void unpackPropertyEntry(ResolvedTaskOutputFilePropertySpec propertySpec, InputStream input, TarArchiveEntry entry, String childPath, boolean missing, ImmutableMultimap.Builder<String, FileSnapshot> fileSnapshots) throws IOException {
+    private void unpackPropertyEntry(ResolvedTaskOutputFilePropertySpec propertySpec, InputStream input, TarArchiveEntry entry, String childPath, boolean missing, UnpackedSnapshots fileSnapshots) throws IOException {
         File propertyRoot = propertySpec.getOutputFile();
         String propertyName = propertySpec.getPropertyName();
         if (propertyRoot == null) {
@@ -326,23 +361,104 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
             outputFile = new File(propertyRoot, childPath);
         }
 
-        String internedPath = stringInterner.intern(outputFile.getAbsolutePath());
-        RelativePath relativePath = root ? RelativePath.parse(!isDirEntry, outputFile.getName()) : RelativePath.parse(!isDirEntry, childPath);
+        final String internedPath = stringInterner.intern(outputFile.getAbsolutePath());
+        final RelativePath relativePath = root ? RelativePath.parse(!isDirEntry, outputFile.getName()) : RelativePath.parse(!isDirEntry, childPath);
+        final int mode = entry.getMode() & FILE_PERMISSION_MASK;
         if (isDirEntry) {
             FileUtils.forceMkdir(outputFile);
-            fileSnapshots.put(propertyName, new DirectoryFileSnapshot(internedPath, relativePath, root));
-        } else {
-            OutputStream output = new FileOutputStream(outputFile);
-            HashCode hash;
+            fileSnapshots.add(propertyName, new DirectoryFileSnapshot(internedPath, relativePath, root));
+            fileSystem.chmod(outputFile, mode);
+        } else if (unpackExecutor != null && entry.getSize() <= MAX_CONCURRENTLY_UNPACKED_FILE_SIZE && bufferedUnpackedBytes.tryAcquire((int) entry.getSize())) {
+            final int size = (int) entry.getSize();
+            final File file = outputFile;
+            final boolean isRoot = root;
+            Future<FileSnapshot> snapshot;
             try {
-                hash = streamHasher.hashCopy(input, output);
-            } finally {
-                IOUtils.closeQuietly(output);
+                final byte[] content = new byte[size];
+                IOUtils.readFully(input, content);
+                snapshot = unpackExecutor.submit(new Callable<FileSnapshot>() {
+                    @Override
+                    public FileSnapshot call() throws IOException {
+                        try {
+                            return unpackFile(new ByteArrayInputStream(content), file, internedPath, relativePath, isRoot, mode);
+                        } finally {
+                            bufferedUnpackedBytes.release(size);
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                bufferedUnpackedBytes.release(size);
+                throw e;
+            } catch (RuntimeException e) {
+                bufferedUnpackedBytes.release(size);
+                throw e;
             }
-            FileHashSnapshot contentSnapshot = new FileHashSnapshot(hash, outputFile.lastModified());
-            fileSnapshots.put(propertyName, new RegularFileSnapshot(internedPath, relativePath, root, contentSnapshot));
+            fileSnapshots.add(propertyName, snapshot);
+        } else {
+            fileSnapshots.add(propertyName, unpackFile(input, outputFile, internedPath, relativePath, root, mode));
         }
+    }
+
+    private FileSnapshot unpackFile(InputStream input, File outputFile, String internedPath, RelativePath relativePath, boolean root, int mode) throws IOException {
+        OutputStream output = new FileOutputStream(outputFile);
+        HashCode hash;
+        try {
+            hash = streamHasher.hashCopy(input, output);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+        FileHashSnapshot contentSnapshot = new FileHashSnapshot(hash, outputFile.lastModified());
+        fileSystem.chmod(outputFile, mode);
+        return new RegularFileSnapshot(internedPath, relativePath, root, contentSnapshot);
+    }
+
+    /**
+     * Collects the snapshots of the unpacked files in the order of the entries, whether the files were unpacked on this thread or concurrently.
+     */
+    private static class UnpackedSnapshots {
+        private final List<String> propertyNames = Lists.newArrayList();
+        private final List<Future<FileSnapshot>> snapshots = Lists.newArrayList();
 
-        fileSystem.chmod(outputFile, entry.getMode() & FILE_PERMISSION_MASK);
+        void add(String propertyName, FileSnapshot snapshot) {
+            add(propertyName, Futures.immediateFuture(snapshot));
+        }
+
+        void add(String propertyName, Future<FileSnapshot> snapshot) {
+            propertyNames.add(propertyName);
+            snapshots.add(snapshot);
+        }
+
+        ImmutableListMultimap<String, FileSnapshot> build() throws IOException {
+            ImmutableListMultimap.Builder<String, FileSnapshot> builder = ImmutableListMultimap.builder();
+            for (int i = 0; i < snapshots.size(); i++) {
+                try {
+                    builder.put(propertyNames.get(i), snapshots.get(i).get());
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw UncheckedException.throwAsUncheckedException(e.getCause());
+                }
+            }
+            return builder.build();
+        }
+
+        /**
+         * Waits for files that are still being written, so that they can be cleaned up safely after a failure.
+         */
+        void awaitCompletion() {
+            for (Future<FileSnapshot> snapshot : snapshots) {
+                try {
+                    snapshot.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    // Already reported or about to be reported by build()
+                }
+            }
+        }
     }
 }
@@ -16,7 +16,9 @@
 
 package org.gradle.caching.internal.tasks;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSortedMap;
@@ -69,6 +71,12 @@ public class TaskOutputCacheCommandFactory {
             return !snapshot.isRoot();
         }
     };
+    private static final Function<ResolvedTaskOutputFilePropertySpec, File> GET_OUTPUT_FILE = new Function<ResolvedTaskOutputFilePropertySpec, File>() {
+        @Override
+        public File apply(ResolvedTaskOutputFilePropertySpec outputProperty) {
+            return outputProperty.getOutputFile();
+        }
+    };
 
     private final TaskOutputPacker packer;
     private final TaskOutputOriginFactory taskOutputOriginFactory;
@@ -115,7 +123,7 @@ public class TaskOutputCacheCommandFactory {
 
         @Override
         public BuildCacheLoadCommand.Result<TaskOutputOriginMetadata> load(InputStream input) {
-            taskOutputsGenerationListener.beforeTaskOutputsGenerated();
+            taskOutputsGenerationListener.beforeTaskOutputsGenerated(Iterables.filter(Iterables.transform(outputProperties, GET_OUTPUT_FILE), Predicates.notNull()));
             final TaskOutputPacker.UnpackResult unpackResult;
             try {
                 unpackResult = packer.unpack(outputProperties, input, taskOutputOriginFactory.createReader(task));
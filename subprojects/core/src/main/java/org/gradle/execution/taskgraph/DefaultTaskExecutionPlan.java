@@ -18,7 +18,6 @@ package org.gradle.execution.taskgraph;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
-import com.google.common.base.StandardSystemProperty;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -33,17 +32,19 @@ import org.gradle.api.Transformer;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.internal.GradleInternal;
 import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.changedetection.state.TaskDurationRepository;
 import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.api.internal.tasks.CachingTaskDependencyResolveContext;
 import org.gradle.api.internal.tasks.TaskContainerInternal;
 import org.gradle.api.internal.tasks.TaskDestroyablesInternal;
+import org.gradle.api.internal.tasks.TaskExecutionOutcome;
 import org.gradle.api.internal.tasks.TaskLocalStateInternal;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
 import org.gradle.execution.MultipleBuildFailures;
 import org.gradle.execution.TaskFailureHandler;
 import org.gradle.initialization.BuildCancellationToken;
-import org.gradle.internal.Pair;
+import org.gradle.internal.Factory;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.graph.CachingDirectedGraphWalker;
 import org.gradle.internal.graph.DirectedGraph;
@@ -54,11 +55,12 @@ import org.gradle.internal.resources.ResourceDeadlockException;
 import org.gradle.internal.resources.ResourceLock;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
 import org.gradle.internal.resources.ResourceLockState;
+import org.gradle.internal.time.Time;
+import org.gradle.internal.time.Timer;
 import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLease;
 import org.gradle.internal.work.WorkerLeaseService;
 import org.gradle.util.CollectionUtils;
 import org.gradle.util.Path;
-import org.gradle.util.TextUtil;
 
 import javax.annotation.Nullable;
 import java.io.File;
@@ -74,11 +76,11 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -94,7 +96,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     private final Set<TaskInfo> entryTasks = new LinkedHashSet<TaskInfo>();
     private final TaskInfoFactory nodeFactory = new TaskInfoFactory();
     private final LinkedHashMap<Task, TaskInfo> executionPlan = new LinkedHashMap<Task, TaskInfo>();
-    private final List<TaskInfo> executionQueue = new LinkedList<TaskInfo>();
+    private final ReadyTaskQueue readyTasks = new ReadyTaskQueue();
     private final Map<Project, ResourceLock> projectLocks = Maps.newHashMap();
     private final List<Throwable> failures = new ArrayList<Throwable>();
     private Spec<? super Task> filter = Specs.satisfyAll();
@@ -106,19 +108,35 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     private final Set<Task> filteredTasks = Sets.newIdentityHashSet();
     private final Map<TaskInfo, TaskMutationInfo> taskMutations = Maps.newIdentityHashMap();
     private final Map<File, String> canonicalizedFileCache = Maps.newIdentityHashMap();
-    private final Map<Pair<TaskInfo, TaskInfo>, Boolean> reachableCache = Maps.newHashMap();
-    private final Set<TaskInfo> dependenciesCompleteCache = Sets.newHashSet();
+    private final PathPrefixTrie<TaskInfo> runningTaskMutations = new PathPrefixTrie<TaskInfo>();
+    private final PathPrefixTrie<TaskInfo> intermediateOutputs = new PathPrefixTrie<TaskInfo>();
+    private final TaskReachabilityIndex reachability = new TaskReachabilityIndex();
     private final ResourceLockCoordinationService coordinationService;
     private final WorkerLeaseService workerLeaseService;
     private final GradleInternal gradle;
+    private final Factory<? extends TaskDurationRepository> taskDurationsFactory;
+    private final boolean prioritizeCriticalPath;
+    private final Map<TaskInfo, Timer> taskTimers = new ConcurrentHashMap<TaskInfo, Timer>();
+    private TaskDurationRepository taskDurations;
 
     private boolean tasksCancelled;
 
     public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, ResourceLockCoordinationService coordinationService, WorkerLeaseService workerLeaseService, GradleInternal gradle) {
+        this(cancellationToken, coordinationService, workerLeaseService, gradle, null, false);
+    }
+
+    /**
+     * @param taskDurationsFactory provides the durations of previous task executions and records the durations of this build. May be null, in which case no durations are recorded.
+     * @param prioritizeCriticalPath whether to select the tasks with the longest remaining path through the plan first, based on the durations of previous executions.
+     */
+    public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, ResourceLockCoordinationService coordinationService, WorkerLeaseService workerLeaseService, GradleInternal gradle,
+                                    @Nullable Factory<? extends TaskDurationRepository> taskDurationsFactory, boolean prioritizeCriticalPath) {
         this.cancellationToken = cancellationToken;
         this.coordinationService = coordinationService;
         this.workerLeaseService = workerLeaseService;
         this.gradle = gradle;
+        this.taskDurationsFactory = taskDurationsFactory;
+        this.prioritizeCriticalPath = prioritizeCriticalPath;
     }
 
     @Override
@@ -354,9 +372,21 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 }
             }
         }
-        executionQueue.clear();
-        executionQueue.addAll(executionPlan.values());
-
+        reachability.reset(executionPlan.values());
+        if (taskDurationsFactory != null && taskDurations == null) {
+            taskDurations = taskDurationsFactory.create();
+        }
+        readyTasks.reset(executionPlan.values(), new Function<TaskInfo, ResourceLock>() {
+            @Override
+            public ResourceLock apply(TaskInfo taskInfo) {
+                return getProjectLock(taskInfo);
+            }
+        }, prioritizeCriticalPath && taskDurations != null ? new Function<TaskInfo, Long>() {
+            @Override
+            public Long apply(TaskInfo taskInfo) {
+                return taskDurations.getPreviousDuration(taskInfo.getTask());
+            }
+        } : null);
     }
 
     private TaskMutationInfo getOrCreateMutationsOf(TaskInfo taskInfo) {
@@ -509,14 +539,16 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 nodeFactory.clear();
                 entryTasks.clear();
                 executionPlan.clear();
-                executionQueue.clear();
+                readyTasks.clear();
                 projectLocks.clear();
                 failures.clear();
                 taskMutations.clear();
                 canonicalizedFileCache.clear();
-                reachableCache.clear();
-                dependenciesCompleteCache.clear();
+                runningTaskMutations.clear();
+                intermediateOutputs.clear();
+                reachability.clear();
                 runningTasks.clear();
+                taskTimers.clear();
                 return FINISHED;
             }
         });
@@ -584,35 +616,56 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
     private TaskInfo selectNextTask(final WorkerLease workerLease) {
         final AtomicReference<TaskInfo> selected = new AtomicReference<TaskInfo>();
-        final Iterator<TaskInfo> iterator = executionQueue.iterator();
-        while (iterator.hasNext()) {
-            final TaskInfo taskInfo = iterator.next();
-            if (taskInfo.isReady() && allDependenciesComplete(taskInfo)) {
+        final AtomicBoolean workerLeaseAvailable = new AtomicBoolean(true);
+        final AtomicBoolean projectLockAvailable = new AtomicBoolean();
+        for (ReadyTaskQueue.ProjectQueue projectQueue : readyTasks.getProjectQueues()) {
+            final ResourceLock projectLock = projectQueue.getProjectLock();
+            if (projectLock.isLocked() && !projectLock.isLockedByCurrentThread()) {
+                // Another worker is executing a task of this project, none of the tasks in this queue can be selected
+                continue;
+            }
+            projectLockAvailable.set(true);
+            for (final TaskInfo taskInfo : projectQueue) {
                 coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
                     @Override
                     public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
-                        ResourceLock projectLock = getProjectLock(taskInfo);
+                        if (!projectLock.tryLock()) {
+                            projectLockAvailable.set(false);
+                            return FAILED;
+                        }
+                        if (!workerLease.tryLock()) {
+                            workerLeaseAvailable.set(false);
+                            return FAILED;
+                        }
                         // TODO: convert output file checks to a resource lock
-                        if (!projectLock.tryLock() || !workerLease.tryLock() || !canRunWithCurrentlyExecutedTasks(taskInfo)) {
+                        if (!canRunWithCurrentlyExecutedTasks(taskInfo)) {
                             return FAILED;
                         }
 
                         selected.set(taskInfo);
                         if (taskInfo.allDependenciesSuccessful()) {
                             recordTaskStarted(taskInfo);
+                            if (taskDurations != null) {
+                                taskTimers.put(taskInfo, Time.startTimer());
+                            }
                             taskInfo.startExecution();
                         } else {
                             taskInfo.skipExecution();
                         }
-                        iterator.remove();
                         return FINISHED;
                     }
                 });
 
-                if (selected.get() != null) {
+                if (selected.get() != null || !workerLeaseAvailable.get() || !projectLockAvailable.get()) {
                     break;
                 }
             }
+            if (selected.get() != null || !workerLeaseAvailable.get()) {
+                break;
+            }
+        }
+        if (selected.get() != null) {
+            readyTasks.taskStateChanged(selected.get());
         }
         return selected.get();
     }
@@ -630,19 +683,6 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
     }
 
-    private boolean allDependenciesComplete(TaskInfo taskInfo) {
-        if (dependenciesCompleteCache.contains(taskInfo)) {
-            return true;
-        }
-
-        boolean dependenciesComplete = taskInfo.allDependenciesComplete();
-        if (dependenciesComplete) {
-            dependenciesCompleteCache.add(taskInfo);
-        }
-
-        return dependenciesComplete;
-    }
-
     private boolean allProjectsLocked() {
         for (ResourceLock lock : projectLocks.values()) {
             if (!lock.isLocked()) {
@@ -676,14 +716,14 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         if (!runningTasks.isEmpty()) {
             Set<String> candidateTaskOutputs = getOutputPaths(taskInfo);
             Set<String> candidateTaskMutations = !candidateTaskOutputs.isEmpty() ? candidateTaskOutputs : candidateTaskDestroyables;
-            Pair<TaskInfo, String> overlap = firstRunningTaskWithOverlappingMutations(candidateTaskMutations);
-            if (overlap != null) {
+            TaskInfo overlappingTask = firstRunningTaskWithOverlappingMutations(candidateTaskMutations);
+            if (overlappingTask != null) {
                 return false;
             }
         }
 
-        Pair<TaskInfo, String> overlap = firstTaskWithDestroyedIntermediateInput(taskInfo, candidateTaskDestroyables);
-        if (overlap != null) {
+        TaskInfo consumingTask = firstTaskWithDestroyedIntermediateInput(taskInfo, candidateTaskDestroyables);
+        if (consumingTask != null) {
             return false;
         }
 
@@ -711,73 +751,33 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     }
 
     @Nullable
-    private Pair<TaskInfo, String> firstRunningTaskWithOverlappingMutations(Set<String> candidateTaskMutations) {
-        if (!candidateTaskMutations.isEmpty()) {
-            for (TaskInfo runningTask : runningTasks) {
-                TaskMutationInfo taskMutationInfo = taskMutations.get(runningTask);
-                Iterable<String> runningTaskMutations = Iterables.concat(taskMutationInfo.outputPaths, taskMutationInfo.destroyablePaths);
-                String firstOverlap = findFirstOverlap(candidateTaskMutations, runningTaskMutations);
-                if (firstOverlap != null) {
-                    return Pair.of(runningTask, firstOverlap);
+    private TaskInfo firstRunningTaskWithOverlappingMutations(Set<String> candidateTaskMutations) {
+        if (!runningTaskMutations.isEmpty()) {
+            for (String path : candidateTaskMutations) {
+                TaskInfo runningTask = runningTaskMutations.findOverlapping(path);
+                if (runningTask != null) {
+                    return runningTask;
                 }
             }
         }
-
         return null;
     }
 
     @Nullable
-    private Pair<TaskInfo, String> firstTaskWithDestroyedIntermediateInput(final TaskInfo taskInfo, Set<String> destroyablePaths) {
-        if (!destroyablePaths.isEmpty()) {
-            Iterator<TaskMutationInfo> iterator = taskMutations.values().iterator();
-            while (iterator.hasNext()) {
-                TaskMutationInfo taskMutationInfo = iterator.next();
-                if (taskMutationInfo.task.isComplete() && !taskMutationInfo.consumingTasks.isEmpty()) {
-                    String firstOverlap = findFirstOverlap(destroyablePaths, taskMutationInfo.outputPaths);
-                    if (firstOverlap != null) {
-                        for (TaskInfo consumingTask : taskMutationInfo.consumingTasks) {
-                            if (consumingTask != taskInfo && !isReachableFrom(consumingTask, taskInfo)) {
-                                return Pair.of(consumingTask, firstOverlap);
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return null;
-    }
-
-    private boolean isReachableFrom(TaskInfo fromTask, TaskInfo toTask) {
-        Pair<TaskInfo, TaskInfo> taskPair = Pair.of(fromTask, toTask);
-        if (reachableCache.get(taskPair) != null) {
-            return reachableCache.get(taskPair);
-        }
-
-        boolean reachable = false;
-        for (TaskInfo dependency : Iterables.concat(fromTask.getMustSuccessors(), fromTask.getDependencySuccessors())) {
-            if (!dependency.isComplete()) {
-                if (dependency == toTask) {
-                    reachable = true;
-                }
-                if (isReachableFrom(dependency, toTask)) {
-                    reachable = true;
-                }
+    private TaskInfo firstTaskWithDestroyedIntermediateInput(final TaskInfo taskInfo, Set<String> destroyablePaths) {
+        if (!destroyablePaths.isEmpty() && !intermediateOutputs.isEmpty()) {
+            Set<TaskInfo> producerTasks = new LinkedHashSet<TaskInfo>();
+            for (String path : destroyablePaths) {
+                intermediateOutputs.collectOverlapping(path, producerTasks);
             }
-        }
-
-        reachableCache.put(taskPair, reachable);
-        return reachable;
-    }
-
-    private String findFirstOverlap(Iterable<String> paths1, Iterable<String> paths2) {
-        for (String path1 : paths1) {
-            for (String path2 : paths2) {
-                if (pathsOverlap(path1, path2)) {
-                    return TextUtil.shorterOf(path1, path2);
+            for (TaskInfo producerTask : producerTasks) {
+                for (TaskInfo consumingTask : taskMutations.get(producerTask).consumingTasks) {
+                    if (consumingTask != taskInfo && !reachability.isReachableFrom(consumingTask, taskInfo)) {
+                        return consumingTask;
+                    }
                 }
             }
         }
-
         return null;
     }
 
@@ -796,42 +796,43 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         return canonicalizedPaths(canonicalizedFileCache, ((TaskDestroyablesInternal) task.getTask().getDestroyables()).getFiles());
     }
 
-    private boolean pathsOverlap(String firstPath, String secondPath) {
-        if (firstPath.equals(secondPath)) {
-            return true;
-        }
-
-        String shorter;
-        String longer;
-        if (firstPath.length() > secondPath.length()) {
-            shorter = secondPath;
-            longer = firstPath;
-        } else {
-            shorter = firstPath;
-            longer = secondPath;
-        }
-        return longer.startsWith(shorter + StandardSystemProperty.FILE_SEPARATOR.value());
-    }
-
     private void recordTaskStarted(TaskInfo taskInfo) {
         runningTasks.add(taskInfo);
         TaskMutationInfo taskMutationInfo = taskMutations.get(taskInfo);
         taskMutationInfo.outputPaths.addAll(getOutputPaths(taskInfo));
         taskMutationInfo.destroyablePaths.addAll(getDestroyablePaths(taskInfo));
+        for (String path : Iterables.concat(taskMutationInfo.outputPaths, taskMutationInfo.destroyablePaths)) {
+            runningTaskMutations.add(path, taskInfo);
+        }
     }
 
     private void recordTaskCompleted(TaskInfo taskInfo) {
         runningTasks.remove(taskInfo);
         TaskMutationInfo taskMutationInfo = taskMutations.get(taskInfo);
+        for (String path : Iterables.concat(taskMutationInfo.outputPaths, taskMutationInfo.destroyablePaths)) {
+            runningTaskMutations.remove(path, taskInfo);
+        }
         for (TaskInfo producerTask : taskMutationInfo.consumesOutputOf) {
             TaskMutationInfo producerTaskMutationInfo = taskMutations.get(producerTask);
             if (producerTaskMutationInfo.consumingTasks.remove(taskInfo) && canRemoveTaskMutation(producerTaskMutationInfo)) {
-                taskMutations.remove(producerTask);
+                removeTaskMutation(producerTaskMutationInfo);
             }
         }
 
         if (canRemoveTaskMutation(taskMutationInfo)) {
             taskMutations.remove(taskInfo);
+        } else {
+            // The outputs of the task are inputs of tasks that did not complete yet, and must not be destroyed until those tasks have run
+            for (String path : taskMutationInfo.outputPaths) {
+                intermediateOutputs.add(path, taskInfo);
+            }
+        }
+    }
+
+    private void removeTaskMutation(TaskMutationInfo taskMutationInfo) {
+        taskMutations.remove(taskMutationInfo.task);
+        for (String path : taskMutationInfo.outputPaths) {
+            intermediateOutputs.remove(path, taskMutationInfo.task);
         }
     }
 
@@ -840,6 +841,8 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     }
 
     public void taskComplete(final TaskInfo taskInfo) {
+        // Record the duration before taking the state lock, as this may need to access the task history cache
+        recordTaskDuration(taskInfo);
         coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
             @Override
             public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
@@ -849,12 +852,20 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 }
 
                 taskInfo.finishExecution();
+                readyTasks.taskStateChanged(taskInfo);
                 recordTaskCompleted(taskInfo);
                 return FINISHED;
             }
         });
     }
 
+    private void recordTaskDuration(TaskInfo taskInfo) {
+        Timer timer = taskTimers.remove(taskInfo);
+        if (timer != null && taskInfo.getTask().getState().getOutcome() == TaskExecutionOutcome.EXECUTED) {
+            taskDurations.recordDuration(taskInfo.getTask(), timer.getElapsedMillis());
+        }
+    }
+
     private void enforceFinalizerTasks(TaskInfo taskInfo) {
         for (TaskInfo finalizerNode : taskInfo.getFinalizers()) {
             if (finalizerNode.isRequired() || finalizerNode.isMustNotRun()) {
@@ -876,6 +887,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
                 if (node.isMustNotRun() || node.isRequired()) {
                     node.enforceRun();
+                    readyTasks.taskStateChanged(node);
                 }
             }
         }
@@ -916,12 +928,14 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             // Allow currently executing and enforced tasks to complete, but skip everything else.
             if (taskInfo.isRequired()) {
                 taskInfo.skipExecution();
+                readyTasks.taskStateChanged(taskInfo);
                 aborted = true;
             }
 
             // If abortAll is set, also stop enforced tasks.
             if (abortAll && taskInfo.isReady()) {
                 taskInfo.abortExecution();
+                readyTasks.taskStateChanged(taskInfo);
                 aborted = true;
             }
         }
@@ -967,12 +981,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     }
 
     private boolean workRemaining() {
-        for (TaskInfo taskInfo : executionQueue) {
-            if (!taskInfo.isComplete()) {
-                return true;
-            }
-        }
-        return false;
+        return readyTasks.hasWaitingTasks();
     }
 
     private static class GraphEdge {
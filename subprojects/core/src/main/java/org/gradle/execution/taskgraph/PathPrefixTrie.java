@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution.taskgraph;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Associates values with file system paths, and finds the values of the paths that overlap a given path.
+ *
+ * <p>Two paths overlap when they are the same or when one of them is an ancestor of the other. The paths are kept in a trie of path segments,
+ * in which each node knows how many values are registered at or below it. This way, finding the values that overlap a path only visits the
+ * nodes along the path, plus the nodes below it that actually have values.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+class PathPrefixTrie<T> {
+    private final Node<T> root = new Node<T>(null, "");
+
+    /**
+     * Registers the given value for the given path. Registering the same value more than once for a path has no effect.
+     */
+    void add(String path, T value) {
+        Node<T> node = root;
+        for (String segment : segments(path)) {
+            node = node.getOrCreateChild(segment);
+        }
+        if (node.values.add(value)) {
+            for (Node<T> current = node; current != null; current = current.parent) {
+                current.count++;
+            }
+        }
+    }
+
+    /**
+     * Removes the given value from the given path.
+     */
+    void remove(String path, T value) {
+        Node<T> node = root;
+        for (String segment : segments(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return;
+            }
+        }
+        if (!node.values.remove(value)) {
+            return;
+        }
+        for (Node<T> current = node; current != null; current = current.parent) {
+            current.count--;
+            if (current.count == 0 && current.parent != null) {
+                current.parent.children.remove(current.segment);
+            }
+        }
+    }
+
+    /**
+     * Returns one of the values registered for a path that overlaps the given path, or {@code null} when there is none.
+     */
+    @Nullable
+    T findOverlapping(String path) {
+        Node<T> node = root;
+        for (String segment : segments(path)) {
+            if (!node.values.isEmpty()) {
+                return node.values.iterator().next();
+            }
+            node = node.children.get(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        if (node.count == 0) {
+            return null;
+        }
+        // Nodes without values below them are removed, so any path down from here leads to a value
+        while (node.values.isEmpty()) {
+            node = node.children.values().iterator().next();
+        }
+        return node.values.iterator().next();
+    }
+
+    /**
+     * Adds the values registered for the paths that overlap the given path to the given collection.
+     */
+    void collectOverlapping(String path, Collection<? super T> result) {
+        Node<T> node = root;
+        for (String segment : segments(path)) {
+            result.addAll(node.values);
+            node = node.children.get(segment);
+            if (node == null) {
+                return;
+            }
+        }
+        Deque<Node<T>> queue = new ArrayDeque<Node<T>>();
+        queue.add(node);
+        while (!queue.isEmpty()) {
+            Node<T> current = queue.removeFirst();
+            result.addAll(current.values);
+            queue.addAll(current.children.values());
+        }
+    }
+
+    boolean isEmpty() {
+        return root.count == 0;
+    }
+
+    void clear() {
+        root.children.clear();
+        root.values.clear();
+        root.count = 0;
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<String>();
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            int end = path.indexOf(File.separatorChar, start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                segments.add(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return segments;
+    }
+
+    private static class Node<T> {
+        private final Node<T> parent;
+        private final String segment;
+        private final Map<String, Node<T>> children = new HashMap<String, Node<T>>();
+        private final Set<T> values = new LinkedHashSet<T>();
+        private int count;
+
+        Node(@Nullable Node<T> parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+
+        Node<T> getOrCreateChild(String segment) {
+            Node<T> child = children.get(segment);
+            if (child == null) {
+                child = new Node<T>(this, segment);
+                children.put(segment, child);
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Maps;
+import org.gradle.internal.resources.ResourceLock;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keeps track of the tasks of an execution plan that are ready to be selected for execution, so that the next task can be selected without
+ * visiting the whole plan.
+ *
+ * <p>For each task, the queue counts the dependencies and must run after tasks that are not complete yet. These counters are updated when
+ * a task changes state, by visiting only the tasks that are waiting for it. A task is queued while it should run and its counter is 0.
+ * Queued tasks are kept in a separate queue for each project lock, so that projects that are currently locked can be skipped as a whole.</p>
+ *
+ * <p>When the expected durations of the tasks are known, tasks on the longest remaining path through the plan are selected first, so
+ * that long chains of tasks start as early as possible. The length of the path of a task is its own expected duration plus the longest
+ * path of the tasks that wait for it. Tasks whose duration is not known are expected to take as long as the average known task.
+ * Otherwise, and between tasks with paths of the same length, tasks are selected in plan order.</p>
+ *
+ * <p>This class is not thread-safe. The execution plan accesses it while holding the coordination service state lock.</p>
+ */
+class ReadyTaskQueue {
+    private static final Comparator<Node> SELECTION_ORDER = new Comparator<Node>() {
+        @Override
+        public int compare(Node left, Node right) {
+            if (left.remainingPath != right.remainingPath) {
+                return left.remainingPath > right.remainingPath ? -1 : 1;
+            }
+            return left.index - right.index;
+        }
+    };
+    private static final Comparator<ProjectQueue> HEAD_SELECTION_ORDER = new Comparator<ProjectQueue>() {
+        @Override
+        public int compare(ProjectQueue left, ProjectQueue right) {
+            return SELECTION_ORDER.compare(left.tasks.first(), right.tasks.first());
+        }
+    };
+
+    private final Map<TaskInfo, Node> nodes = Maps.newIdentityHashMap();
+    private final Map<ResourceLock, ProjectQueue> projectQueues = new LinkedHashMap<ResourceLock, ProjectQueue>();
+    private int waitingTasks;
+
+    /**
+     * Replaces the contents of this queue with the given tasks, in plan order.
+     */
+    void reset(Collection<TaskInfo> plan, Function<? super TaskInfo, ? extends ResourceLock> projectLocks) {
+        reset(plan, projectLocks, null);
+    }
+
+    /**
+     * Replaces the contents of this queue with the given tasks, in plan order, prioritizing the tasks by the given expected durations.
+     *
+     * @param expectedDurations the expected duration of each task in milliseconds, or -1 when not known. May be null, in which case tasks are selected in plan order.
+     */
+    void reset(Collection<TaskInfo> plan, Function<? super TaskInfo, ? extends ResourceLock> projectLocks, @Nullable Function<? super TaskInfo, Long> expectedDurations) {
+        clear();
+        List<Node> planOrder = new ArrayList<Node>(plan.size());
+        int index = 0;
+        for (TaskInfo task : plan) {
+            ResourceLock projectLock = projectLocks.apply(task);
+            ProjectQueue projectQueue = projectQueues.get(projectLock);
+            if (projectQueue == null) {
+                projectQueue = new ProjectQueue(projectLock);
+                projectQueues.put(projectLock, projectQueue);
+            }
+            Node node = new Node(task, index++, projectQueue);
+            nodes.put(task, node);
+            planOrder.add(node);
+        }
+        for (Node node : planOrder) {
+            Set<TaskInfo> successors = new LinkedHashSet<TaskInfo>(node.task.getMustSuccessors());
+            successors.addAll(node.task.getDependencySuccessors());
+            for (TaskInfo successor : successors) {
+                Node successorNode = nodes.get(successor);
+                if (successorNode != null) {
+                    successorNode.waitingPredecessors.add(node);
+                }
+                if (!successor.isComplete()) {
+                    node.incompleteSuccessors++;
+                }
+            }
+        }
+        if (expectedDurations != null) {
+            computeRemainingPaths(planOrder, expectedDurations);
+        }
+        for (Node node : planOrder) {
+            node.complete = node.task.isComplete();
+            node.ready = node.task.isReady();
+            if (node.ready) {
+                waitingTasks++;
+            }
+            updateQueued(node);
+        }
+    }
+
+    private static void computeRemainingPaths(List<Node> planOrder, Function<? super TaskInfo, Long> expectedDurations) {
+        long[] durations = new long[planOrder.size()];
+        long knownTotal = 0;
+        int knownCount = 0;
+        for (Node node : planOrder) {
+            long duration = expectedDurations.apply(node.task);
+            durations[node.index] = duration;
+            if (duration >= 0) {
+                knownTotal += duration;
+                knownCount++;
+            }
+        }
+        long defaultDuration = knownCount == 0 ? 0 : knownTotal / knownCount;
+        // The tasks that wait for a task come later in the plan, so visiting the plan backwards visits them first
+        for (int i = planOrder.size() - 1; i >= 0; i--) {
+            Node node = planOrder.get(i);
+            long longestWaitingPath = 0;
+            for (Node predecessor : node.waitingPredecessors) {
+                longestWaitingPath = Math.max(longestWaitingPath, predecessor.remainingPath);
+            }
+            long duration = durations[i] >= 0 ? durations[i] : defaultDuration;
+            node.remainingPath = duration + longestWaitingPath;
+        }
+    }
+
+    /**
+     * Updates the queue after the given task has changed state. Does nothing for tasks that are not part of the plan.
+     */
+    void taskStateChanged(TaskInfo task) {
+        Node node = nodes.get(task);
+        if (node == null) {
+            return;
+        }
+        boolean complete = task.isComplete();
+        if (complete != node.complete) {
+            node.complete = complete;
+            for (Node predecessor : node.waitingPredecessors) {
+                predecessor.incompleteSuccessors += complete ? -1 : 1;
+                updateQueued(predecessor);
+            }
+        }
+        boolean ready = task.isReady();
+        if (ready != node.ready) {
+            node.ready = ready;
+            waitingTasks += ready ? 1 : -1;
+        }
+        updateQueued(node);
+    }
+
+    /**
+     * Returns true when some tasks of the plan still have to be selected for execution.
+     */
+    boolean hasWaitingTasks() {
+        return waitingTasks > 0;
+    }
+
+    /**
+     * Returns the project queues that contain tasks which can be selected, ordered by their first task.
+     */
+    List<ProjectQueue> getProjectQueues() {
+        List<ProjectQueue> queues = new ArrayList<ProjectQueue>();
+        for (ProjectQueue projectQueue : projectQueues.values()) {
+            if (!projectQueue.tasks.isEmpty()) {
+                queues.add(projectQueue);
+            }
+        }
+        if (queues.size() > 1) {
+            Collections.sort(queues, HEAD_SELECTION_ORDER);
+        }
+        return queues;
+    }
+
+    void clear() {
+        nodes.clear();
+        projectQueues.clear();
+        waitingTasks = 0;
+    }
+
+    private static void updateQueued(Node node) {
+        boolean queued = node.ready && node.incompleteSuccessors == 0;
+        if (queued != node.queued) {
+            node.queued = queued;
+            if (queued) {
+                node.projectQueue.tasks.add(node);
+            } else {
+                node.projectQueue.tasks.remove(node);
+            }
+        }
+    }
+
+    /**
+     * The tasks that can be selected for execution and that require the same project lock.
+     */
+    static class ProjectQueue implements Iterable<TaskInfo> {
+        private final ResourceLock projectLock;
+        private final TreeSet<Node> tasks = new TreeSet<Node>(SELECTION_ORDER);
+
+        private ProjectQueue(ResourceLock projectLock) {
+            this.projectLock = projectLock;
+        }
+
+        ResourceLock getProjectLock() {
+            return projectLock;
+        }
+
+        /**
+         * Iterates over the tasks in the order they should be selected. The queue must not be updated while iterating.
+         */
+        @Override
+        public Iterator<TaskInfo> iterator() {
+            final Iterator<Node> iterator = tasks.iterator();
+            return new Iterator<TaskInfo>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public TaskInfo next() {
+                    return iterator.next().task;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    private static class Node {
+        private final TaskInfo task;
+        private final int index;
+        private final ProjectQueue projectQueue;
+        private final List<Node> waitingPredecessors = new ArrayList<Node>();
+        private int incompleteSuccessors;
+        private long remainingPath;
+        private boolean complete;
+        private boolean ready;
+        private boolean queued;
+
+        Node(TaskInfo task, int index, ProjectQueue projectQueue) {
+            this.task = task;
+            this.index = index;
+            this.projectQueue = projectQueue;
+        }
+    }
+}
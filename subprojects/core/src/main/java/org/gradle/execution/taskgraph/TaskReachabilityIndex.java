@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution.taskgraph;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Answers whether a task of an execution plan has to wait for another task, via its dependencies and must run after tasks that are not complete.
+ *
+ * <p>The plan is in execution order, so a task can only wait for tasks that come before it in the plan. Each query only visits the tasks
+ * between the two tasks in the plan, and reuses the same set of visited plan positions, so no memory is kept per task.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+class TaskReachabilityIndex {
+    private final Map<TaskInfo, Integer> positions = Maps.newIdentityHashMap();
+    private final BitSet visited = new BitSet();
+    private final Deque<TaskInfo> queue = new ArrayDeque<TaskInfo>();
+
+    void reset(Collection<TaskInfo> plan) {
+        clear();
+        int position = 0;
+        for (TaskInfo task : plan) {
+            positions.put(task, position++);
+        }
+    }
+
+    /**
+     * Returns true when the given task has to wait, directly or indirectly, for the other task.
+     */
+    boolean isReachableFrom(TaskInfo fromTask, TaskInfo toTask) {
+        Integer fromPosition = positions.get(fromTask);
+        Integer toPosition = positions.get(toTask);
+        if (fromPosition == null || toPosition == null || toPosition >= fromPosition) {
+            return false;
+        }
+        try {
+            queue.add(fromTask);
+            while (!queue.isEmpty()) {
+                TaskInfo task = queue.removeFirst();
+                for (TaskInfo successor : Iterables.concat(task.getMustSuccessors(), task.getDependencySuccessors())) {
+                    if (successor.isComplete()) {
+                        continue;
+                    }
+                    if (successor == toTask) {
+                        return true;
+                    }
+                    Integer position = positions.get(successor);
+                    // Tasks that come before the other task in the plan cannot wait for it
+                    if (position != null && position > toPosition && !visited.get(position)) {
+                        visited.set(position);
+                        queue.add(successor);
+                    }
+                }
+            }
+            return false;
+        } finally {
+            queue.clear();
+            visited.clear(toPosition, fromPosition);
+        }
+    }
+
+    void clear() {
+        positions.clear();
+        visited.clear();
+        queue.clear();
+    }
+}
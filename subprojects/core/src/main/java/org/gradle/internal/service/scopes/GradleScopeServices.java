@@ -15,12 +15,14 @@
  */
 package org.gradle.internal.service.scopes;
 
+import org.gradle.StartParameter;
 import org.gradle.api.Action;
 import org.gradle.api.internal.GradleInternal;
 import org.gradle.api.internal.InstantiatorFactory;
 import org.gradle.api.internal.artifacts.dsl.dependencies.ProjectFinder;
 import org.gradle.api.internal.changedetection.state.FileSystemSnapshotter;
 import org.gradle.api.internal.changedetection.state.InMemoryCacheDecoratorFactory;
+import org.gradle.api.internal.changedetection.state.TaskDurationRepository;
 import org.gradle.api.internal.file.FileResolver;
 import org.gradle.api.internal.plugins.DefaultPluginManager;
 import org.gradle.api.internal.plugins.ImperativeOnlyPluginTarget;
@@ -158,7 +160,20 @@ public class GradleScopeServices extends DefaultServiceRegistry {
                 return get(TaskExecuter.class);
             }
         };
-        return new DefaultTaskGraphExecuter(listenerManager, taskPlanExecutor, taskExecuterFactory, cancellationToken, buildOperationExecutor, workerLeaseService, coordinationService, gradleInternal);
+        StartParameter startParameter = gradleInternal.getStartParameter();
+        boolean prioritizeCriticalPath = Boolean.getBoolean("org.gradle.tasks.prioritize-critical-path")
+            && startParameter.isParallelProjectExecutionEnabled() && startParameter.getMaxWorkerCount() > 1;
+        Factory<TaskDurationRepository> taskDurationsFactory = null;
+        if (prioritizeCriticalPath) {
+            // The task durations are stored in the project cache directory, which is not known until the settings have been loaded
+            taskDurationsFactory = new Factory<TaskDurationRepository>() {
+                @Override
+                public TaskDurationRepository create() {
+                    return get(TaskDurationRepository.class);
+                }
+            };
+        }
+        return new DefaultTaskGraphExecuter(listenerManager, taskPlanExecutor, taskExecuterFactory, taskDurationsFactory, prioritizeCriticalPath, cancellationToken, buildOperationExecutor, workerLeaseService, coordinationService, gradleInternal);
     }
 
     ServiceRegistryFactory createServiceRegistryFactory(final ServiceRegistry services) {
@@ -38,6 +38,8 @@ import org.gradle.util.GUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
 import java.net.URL;
 import java.util.Arrays;
@@ -57,6 +59,7 @@ public class DefaultWorkerProcessBuilder implements WorkerProcessBuilder {
     private final Set<String> packages = new HashSet<String>();
     private final Set<File> applicationClasspath = new LinkedHashSet<File>();
     private final MemoryManager memoryManager;
+    private final PreStartedWorkerProcessPool preStartedProcesses;
     private Action<? super WorkerProcessContext> action;
     private LogLevel logLevel = LogLevel.LIFECYCLE;
     private String baseName = "Gradle Worker";
@@ -65,13 +68,14 @@ public class DefaultWorkerProcessBuilder implements WorkerProcessBuilder {
     private List<URL> implementationClassPath;
     private boolean shouldPublishJvmMemoryInfo;
 
-    DefaultWorkerProcessBuilder(JavaExecHandleFactory execHandleFactory, MessagingServer server, IdGenerator<?> idGenerator, ApplicationClassesInSystemClassLoaderWorkerImplementationFactory workerImplementationFactory, OutputEventListener outputEventListener, MemoryManager memoryManager) {
+    DefaultWorkerProcessBuilder(JavaExecHandleFactory execHandleFactory, MessagingServer server, IdGenerator<?> idGenerator, ApplicationClassesInSystemClassLoaderWorkerImplementationFactory workerImplementationFactory, OutputEventListener outputEventListener, MemoryManager memoryManager, @Nullable PreStartedWorkerProcessPool preStartedProcesses) {
         this.javaCommand = execHandleFactory.newJavaExec();
         this.server = server;
         this.idGenerator = idGenerator;
         this.workerImplementationFactory = workerImplementationFactory;
         this.outputEventListener = outputEventListener;
         this.memoryManager = memoryManager;
+        this.preStartedProcesses = preStartedProcesses;
     }
 
     public int getConnectTimeoutSeconds() {
@@ -193,8 +197,11 @@ public class DefaultWorkerProcessBuilder implements WorkerProcessBuilder {
 
         workerImplementationFactory.prepareJavaCommand(id, displayName, this, implementationClassPath, localAddress, javaCommand, shouldPublishJvmMemoryInfo);
 
-        javaCommand.args("'" + displayName + "'");
-        ExecHandle execHandle = javaCommand.build();
+        ExecHandle execHandle = preStartedProcesses == null ? null : preStartedProcesses.take(javaCommand);
+        if (execHandle == null) {
+            javaCommand.args("'" + displayName + "'");
+            execHandle = javaCommand.build();
+        }
 
         workerProcess.setExecHandle(execHandle);
 
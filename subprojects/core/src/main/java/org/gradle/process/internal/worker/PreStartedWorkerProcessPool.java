@@ -0,0 +1,397 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.process.internal.worker;
+
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.process.ExecResult;
+import org.gradle.process.internal.DefaultExecHandleBuilder;
+import org.gradle.process.internal.ExecHandle;
+import org.gradle.process.internal.ExecHandleListener;
+import org.gradle.process.internal.ExecHandleState;
+import org.gradle.process.internal.JavaExecHandleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps worker processes that have been started ahead of time, so that a worker process can be handed out without waiting for a JVM to start.
+ *
+ * <p>A worker process reads its configuration, including its implementation classpath and its worker action, from its standard input. A pre-started
+ * process is launched without any standard input and waits for its configuration. When a worker process is requested with the same command line,
+ * a pre-started process is handed out and the configuration of the requested worker is written to its standard input when the worker is started.
+ * Replacement processes are started in the background, so that the next request does not wait either.</p>
+ *
+ * <p>Unless the JVM loads the application classpath from an options file, the command line of a worker does not contain the application classpath,
+ * so pre-started processes are shared between workers with different classpaths. Pre-started processes are kept for the most recently requested
+ * command lines only, and are stopped when this pool is stopped.</p>
+ *
+ * <p>The number of processes to keep for each command line is set with the {@value #PROCESSES_PER_COMMAND_PROPERTY} system property. No processes
+ * are pre-started by default.</p>
+ */
+public class PreStartedWorkerProcessPool implements Stoppable {
+    public static final String PROCESSES_PER_COMMAND_PROPERTY = "org.gradle.internal.worker.pre-started-processes";
+    private static final Logger LOGGER = LoggerFactory.getLogger(PreStartedWorkerProcessPool.class);
+    private static final int MAX_COMMANDS = 4;
+    private static final String DISPLAY_NAME = "Gradle Worker (pre-started)";
+
+    private final ExecutorFactory executorFactory;
+    private final int processesPerCommand;
+    private final Object lock = new Object();
+    private final Map<LaunchCommand, CommandProcesses> commands = new LinkedHashMap<LaunchCommand, CommandProcesses>(16, 0.75f, true);
+    private ManagedExecutor executor;
+    private boolean stopped;
+
+    public PreStartedWorkerProcessPool(ExecutorFactory executorFactory) {
+        this(executorFactory, Integer.getInteger(PROCESSES_PER_COMMAND_PROPERTY, 0));
+    }
+
+    public PreStartedWorkerProcessPool(ExecutorFactory executorFactory, int processesPerCommand) {
+        this.executorFactory = executorFactory;
+        this.processesPerCommand = processesPerCommand;
+    }
+
+    /**
+     * Takes a process that was pre-started with the command line of the given builder, and starts replacement processes for later requests.
+     * The standard input of the builder is written to the returned process when it is started.
+     *
+     * @return the process, or null when no process is available for the command line.
+     */
+    @Nullable
+    public ExecHandle take(JavaExecHandleBuilder javaCommand) {
+        if (processesPerCommand <= 0) {
+            return null;
+        }
+        LaunchCommand command = new LaunchCommand(javaCommand.getCommandLine(), javaCommand.getWorkingDir(), javaCommand.getActualEnvironment(), javaCommand.isRedirectErrorStream());
+        PreStartedProcess process = null;
+        List<PreStartedProcess> evicted = new ArrayList<PreStartedProcess>();
+        synchronized (lock) {
+            if (stopped) {
+                return null;
+            }
+            CommandProcesses processes = commands.get(command);
+            if (processes == null) {
+                processes = new CommandProcesses(command);
+                commands.put(command, processes);
+                evictLeastRecentlyUsed(evicted);
+            }
+            while (process == null && !processes.available.isEmpty()) {
+                PreStartedProcess candidate = processes.available.removeFirst();
+                if (candidate.getState() == ExecHandleState.STARTED) {
+                    process = candidate;
+                } else {
+                    evicted.add(candidate);
+                }
+            }
+            while (processes.available.size() + processes.starting < processesPerCommand) {
+                processes.starting++;
+                startProcess(processes);
+            }
+        }
+        for (PreStartedProcess candidate : evicted) {
+            candidate.abort();
+        }
+        if (process == null) {
+            return null;
+        }
+        LOGGER.debug("Using pre-started worker process {}.", process);
+        process.setConfiguration(javaCommand.getStandardInput());
+        return process;
+    }
+
+    private void evictLeastRecentlyUsed(List<PreStartedProcess> evicted) {
+        Iterator<CommandProcesses> iterator = commands.values().iterator();
+        while (commands.size() > MAX_COMMANDS) {
+            CommandProcesses processes = iterator.next();
+            processes.evicted = true;
+            evicted.addAll(processes.available);
+            processes.available.clear();
+            iterator.remove();
+        }
+    }
+
+    private void startProcess(final CommandProcesses processes) {
+        if (executor == null) {
+            executor = executorFactory.create("Pre-start worker processes");
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PreStartedProcess process = launch(processes.command);
+                boolean discard;
+                synchronized (lock) {
+                    processes.starting--;
+                    discard = process == null || stopped || processes.evicted;
+                    if (!discard) {
+                        processes.available.addLast(process);
+                    }
+                }
+                if (discard && process != null) {
+                    process.abort();
+                }
+            }
+        });
+    }
+
+    @Nullable
+    private PreStartedProcess launch(final LaunchCommand command) {
+        DeferredInput input = new DeferredInput();
+        DefaultExecHandleBuilder builder = new DefaultExecHandleBuilder();
+        builder.setDisplayName(DISPLAY_NAME);
+        builder.commandLine(command.commandLine);
+        builder.args("'" + DISPLAY_NAME + "'");
+        builder.setWorkingDir(command.workingDir);
+        builder.setEnvironment(command.environment);
+        builder.setStandardInput(input);
+        if (command.redirectErrorStream) {
+            builder.redirectErrorStream();
+        }
+        final PreStartedProcess process = new PreStartedProcess(builder.build(), input);
+        process.addListener(new ExecHandleListener() {
+            @Override
+            public void executionStarted(ExecHandle execHandle) {
+            }
+
+            @Override
+            public void executionFinished(ExecHandle execHandle, ExecResult execResult) {
+                synchronized (lock) {
+                    CommandProcesses processes = commands.get(command);
+                    if (processes != null) {
+                        processes.available.remove(process);
+                    }
+                }
+                process.input.close();
+            }
+        });
+        try {
+            process.delegate.start();
+            return process;
+        } catch (Throwable e) {
+            LOGGER.debug("Could not pre-start worker process.", e);
+            input.close();
+            return null;
+        }
+    }
+
+    @Override
+    public void stop() {
+        List<PreStartedProcess> processes = new ArrayList<PreStartedProcess>();
+        ManagedExecutor executor;
+        synchronized (lock) {
+            stopped = true;
+            for (CommandProcesses commandProcesses : commands.values()) {
+                processes.addAll(commandProcesses.available);
+            }
+            commands.clear();
+            executor = this.executor;
+        }
+        if (executor != null) {
+            executor.stop();
+        }
+        for (PreStartedProcess process : processes) {
+            process.abort();
+        }
+    }
+
+    private static class LaunchCommand {
+        private final List<String> commandLine;
+        private final File workingDir;
+        private final Map<String, String> environment;
+        private final boolean redirectErrorStream;
+
+        LaunchCommand(List<String> commandLine, File workingDir, Map<String, String> environment, boolean redirectErrorStream) {
+            this.commandLine = commandLine;
+            this.workingDir = workingDir;
+            this.environment = environment;
+            this.redirectErrorStream = redirectErrorStream;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            LaunchCommand other = (LaunchCommand) o;
+            return redirectErrorStream == other.redirectErrorStream
+                && commandLine.equals(other.commandLine)
+                && workingDir.equals(other.workingDir)
+                && environment.equals(other.environment);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = commandLine.hashCode();
+            result = 31 * result + workingDir.hashCode();
+            result = 31 * result + environment.hashCode();
+            return result;
+        }
+    }
+
+    private static class CommandProcesses {
+        private final LaunchCommand command;
+        private final Deque<PreStartedProcess> available = new ArrayDeque<PreStartedProcess>();
+        private int starting;
+        private boolean evicted;
+
+        CommandProcesses(LaunchCommand command) {
+            this.command = command;
+        }
+    }
+
+    /**
+     * A process that has been started and waits for its configuration. Starting this handle writes the configuration to the process.
+     */
+    private static class PreStartedProcess implements ExecHandle {
+        private final ExecHandle delegate;
+        private final DeferredInput input;
+        private InputStream configuration;
+
+        PreStartedProcess(ExecHandle delegate, DeferredInput input) {
+            this.delegate = delegate;
+            this.input = input;
+        }
+
+        void setConfiguration(InputStream configuration) {
+            this.configuration = configuration;
+        }
+
+        @Override
+        public File getDirectory() {
+            return delegate.getDirectory();
+        }
+
+        @Override
+        public String getCommand() {
+            return delegate.getCommand();
+        }
+
+        @Override
+        public List<String> getArguments() {
+            return delegate.getArguments();
+        }
+
+        @Override
+        public Map<String, String> getEnvironment() {
+            return delegate.getEnvironment();
+        }
+
+        @Override
+        public ExecHandle start() {
+            if (configuration == null) {
+                throw new IllegalStateException("No configuration has been provided for this worker process.");
+            }
+            input.connect(configuration);
+            return this;
+        }
+
+        @Override
+        public ExecHandleState getState() {
+            return delegate.getState();
+        }
+
+        @Override
+        public void abort() {
+            try {
+                delegate.abort();
+            } finally {
+                input.close();
+            }
+        }
+
+        @Override
+        public ExecResult waitForFinish() {
+            return delegate.waitForFinish();
+        }
+
+        @Override
+        public void addListener(ExecHandleListener listener) {
+            delegate.addListener(listener);
+        }
+
+        @Override
+        public void removeListener(ExecHandleListener listener) {
+            delegate.removeListener(listener);
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+
+    /**
+     * The standard input of a pre-started process, which blocks until the configuration of the worker is available.
+     */
+    private static class DeferredInput extends InputStream {
+        private InputStream delegate;
+        private boolean closed;
+
+        synchronized void connect(InputStream input) {
+            if (!closed) {
+                delegate = input;
+                notifyAll();
+            }
+        }
+
+        @Nullable
+        private synchronized InputStream awaitDelegate() throws IOException {
+            while (delegate == null && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            return closed ? null : delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            InputStream input = awaitDelegate();
+            return input == null ? -1 : input.read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            InputStream input = awaitDelegate();
+            return input == null ? -1 : input.read(bytes, offset, count);
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+}
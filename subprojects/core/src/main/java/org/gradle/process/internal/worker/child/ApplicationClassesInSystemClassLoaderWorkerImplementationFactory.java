@@ -43,7 +43,10 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -72,6 +75,7 @@ public class ApplicationClassesInSystemClassLoaderWorkerImplementationFactory im
     private final TemporaryFileProvider temporaryFileProvider;
     private final JvmVersionDetector jvmVersionDetector;
     private final File gradleUserHomeDir;
+    private final Map<List<File>, File> optionsFiles = new HashMap<List<File>, File>();
 
     public ApplicationClassesInSystemClassLoaderWorkerImplementationFactory(ClassPathRegistry classPathRegistry, TemporaryFileProvider temporaryFileProvider, JvmVersionDetector jvmVersionDetector, File gradleUserHomeDir) {
         this.classPathRegistry = classPathRegistry;
@@ -93,8 +97,7 @@ public class ApplicationClassesInSystemClassLoaderWorkerImplementationFactory im
         boolean useOptionsFile = shouldUseOptionsFile(execSpec);
         if (useOptionsFile) {
             // Use an options file to pass across application classpath
-            File optionsFile = temporaryFileProvider.createTemporaryFile("gradle-worker-classpath", "txt");
-            List<String> jvmArgs = writeOptionsFile(workerMainClassPath.getAsFiles(), applicationClasspath, optionsFile);
+            List<String> jvmArgs = getOptionsFileArgs(workerMainClassPath.getAsFiles(), applicationClasspath);
             execSpec.jvmArgs(jvmArgs);
         } else {
             // Use a dummy security manager, which hacks the application classpath into the system ClassLoader
@@ -153,10 +156,25 @@ public class ApplicationClassesInSystemClassLoaderWorkerImplementationFactory im
         return executableVersion != null && executableVersion.isJava9Compatible();
     }
 
-    private List<String> writeOptionsFile(Collection<File> workerMainClassPath, Collection<File> applicationClasspath, File optionsFile) {
+    /**
+     * Returns the arguments that point the JVM at an options file containing the given classpath. The options file is reused for workers with the same classpath,
+     * so that these workers are started with the same command line.
+     */
+    private synchronized List<String> getOptionsFileArgs(Collection<File> workerMainClassPath, Collection<File> applicationClasspath) {
         List<File> classpath = new ArrayList<File>(workerMainClassPath.size() + applicationClasspath.size());
         classpath.addAll(workerMainClassPath);
         classpath.addAll(applicationClasspath);
+        File optionsFile = optionsFiles.get(classpath);
+        if (optionsFile != null && optionsFile.isFile()) {
+            return Collections.singletonList("@" + optionsFile.getAbsolutePath());
+        }
+        optionsFile = temporaryFileProvider.createTemporaryFile("gradle-worker-classpath", "txt");
+        List<String> jvmArgs = writeOptionsFile(classpath, optionsFile);
+        optionsFiles.put(classpath, optionsFile);
+        return jvmArgs;
+    }
+
+    private List<String> writeOptionsFile(List<File> classpath, File optionsFile) {
         List<String> argumentList = Arrays.asList("-cp", Joiner.on(File.pathSeparator).join(classpath));
         return ArgWriter.argsFileGenerator(optionsFile, ArgWriter.unixStyleFactory()).transform(argumentList);
     }
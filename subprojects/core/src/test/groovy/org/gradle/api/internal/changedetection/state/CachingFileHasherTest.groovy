@@ -125,6 +125,44 @@ class CachingFileHasherTest extends Specification {
         0 * _._
     }
 
+    def doesNotLoadPersistentValueWhenHashIsKeptInMemory() {
+        def stat = fileSystem.stat(file)
+
+        when:
+        hasher.hash(file)
+        def result = hasher.hash(file)
+
+        then:
+        result == hash
+
+        and:
+        2 * timeStampInspector.timestampCanBeUsedToDetectFileChange(file.absolutePath, stat.lastModified) >> true
+        1 * cache.get(file.absolutePath) >> null
+        1 * target.hash(file) >> hash
+        1 * cache.put(file.absolutePath, _)
+        0 * _._
+    }
+
+    def hashesFileWhenInMemoryValueIsDiscarded() {
+        def stat = fileSystem.stat(file)
+
+        when:
+        hasher.hash(file)
+        hasher.discard(file.absolutePath)
+        def result = hasher.hash(file)
+
+        then:
+        result == hash
+
+        and:
+        2 * timeStampInspector.timestampCanBeUsedToDetectFileChange(file.absolutePath, stat.lastModified) >> true
+        2 * cache.get(file.absolutePath) >> null
+        2 * target.hash(file) >> hash
+        2 * cache.put(file.absolutePath, _)
+        1 * cache.remove(file.absolutePath)
+        0 * _._
+    }
+
     def doesNotLoadCachedValueWhenTimestampCannotBeUsedToDetectChange() {
         def stat = fileSystem.stat(file)
 
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.hash.Hashing
+import spock.lang.Specification
+
+class CompactFileHashCacheTest extends Specification {
+    def cache = new CompactFileHashCache(100000)
+
+    def "returns hash only when length and timestamp match"() {
+        def hash = Hashing.md5().hashString("content")
+
+        when:
+        cache.put("/some/file", 12, 34, hash)
+
+        then:
+        cache.get("/some/file", 12, 34) == hash
+        cache.get("/some/file", 13, 34) == null
+        cache.get("/some/file", 12, 35) == null
+        cache.get("/some/other", 12, 34) == null
+    }
+
+    def "replaces existing entry"() {
+        def hash = Hashing.md5().hashString("content")
+        def newHash = Hashing.md5().hashString("new content")
+
+        when:
+        cache.put("/some/file", 12, 34, hash)
+        cache.put("/some/file", 15, 36, newHash)
+
+        then:
+        cache.get("/some/file", 15, 36) == newHash
+        cache.size() == 1
+    }
+
+    def "keeps entries while growing and after removing others"() {
+        when:
+        (1..5000).each { cache.put("/file$it", it, it, hashOf(it)) }
+        (1..5000).findAll { it % 3 == 0 }.each { cache.remove("/file$it") }
+
+        then:
+        cache.size() == 5000 - 1666
+        (1..5000).every { cache.get("/file$it", it, it) == (it % 3 == 0 ? null : hashOf(it)) }
+    }
+
+    def "discards entries when full"() {
+        def cache = new CompactFileHashCache(16 * 100)
+
+        when:
+        (1..10000).each { cache.put("/file$it", it, it, hashOf(it)) }
+
+        then:
+        cache.size() <= 16 * 100
+        cache.get("/file10000", 10000, 10000) == hashOf(10000)
+    }
+
+    def "does not cache hashes that are not 16 bytes long"() {
+        when:
+        cache.put("/some/file", 12, 34, HashCode.fromInt(123))
+
+        then:
+        cache.get("/some/file", 12, 34) == null
+        cache.size() == 0
+    }
+
+    private static HashCode hashOf(int value) {
+        return Hashing.md5().hashString("content $value")
+    }
+}
@@ -18,7 +18,12 @@ package org.gradle.api.internal.changedetection.state
 
 import org.gradle.BuildResult
 import org.gradle.api.internal.GradleInternal
+import org.gradle.api.internal.file.TemporaryFileProvider
 import org.gradle.internal.classpath.CachedJarFileStore
+import org.gradle.internal.filewatch.FileWatcher
+import org.gradle.internal.filewatch.FileWatcherEvent
+import org.gradle.internal.filewatch.FileWatcherFactory
+import org.gradle.internal.filewatch.FileWatcherListener
 import org.gradle.test.fixtures.file.TestFile
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.junit.Rule
@@ -30,10 +35,11 @@ class DefaultFileSystemMirrorTest extends Specification {
 
     DefaultFileSystemMirror mirror
     TestFile cacheDir
+    CachedJarFileStore fileStore
 
     def setup() {
         cacheDir = tmpDir.createDir("cache")
-        def fileStore = Stub(CachedJarFileStore)
+        fileStore = Stub(CachedJarFileStore)
         fileStore.fileStoreRoots >> [cacheDir]
         mirror = new DefaultFileSystemMirror([fileStore])
     }
@@ -141,4 +147,269 @@ class DefaultFileSystemMirrorTest extends Specification {
         mirror.getDirectoryTree(file.path) == null
         mirror.getContent(file.path) == null
     }
+
+    def "discards only state for affected locations and their ancestors when task outputs are generated"() {
+        def outputDir = tmpDir.file("project/build")
+        def output = outputDir.file("classes/A.class")
+        def sibling = tmpDir.file("project/build-sibling")
+        def input = tmpDir.file("project/src/A.java")
+        def outputSnapshot = Stub(FileSnapshot)
+        def siblingSnapshot = Stub(FileSnapshot)
+        def inputSnapshot = Stub(FileSnapshot)
+        def projectTreeSnapshot = Stub(FileTreeSnapshot)
+        def outputTreeSnapshot = Stub(FileTreeSnapshot)
+        def snapshot = Stub(Snapshot)
+
+        given:
+        _ * outputSnapshot.path >> output.path
+        _ * siblingSnapshot.path >> sibling.path
+        _ * inputSnapshot.path >> input.path
+        _ * projectTreeSnapshot.path >> tmpDir.file("project").path
+        _ * outputTreeSnapshot.path >> outputDir.path
+
+        mirror.putFile(outputSnapshot)
+        mirror.putFile(siblingSnapshot)
+        mirror.putFile(inputSnapshot)
+        mirror.putDirectory(projectTreeSnapshot)
+        mirror.putDirectory(outputTreeSnapshot)
+        mirror.putContent(input.path, snapshot)
+
+        when:
+        mirror.beforeTaskOutputsGenerated([outputDir])
+
+        then:
+        mirror.getFile(output.path) == null
+        mirror.getDirectoryTree(outputDir.path) == null
+        mirror.getDirectoryTree(tmpDir.file("project").path) == null
+        mirror.getFile(sibling.path) == siblingSnapshot
+        mirror.getFile(input.path) == inputSnapshot
+        mirror.getContent(input.path) == snapshot
+        mirror.invalidationCount == 3
+    }
+
+    def "discards all state outside the caches when a file system root is affected"() {
+        def root = File.listRoots().find { tmpDir.testDirectory.absolutePath.startsWith(it.absolutePath) }
+        def file = tmpDir.file("project/src/A.java")
+        def cacheFile = cacheDir.file("some-file.txt")
+        def fileSnapshot = Stub(FileSnapshot)
+        def treeSnapshot = Stub(FileTreeSnapshot)
+        def cacheFileSnapshot = Stub(FileSnapshot)
+
+        given:
+        _ * fileSnapshot.path >> file.path
+        _ * treeSnapshot.path >> file.parentFile.path
+        _ * cacheFileSnapshot.path >> cacheFile.path
+
+        mirror.putFile(fileSnapshot)
+        mirror.putDirectory(treeSnapshot)
+        mirror.putFile(cacheFileSnapshot)
+
+        when:
+        mirror.beforeTaskOutputsGenerated([root])
+
+        then:
+        mirror.getFile(file.path) == null
+        mirror.getDirectoryTree(file.parentFile.path) == null
+        mirror.getFile(cacheFile.path) == cacheFileSnapshot
+        mirror.invalidationCount == 2
+    }
+
+    def "counts hits and misses until end of build"() {
+        def file = tmpDir.file("a")
+        def fileSnapshot = Stub(FileSnapshot)
+        _ * fileSnapshot.path >> file.path
+
+        when:
+        mirror.getFile(file.path)
+        mirror.putFile(fileSnapshot)
+        mirror.getFile(file.path)
+        mirror.getFile(file.path)
+        mirror.beforeTaskOutputsGenerated()
+
+        then:
+        mirror.hitCount == 2
+        mirror.missCount == 1
+        mirror.invalidationCount == 1
+
+        when:
+        mirror.beforeComplete()
+
+        then:
+        mirror.hitCount == 0
+        mirror.missCount == 0
+        mirror.invalidationCount == 0
+    }
+
+    def "retains state between builds and discards state for changed locations when watching"() {
+        def watcherFactory = Mock(FileWatcherFactory)
+        def watcher = Mock(FileWatcher)
+        def changed = tmpDir.createFile("dir/changed")
+        def unchanged = tmpDir.createFile("dir/unchanged")
+        def changedSnapshot = Stub(FileSnapshot)
+        def unchangedSnapshot = Stub(FileSnapshot)
+        def treeSnapshot = Stub(FileTreeSnapshot)
+        _ * changedSnapshot.path >> changed.path
+        _ * unchangedSnapshot.path >> unchanged.path
+        _ * treeSnapshot.path >> changed.parentFile.path
+        _ * watcher.running >> true
+
+        given:
+        mirror = new DefaultFileSystemMirror([fileStore], watcherFactory, temporaryFileProvider())
+
+        when:
+        snapshot(changedSnapshot)
+        snapshot(unchangedSnapshot)
+        mirror.getDirectoryTree(treeSnapshot.path)
+        mirror.putDirectory(treeSnapshot)
+
+        then:
+        1 * watcherFactory.watch(_, _) >> { onError, l -> listener = l; watcher }
+        1 * watcher.watch({ it.roots as List == [syncDir] })
+        1 * watcher.watch({ it.roots as List == [changed.parentFile] })
+        0 * watcher.watch(_)
+
+        when:
+        mirror.beforeComplete()
+        listener.onChange(watcher, FileWatcherEvent.modify(changed))
+        startNextBuild()
+
+        then:
+        mirror.getFile(changed.path) == null
+        mirror.getDirectoryTree(changed.parentFile.path) == null
+        mirror.getFile(unchanged.path) == unchangedSnapshot
+    }
+
+    def "watches a location before its state is calculated"() {
+        def watcherFactory = Mock(FileWatcherFactory)
+        def watcher = Mock(FileWatcher)
+        def file = tmpDir.createFile("dir/a")
+        _ * watcherFactory.watch(_, _) >> { onError, l -> listener = l; watcher }
+
+        given:
+        mirror = new DefaultFileSystemMirror([fileStore], watcherFactory, temporaryFileProvider())
+
+        when:
+        mirror.getFile(file.path)
+
+        then:
+        1 * watcher.watch({ it.roots as List == [syncDir] })
+        1 * watcher.watch({ it.roots as List == [file.parentFile] })
+
+        when:
+        mirror.getDirectoryTree(tmpDir.file("dir/sub/missing").path)
+        mirror.getContent(file.path)
+
+        then:
+        0 * watcher.watch(_)
+    }
+
+    def "discards state at start of next build when location was not watched before state was calculated"() {
+        def watcherFactory = Mock(FileWatcherFactory)
+        def watcher = Stub(FileWatcher)
+        def file = tmpDir.createFile("dir/a")
+        def fileSnapshot = Stub(FileSnapshot)
+        _ * fileSnapshot.path >> file.path
+        _ * watcher.running >> true
+        _ * watcherFactory.watch(_, _) >> { onError, l -> listener = l; watcher }
+
+        given:
+        mirror = new DefaultFileSystemMirror([fileStore], watcherFactory, temporaryFileProvider())
+
+        when:
+        mirror.putFile(fileSnapshot)
+
+        then:
+        mirror.getFile(file.path) == fileSnapshot
+
+        when:
+        mirror.beforeComplete()
+        startNextBuild()
+
+        then:
+        mirror.getFile(file.path) == null
+    }
+
+    def "discards all state when watcher loses events"() {
+        def watcherFactory = Mock(FileWatcherFactory)
+        def watcher = Stub(FileWatcher)
+        def file = tmpDir.createFile("a")
+        def fileSnapshot = Stub(FileSnapshot)
+        _ * fileSnapshot.path >> file.path
+        _ * watcher.running >> true
+        _ * watcherFactory.watch(_, _) >> { onError, l -> listener = l; watcher }
+
+        given:
+        mirror = new DefaultFileSystemMirror([fileStore], watcherFactory, temporaryFileProvider())
+        snapshot(fileSnapshot)
+
+        when:
+        mirror.beforeComplete()
+
+        then:
+        mirror.getFile(file.path) == fileSnapshot
+
+        when:
+        listener.onChange(watcher, FileWatcherEvent.undefined())
+        startNextBuild()
+
+        then:
+        mirror.getFile(file.path) == null
+    }
+
+    def "discards all state when watcher is no longer running at start of next build"() {
+        def watcherFactory = Mock(FileWatcherFactory)
+        def watcher = Stub(FileWatcher)
+        def file = tmpDir.createFile("a")
+        def fileSnapshot = Stub(FileSnapshot)
+        def running = true
+        _ * fileSnapshot.path >> file.path
+        _ * watcher.running >> { running }
+        _ * watcherFactory.watch(_, _) >> { onError, l -> listener = l; watcher }
+
+        given:
+        mirror = new DefaultFileSystemMirror([fileStore], watcherFactory, temporaryFileProvider())
+        snapshot(fileSnapshot)
+        mirror.beforeComplete()
+
+        when:
+        running = false
+        mirror.afterStart()
+
+        then:
+        mirror.getFile(file.path) == null
+    }
+
+    FileWatcherListener listener
+    TestFile syncDir
+
+    private TemporaryFileProvider temporaryFileProvider() {
+        syncDir = tmpDir.createDir("sync")
+        def provider = Stub(TemporaryFileProvider)
+        _ * provider.createTemporaryDirectory(_, _) >> syncDir
+        return provider
+    }
+
+    private void snapshot(FileSnapshot fileSnapshot) {
+        assert mirror.getFile(fileSnapshot.path) == null
+        mirror.putFile(fileSnapshot)
+    }
+
+    /**
+     * Starts the next build, delivering the events for the marker files the mirror uses to synchronize with the watcher.
+     */
+    private void startNextBuild() {
+        def done = false
+        def acknowledger = Thread.start {
+            while (!done) {
+                syncDir.listFiles().each { listener.onChange(null, FileWatcherEvent.create(it)) }
+                Thread.sleep(10)
+            }
+        }
+        try {
+            mirror.afterStart()
+        } finally {
+            done = true
+            acknowledger.join()
+        }
+    }
 }
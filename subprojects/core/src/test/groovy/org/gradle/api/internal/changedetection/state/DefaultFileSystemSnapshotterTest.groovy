@@ -21,6 +21,7 @@ import org.gradle.api.internal.file.TestFiles
 import org.gradle.internal.hash.TestFileHasher
 import org.gradle.caching.internal.DefaultBuildCacheHasher
 import org.gradle.internal.file.FileType
+import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.junit.Rule
 import spock.lang.Specification
@@ -94,6 +95,26 @@ class DefaultFileSystemSnapshotterTest extends Specification {
         snapshot2.is(snapshot)
     }
 
+    def "snapshots a directory hierarchy concurrently in the same order as when snapshotting sequentially"() {
+        def d = tmpDir.createDir("d")
+        (1..20).each { dir ->
+            (1..10).each { file -> d.createFile("d$dir/f$file") << "content $dir $file" }
+        }
+        def buildOperationExecutor = new TestBuildOperationExecutor()
+        def parallelSnapshotter = new ParallelSnapshotter(buildOperationExecutor, 8)
+        def parallel = new DefaultFileSystemSnapshotter(fileHasher, new StringInterner(), TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), new DefaultFileSystemMirror([]), parallelSnapshotter)
+
+        when:
+        def expected = snapshotter.snapshotDirectoryTree(d)
+        def actual = parallel.snapshotDirectoryTree(d)
+
+        then:
+        actual.descendants.size() == 220
+        actual.descendants*.path == expected.descendants*.path
+        actual.descendants*.content == expected.descendants*.content
+        buildOperationExecutor.operations.size() > 1
+    }
+
     def "fetches details of an empty directory and caches the result"() {
         def d = tmpDir.createDir("d")
 
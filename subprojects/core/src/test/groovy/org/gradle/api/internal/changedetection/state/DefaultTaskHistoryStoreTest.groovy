@@ -20,9 +20,12 @@ import org.gradle.cache.CacheBuilder
 import org.gradle.cache.CacheRepository
 import org.gradle.cache.FileLockManager
 import org.gradle.cache.PersistentCache
+import org.gradle.cache.PersistentIndexedCache
+import org.gradle.cache.PersistentIndexedCacheParameters
 import org.gradle.cache.internal.CrossBuildInMemoryCacheFactory
 import org.gradle.cache.internal.filelock.LockOptionsBuilder
 import org.gradle.internal.event.DefaultListenerManager
+import org.gradle.internal.serialize.BaseSerializerFactory
 import spock.lang.Specification
 
 class DefaultTaskHistoryStoreTest extends Specification {
@@ -43,4 +46,22 @@ class DefaultTaskHistoryStoreTest extends Specification {
         1 * cacheBuilder.open() >> backingCache
         0 * _._
     }
+
+    def "creates log structured caches"() {
+        CacheBuilder cacheBuilder = Stub()
+        PersistentCache backingCache = Mock()
+        PersistentIndexedCache<String, String> indexedCache = Mock()
+        cacheRepository.cache(gradle, "taskHistory") >> cacheBuilder
+        cacheBuilder.withDisplayName(_) >> cacheBuilder
+        cacheBuilder.withLockOptions(_) >> cacheBuilder
+        cacheBuilder.open() >> backingCache
+        def store = new DefaultTaskHistoryStore(gradle, cacheRepository, new InMemoryCacheDecoratorFactory(false, new CrossBuildInMemoryCacheFactory(new DefaultListenerManager())))
+
+        when:
+        def cache = store.createCache("taskHistory", String, BaseSerializerFactory.STRING_SERIALIZER, 10, false)
+
+        then:
+        cache == indexedCache
+        1 * backingCache.createCache({ PersistentIndexedCacheParameters parameters -> parameters.cacheName == "taskHistory" && parameters.logStructured }) >> indexedCache
+    }
 }
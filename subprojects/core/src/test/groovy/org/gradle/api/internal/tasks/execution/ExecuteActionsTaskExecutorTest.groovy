@@ -17,11 +17,15 @@ package org.gradle.api.internal.tasks.execution
 
 import org.gradle.api.execution.TaskActionListener
 import org.gradle.api.internal.TaskInternal
+import org.gradle.api.internal.TaskOutputsInternal
 import org.gradle.api.internal.changedetection.TaskArtifactState
+import org.gradle.api.internal.file.collections.SimpleFileCollection
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.internal.tasks.ContextAwareTaskAction
+import org.gradle.api.internal.tasks.TaskDestroyablesInternal
 import org.gradle.api.internal.tasks.TaskExecutionContext
 import org.gradle.api.internal.tasks.TaskExecutionOutcome
+import org.gradle.api.internal.tasks.TaskLocalStateInternal
 import org.gradle.api.internal.tasks.TaskStateInternal
 import org.gradle.api.tasks.StopActionException
 import org.gradle.api.tasks.StopExecutionException
@@ -40,6 +44,7 @@ import static java.util.Collections.emptyList
 
 class ExecuteActionsTaskExecutorTest extends Specification {
     def task = Mock(TaskInternal)
+    def taskOutputs = Mock(TaskOutputsInternal)
     def action1 = Mock(ContextAwareTaskAction)
     def action2 = Mock(ContextAwareTaskAction)
     def state = new TaskStateInternal()
@@ -59,6 +64,7 @@ class ExecuteActionsTaskExecutorTest extends Specification {
         task.getState() >> state
         project.getBuildScriptSource() >> scriptSource
         task.getStandardOutputCapture() >> standardOutputCapture
+        task.getOutputs() >> taskOutputs
         executionContext.taskArtifactState >> taskArtifactState
     }
 
@@ -97,6 +103,31 @@ class ExecuteActionsTaskExecutorTest extends Specification {
         state.actionable
     }
 
+    def reportsOnlyDeclaredOutputsLocalStateAndDestroyablesAsAffected() {
+        given:
+        def outputFile = new File("output")
+        def localStateFile = new File("local-state")
+        def destroyableFile = new File("destroyable")
+        def localState = Stub(TaskLocalStateInternal)
+        def destroyables = Stub(TaskDestroyablesInternal)
+        task.getTaskActions() >> [action1]
+        taskOutputs.hasDeclaredOutputs() >> true
+        taskOutputs.getFiles() >> new SimpleFileCollection(outputFile)
+        task.getLocalState() >> localState
+        localState.getFiles() >> new SimpleFileCollection(localStateFile)
+        task.getDestroyables() >> destroyables
+        destroyables.getFiles() >> new SimpleFileCollection(destroyableFile)
+
+        when:
+        executer.execute(task, state, executionContext)
+
+        then:
+        1 * internalListener.beforeTaskOutputsGenerated(_) >> { Iterable<File> affectedLocations ->
+            assert affectedLocations as List == [outputFile, localStateFile, destroyableFile]
+        }
+        0 * internalListener.beforeTaskOutputsGenerated()
+    }
+
     def executesEachActionInOrder() {
         given:
         task.getTaskActions() >> [action1, action2]
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution.taskgraph
+
+import spock.lang.Specification
+
+class PathPrefixTrieTest extends Specification {
+    def trie = new PathPrefixTrie<String>()
+
+    def "finds values of the same path, ancestors and descendants"() {
+        given:
+        trie.add(path("a/b"), "ab")
+
+        expect:
+        trie.findOverlapping(path("a/b")) == "ab"
+        trie.findOverlapping(path("a")) == "ab"
+        trie.findOverlapping(path("a/b/c/d")) == "ab"
+        trie.findOverlapping(path("a/c")) == null
+        trie.findOverlapping(path("a/bc")) == null
+        trie.findOverlapping(path("b")) == null
+    }
+
+    def "collects all overlapping values"() {
+        given:
+        trie.add(path("a"), "a")
+        trie.add(path("a/b"), "ab")
+        trie.add(path("a/b/c"), "abc")
+        trie.add(path("a/d"), "ad")
+
+        when:
+        def result = [] as Set
+        trie.collectOverlapping(path("a/b"), result)
+
+        then:
+        result == ["a", "ab", "abc"] as Set
+    }
+
+    def "removed values are no longer found"() {
+        given:
+        trie.add(path("a/b"), "one")
+        trie.add(path("a/b"), "two")
+        trie.add(path("a/c"), "three")
+
+        when:
+        trie.remove(path("a/b"), "one")
+
+        then:
+        trie.findOverlapping(path("a/b")) == "two"
+
+        when:
+        trie.remove(path("a/b"), "two")
+        trie.remove(path("a/c"), "three")
+
+        then:
+        trie.findOverlapping(path("a")) == null
+        trie.empty
+    }
+
+    def "removing a value that is not registered has no effect"() {
+        given:
+        trie.add(path("a/b"), "ab")
+
+        when:
+        trie.remove(path("a/b"), "other")
+        trie.remove(path("a/c"), "ab")
+        trie.remove(path("a/b/c"), "ab")
+
+        then:
+        trie.findOverlapping(path("a")) == "ab"
+    }
+
+    private static String path(String relativePath) {
+        return File.separator + "root" + File.separator + relativePath.replace('/', File.separator)
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph
+
+import com.google.common.base.Function
+import org.gradle.api.internal.TaskInternal
+import org.gradle.internal.resources.ResourceLock
+import org.gradle.test.fixtures.AbstractProjectBuilderSpec
+
+class ReadyTaskQueueTest extends AbstractProjectBuilderSpec {
+    def lock = Mock(ResourceLock)
+    def otherLock = Mock(ResourceLock)
+    def queue = new ReadyTaskQueue()
+
+    def "queues tasks in plan order once their dependencies are complete"() {
+        given:
+        def a = required("a")
+        def b = required("b")
+        def c = required("c")
+        c.addDependencySuccessor(a)
+        c.addMustSuccessor(b)
+        reset([a, b, c])
+
+        expect:
+        ready() == [a, b]
+        queue.hasWaitingTasks()
+
+        when:
+        start(a)
+        finish(a)
+
+        then:
+        ready() == [b]
+
+        when:
+        start(b)
+        finish(b)
+
+        then:
+        ready() == [c]
+
+        when:
+        start(c)
+        finish(c)
+
+        then:
+        ready() == []
+        !queue.hasWaitingTasks()
+    }
+
+    def "tasks are no longer waiting once they have been selected"() {
+        given:
+        def a = required("a")
+        reset([a])
+
+        when:
+        start(a)
+
+        then:
+        ready() == []
+        !queue.hasWaitingTasks()
+    }
+
+    def "skipped tasks release the tasks waiting for them"() {
+        given:
+        def a = required("a")
+        def b = required("b")
+        b.addDependencySuccessor(a)
+        reset([a, b])
+
+        when:
+        a.skipExecution()
+        queue.taskStateChanged(a)
+
+        then:
+        ready() == [b]
+    }
+
+    def "enforcing a task that must not run blocks the tasks waiting for it"() {
+        given:
+        def a = task("a")
+        a.mustNotRun()
+        def b = required("b")
+        b.addMustSuccessor(a)
+        reset([a, b])
+
+        expect:
+        ready() == [b]
+
+        when:
+        a.enforceRun()
+        queue.taskStateChanged(a)
+
+        then:
+        ready() == [a]
+        queue.hasWaitingTasks()
+
+        when:
+        start(a)
+        finish(a)
+
+        then:
+        ready() == [b]
+    }
+
+    def "keeps a separate queue for each project lock"() {
+        given:
+        def a = required("a")
+        def b = required("b")
+        def c = required("c")
+        queue.reset([a, b, c], new Function<TaskInfo, ResourceLock>() {
+            @Override
+            ResourceLock apply(TaskInfo taskInfo) {
+                return taskInfo.is(b) ? otherLock : lock
+            }
+        })
+
+        expect:
+        def queues = queue.projectQueues
+        queues*.projectLock == [lock, otherLock]
+        queues[0].toList() == [a, c]
+        queues[1].toList() == [b]
+    }
+
+    def "selects tasks on the longest remaining path first when durations are known"() {
+        given:
+        def a = required("a")
+        def b = required("b")
+        def c = required("c")
+        def d = required("d")
+        // c waits for a, so a has the longest remaining path. d is expected to take the average known duration of 53ms
+        c.addDependencySuccessor(a)
+        reset([a, b, c, d], [a: 10L, b: 50L, c: 100L, d: -1L])
+
+        expect:
+        ready() == [a, d, b]
+    }
+
+    def "selects tasks in plan order when durations are not known"() {
+        given:
+        def a = required("a")
+        def b = required("b")
+        reset([a, b], [a: -1L, b: -1L])
+
+        expect:
+        ready() == [a, b]
+    }
+
+    def "ignores tasks that are not part of the plan"() {
+        given:
+        def a = required("a")
+        def other = required("other")
+        reset([a])
+
+        when:
+        start(other)
+
+        then:
+        ready() == [a]
+    }
+
+    private void reset(List<TaskInfo> plan) {
+        queue.reset(plan, new Function<TaskInfo, ResourceLock>() {
+            @Override
+            ResourceLock apply(TaskInfo taskInfo) {
+                return lock
+            }
+        })
+    }
+
+    private void reset(List<TaskInfo> plan, Map<String, Long> durations) {
+        queue.reset(plan, new Function<TaskInfo, ResourceLock>() {
+            @Override
+            ResourceLock apply(TaskInfo taskInfo) {
+                return lock
+            }
+        }, new Function<TaskInfo, Long>() {
+            @Override
+            Long apply(TaskInfo taskInfo) {
+                return durations[taskInfo.task.name]
+            }
+        })
+    }
+
+    private List<TaskInfo> ready() {
+        return queue.projectQueues.collectMany { it.toList() }
+    }
+
+    private void start(TaskInfo task) {
+        task.startExecution()
+        queue.taskStateChanged(task)
+    }
+
+    private void finish(TaskInfo task) {
+        task.finishExecution()
+        queue.taskStateChanged(task)
+    }
+
+    private TaskInfo required(String name) {
+        def taskInfo = task(name)
+        taskInfo.require()
+        return taskInfo
+    }
+
+    private TaskInfo task(String name) {
+        return new TaskInfo(project.tasks.create(name) as TaskInternal)
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution.taskgraph
+
+import org.gradle.api.internal.TaskInternal
+import org.gradle.test.fixtures.AbstractProjectBuilderSpec
+
+class TaskReachabilityIndexTest extends AbstractProjectBuilderSpec {
+    def index = new TaskReachabilityIndex()
+
+    def "follows chains of dependencies"() {
+        given:
+        def a = required("a")
+        def b = required("b")
+        def c = required("c")
+        def d = required("d")
+        b.addDependencySuccessor(a)
+        c.addDependencySuccessor(b)
+        def plan = [a, b, c, d]
+        index.reset(plan)
+
+        expect:
+        index.isReachableFrom(c, a)
+        index.isReachableFrom(c, b)
+        index.isReachableFrom(b, a)
+        !index.isReachableFrom(a, c)
+        !index.isReachableFrom(d, a)
+        !index.isReachableFrom(a, a)
+        matchesPreviousBehaviour(plan)
+    }
+
+    def "follows must run after edges of finalizers"() {
+        given:
+        def destroyer = required("destroyer")
+        def a = required("a")
+        def finalizer = required("finalizer")
+        def c = required("c")
+        a.addDependencySuccessor(destroyer)
+        a.addFinalizer(finalizer)
+        finalizer.addMustSuccessor(a)
+        c.addDependencySuccessor(finalizer)
+        def plan = [destroyer, a, finalizer, c]
+        index.reset(plan)
+
+        expect:
+        index.isReachableFrom(finalizer, a)
+        index.isReachableFrom(finalizer, destroyer)
+        index.isReachableFrom(c, destroyer)
+        !index.isReachableFrom(a, finalizer)
+        matchesPreviousBehaviour(plan)
+    }
+
+    def "does not follow edges to completed tasks"() {
+        given:
+        def a = required("a")
+        def b = required("b")
+        def c = required("c")
+        b.addDependencySuccessor(a)
+        c.addDependencySuccessor(b)
+        def plan = [a, b, c]
+        index.reset(plan)
+
+        when:
+        b.startExecution()
+        b.finishExecution()
+
+        then:
+        !index.isReachableFrom(c, b)
+        !index.isReachableFrom(c, a)
+        index.isReachableFrom(b, a)
+        matchesPreviousBehaviour(plan)
+    }
+
+    def "answers repeated queries as the tasks complete"() {
+        given:
+        def a = required("a")
+        def b = required("b")
+        def c = required("c")
+        def d = required("d")
+        b.addDependencySuccessor(a)
+        c.addDependencySuccessor(a)
+        d.addDependencySuccessor(b)
+        d.addMustSuccessor(c)
+        def plan = [a, b, c, d]
+        index.reset(plan)
+
+        expect:
+        index.isReachableFrom(d, a)
+        matchesPreviousBehaviour(plan)
+
+        when:
+        b.startExecution()
+        b.finishExecution()
+
+        then:
+        index.isReachableFrom(d, a)
+        matchesPreviousBehaviour(plan)
+
+        when:
+        c.startExecution()
+        c.finishExecution()
+
+        then:
+        !index.isReachableFrom(d, a)
+        matchesPreviousBehaviour(plan)
+    }
+
+    def "ignores tasks that are not part of the plan"() {
+        given:
+        def a = required("a")
+        def other = required("other")
+        a.addDependencySuccessor(other)
+        index.reset([a])
+
+        expect:
+        !index.isReachableFrom(a, other)
+        !index.isReachableFrom(other, a)
+    }
+
+    private boolean matchesPreviousBehaviour(List<TaskInfo> plan) {
+        for (TaskInfo from : plan) {
+            for (TaskInfo to : plan) {
+                assert index.isReachableFrom(from, to) == previouslyReachable(from, to)
+            }
+        }
+        return true
+    }
+
+    /**
+     * The graph walk that the execution plan used before the index was introduced.
+     */
+    private static boolean previouslyReachable(TaskInfo fromTask, TaskInfo toTask) {
+        boolean reachable = false
+        for (TaskInfo dependency : fromTask.mustSuccessors + fromTask.dependencySuccessors) {
+            if (!dependency.complete) {
+                if (dependency.is(toTask)) {
+                    reachable = true
+                }
+                if (previouslyReachable(dependency, toTask)) {
+                    reachable = true
+                }
+            }
+        }
+        return reachable
+    }
+
+    private TaskInfo required(String name) {
+        def taskInfo = new TaskInfo(project.tasks.create(name) as TaskInternal)
+        taskInfo.require()
+        return taskInfo
+    }
+}
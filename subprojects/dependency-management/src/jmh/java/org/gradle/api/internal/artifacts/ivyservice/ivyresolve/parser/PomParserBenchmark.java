@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomDomParser.getAllChilds;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomDomParser.getFirstChildElement;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomDomParser.getFirstChildText;
+
+/**
+ * Compares reading the dependencies of a POM from a DOM, as {@link PomReader} did before, with reading them from the elements parsed by {@link PomStaxParser}.
+ *
+ * <p>The POM has a build section of the same size as its dependencies, which the StAX parser skips.</p>
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class PomParserBenchmark {
+    private static final String SYSTEM_ID = "file:/benchmark/pom.xml";
+
+    @Param({"10", "500"})
+    int dependencies;
+
+    byte[] pom;
+    byte[] m2Entities;
+    DocumentBuilderFactory documentBuilderFactory;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        builder.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n");
+        builder.append("  <modelVersion>4.0.0</modelVersion>\n");
+        builder.append("  <groupId>org.gradle.sample</groupId>\n  <artifactId>benchmark</artifactId>\n  <version>1.0</version>\n");
+        builder.append("  <properties>\n    <sample.version>1.0</sample.version>\n  </properties>\n");
+        builder.append("  <dependencies>\n");
+        for (int i = 0; i < dependencies; i++) {
+            builder.append("    <dependency>\n      <groupId>org.gradle.sample</groupId>\n      <artifactId>module-").append(i).append("</artifactId>\n");
+            builder.append("      <version>${sample.version}</version>\n      <scope>compile</scope>\n    </dependency>\n");
+        }
+        builder.append("  </dependencies>\n");
+        builder.append("  <build>\n    <plugins>\n");
+        for (int i = 0; i < dependencies; i++) {
+            builder.append("      <plugin>\n        <artifactId>plugin-").append(i).append("</artifactId>\n");
+            builder.append("        <configuration>\n          <source>1.6</source>\n          <target>1.6</target>\n        </configuration>\n      </plugin>\n");
+        }
+        builder.append("    </plugins>\n  </build>\n");
+        builder.append("</project>\n");
+        pom = builder.toString().getBytes();
+        m2Entities = IOUtils.toByteArray(org.apache.ivy.plugins.parser.m2.PomReader.class.getResourceAsStream("m2-entities.ent"));
+        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setValidating(false);
+    }
+
+    @Benchmark
+    public void dom(Blackhole blackhole) throws Exception {
+        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        documentBuilder.setEntityResolver(new EntityResolver() {
+            @Override
+            public InputSource resolveEntity(String publicId, String systemId) {
+                return new InputSource(new ByteArrayInputStream(m2Entities));
+            }
+        });
+        Document document = documentBuilder.parse(new PomDomParser.AddDTDFilterInputStream(new ByteArrayInputStream(pom)), SYSTEM_ID);
+        Element project = document.getDocumentElement();
+        blackhole.consume(getFirstChildText(project, "groupId"));
+        for (Element dependency : getAllChilds(getFirstChildElement(project, "dependencies"))) {
+            blackhole.consume(getFirstChildText(dependency, "groupId"));
+            blackhole.consume(getFirstChildText(dependency, "artifactId"));
+            blackhole.consume(getFirstChildText(dependency, "version"));
+        }
+    }
+
+    @Benchmark
+    public void stax(Blackhole blackhole) throws Exception {
+        PomElement project = PomStaxParser.parse(new ByteArrayInputStream(pom), SYSTEM_ID);
+        blackhole.consume(getFirstChildText(project, "groupId"));
+        for (PomElement dependency : getAllChilds(getFirstChildElement(project, "dependencies"))) {
+            blackhole.consume(getFirstChildText(dependency, "groupId"));
+            blackhole.consume(getFirstChildText(dependency, "artifactId"));
+            blackhole.consume(getFirstChildText(dependency, "version"));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.configurations;
+
+import org.gradle.api.Action;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+import org.gradle.util.Path;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves many configurations concurrently, for example to build the IDE models of all projects of a large build.
+ *
+ * <p>The configurations of each project are resolved one after the other, as a project's configurations and dependency actions share the
+ * state of the project. The configurations of different projects are resolved concurrently, on the build operation thread pool. The resolutions
+ * share the in-memory metadata and artifact caches of the repositories, which are safe to use concurrently, so metadata that has been fetched
+ * for one project is reused by the others.</p>
+ *
+ * <p>Configurations that cannot be resolved, or that have already been resolved, are skipped. Returns when all configurations have been resolved.</p>
+ */
+public class ConcurrentConfigurationsResolver {
+    private final BuildOperationExecutor buildOperationExecutor;
+
+    public ConcurrentConfigurationsResolver(BuildOperationExecutor buildOperationExecutor) {
+        this.buildOperationExecutor = buildOperationExecutor;
+    }
+
+    public void resolveAll(Collection<? extends ConfigurationInternal> configurations) {
+        final Map<Path, List<ConfigurationInternal>> configurationsByProject = new LinkedHashMap<Path, List<ConfigurationInternal>>();
+        for (ConfigurationInternal configuration : configurations) {
+            if (!configuration.isCanBeResolved() || configuration.getState() != Configuration.State.UNRESOLVED) {
+                continue;
+            }
+            Path projectPath = configuration.getIdentityPath().getParent();
+            List<ConfigurationInternal> projectConfigurations = configurationsByProject.get(projectPath);
+            if (projectConfigurations == null) {
+                projectConfigurations = new ArrayList<ConfigurationInternal>();
+                configurationsByProject.put(projectPath, projectConfigurations);
+            }
+            projectConfigurations.add(configuration);
+        }
+        if (configurationsByProject.isEmpty()) {
+            return;
+        }
+        buildOperationExecutor.runAll(new Action<BuildOperationQueue<RunnableBuildOperation>>() {
+            @Override
+            public void execute(BuildOperationQueue<RunnableBuildOperation> queue) {
+                for (Map.Entry<Path, List<ConfigurationInternal>> entry : configurationsByProject.entrySet()) {
+                    queue.add(new ResolveProjectConfigurations(entry.getKey(), entry.getValue()));
+                }
+            }
+        });
+    }
+
+    private static class ResolveProjectConfigurations implements RunnableBuildOperation {
+        private final Path projectPath;
+        private final List<ConfigurationInternal> configurations;
+
+        ResolveProjectConfigurations(Path projectPath, List<ConfigurationInternal> configurations) {
+            this.projectPath = projectPath;
+            this.configurations = configurations;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            for (ConfigurationInternal configuration : configurations) {
+                configuration.getResolvedConfiguration();
+            }
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Resolve configurations of " + projectPath);
+        }
+    }
+}
@@ -125,7 +125,9 @@ public class ErrorHandlingModuleComponentRepository implements ModuleComponentRe
             try {
                 delegate.resolveComponentMetaData(moduleComponentIdentifier, requestMetaData, result);
             } catch (Throwable throwable) {
-                repositoryBlacklister.blacklistRepository(repositoryId, throwable);
+                if (!requestMetaData.isSpeculative()) {
+                    repositoryBlacklister.blacklistRepository(repositoryId, throwable);
+                }
                 result.failed(new ModuleVersionResolveException(moduleComponentIdentifier, throwable));
             }
         }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.gradle.internal.resource.local.LocallyAvailableExternalResource;
+
+import java.io.File;
+
+/**
+ * Keeps the parent and imported POMs that have been parsed during a build, as the same parents and BOMs are read for many of the POMs
+ * of a dependency graph.
+ *
+ * <p>Entries are keyed by the path, length and last modified time of the POM file, so a POM file that changes during the build is parsed again.</p>
+ */
+public class ParsedPomCache {
+    private static final int MAX_ENTRIES = 500;
+
+    private final Cache<String, PomElement> parsedPoms = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+
+    PomElement parse(LocallyAvailableExternalResource resource) {
+        File file = resource.getFile();
+        String key = file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+        PomElement projectElement = parsedPoms.getIfPresent(key);
+        if (projectElement == null) {
+            // Parsing the same POM concurrently is harmless, so the cache is not locked while parsing
+            projectElement = PomReader.parse(resource);
+            parsedPoms.put(key, projectElement);
+        }
+        return projectElement;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.apache.commons.io.IOUtils;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.classloader.ClassLoaderUtils;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a POM in a single pass with a StAX reader, keeping only the elements that {@link PomReader} uses.
+ *
+ * <p>The children of the project element and of the profile elements that Gradle does not use, such as the build, reporting or developers
+ * elements, are skipped without being kept in memory. The names and texts of the kept elements are interned, as the same group ids, versions
+ * and scopes appear in many POMs.</p>
+ */
+final class PomStaxParser {
+    private static final Set<String> PROJECT_CHILDREN = ImmutableSet.of(
+        "parent", "groupId", "artifactId", "version", "packaging", "distributionManagement", "properties", "dependencies", "dependencyManagement", "profiles");
+    private static final Set<String> PROFILE_CHILDREN = ImmutableSet.of(
+        "id", "activation", "properties", "dependencies", "dependencyManagement");
+    private static final Map<String, Set<String>> NESTED_CHILDREN = ImmutableMap.<String, Set<String>>of(
+        "profiles", ImmutableSet.of("profile"),
+        "profile", PROFILE_CHILDREN);
+
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+    private static final byte[] M2_ENTITIES_RESOURCE;
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+
+    static {
+        byte[] bytes;
+        try {
+            bytes = IOUtils.toByteArray(org.apache.ivy.plugins.parser.m2.PomReader.class.getResourceAsStream("m2-entities.ent"));
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        M2_ENTITIES_RESOURCE = bytes;
+
+        // Set the context classloader the bootstrap classloader, to work around the way that JAXP locates implementation classes
+        // This should ensure that the JAXP classes provided by the JVM are used, rather than some other implementation
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(ClassLoaderUtils.getPlatformClassLoader());
+        try {
+            XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_VALIDATING, false);
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+            XML_INPUT_FACTORY.setXMLResolver(new XMLResolver() {
+                @Override
+                public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) {
+                    if ((systemID != null) && systemID.endsWith("m2-entities.ent")) {
+                        return new ByteArrayInputStream(M2_ENTITIES_RESOURCE);
+                    }
+                    return null;
+                }
+            });
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    private PomStaxParser() {
+    }
+
+    /**
+     * Parses the given POM and returns its root element.
+     */
+    static PomElement parse(InputStream stream, String systemId) throws IOException, XMLStreamException {
+        // The HTML entities that Maven accepts in POMs are declared by the DTD that is added here
+        InputStream dtdStream = new PomDomParser.AddDTDFilterInputStream(stream);
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(systemId, dtdStream);
+        try {
+            PomElement root = null;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    root = readElement(reader, PROJECT_CHILDREN);
+                }
+            }
+            if (root == null) {
+                throw new XMLStreamException("Premature end of file.", reader.getLocation());
+            }
+            return root;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the element the reader is positioned on, up to its end tag.
+     *
+     * @param keptChildren the names of the child elements to keep, or null to keep all child elements.
+     */
+    private static PomElement readElement(XMLStreamReader reader, @Nullable Set<String> keptChildren) throws XMLStreamException {
+        String name = intern(reader.getLocalName());
+        List<PomElement> children = new ArrayList<PomElement>();
+        StringBuilder text = null;
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    String childName = reader.getLocalName();
+                    if (keptChildren == null) {
+                        children.add(readElement(reader, null));
+                    } else if (keptChildren.contains(childName)) {
+                        children.add(readElement(reader, NESTED_CHILDREN.get(childName)));
+                    } else {
+                        skipElement(reader);
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (text == null) {
+                        text = new StringBuilder();
+                    }
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    return new PomElement(name, toText(text, !children.isEmpty()), children);
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static String toText(@Nullable StringBuilder text, boolean hasChildren) {
+        if (text == null) {
+            return "";
+        }
+        String value = text.toString();
+        if (hasChildren) {
+            // Only keep the text of elements with children when it is not just the indentation between them
+            return value.trim().isEmpty() ? "" : value;
+        }
+        return intern(value);
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static String intern(String value) {
+        return STRINGS.intern(value);
+    }
+}
@@ -26,30 +26,51 @@ import org.gradle.api.internal.attributes.ImmutableAttributesFactory;
 import org.gradle.api.internal.model.NamedObjectInstantiator;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.internal.Factory;
+import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.component.external.model.ModuleComponentResolveMetadata;
 import org.gradle.internal.component.external.model.MutableModuleComponentResolveMetadata;
 import org.gradle.internal.resource.local.DefaultPathKeyFileStore;
 import org.gradle.internal.serialize.AbstractSerializer;
 import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 import org.gradle.util.BuildCommencedTimeProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class DefaultModuleMetaDataCache implements ModuleMetaDataCache {
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Caches module metadata in the artifact cache.
+ *
+ * <p>When the {@value #METADATA_INDEX_PROPERTY} system property is set, metadata that is not changing is also kept in a {@link ModuleMetadataIndex},
+ * which is shared by all Gradle versions that write metadata in the same {@link ModuleMetadataSerializer#FORMAT_VERSION format}. Metadata that is
+ * found in the index is added to the cache of the current version, so that a new Gradle version does not parse the module descriptors again.</p>
+ */
+public class DefaultModuleMetaDataCache implements ModuleMetaDataCache, Stoppable {
+    public static final String METADATA_INDEX_PROPERTY = "org.gradle.internal.dependency.metadata-index";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultModuleMetaDataCache.class);
 
     private final BuildCommencedTimeProvider timeProvider;
     private final CacheLockingManager cacheLockingManager;
+    private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
+    private final ModuleMetadataSerializer moduleMetadataSerializer;
+    private final ModuleMetadataCacheEntrySerializer cacheEntrySerializer = new ModuleMetadataCacheEntrySerializer();
 
     private final ModuleMetadataStore moduleMetadataStore;
+    private final ModuleMetadataIndex moduleMetadataIndex;
     private PersistentIndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> cache;
 
     public DefaultModuleMetaDataCache(BuildCommencedTimeProvider timeProvider, CacheLockingManager cacheLockingManager, ArtifactCacheMetaData artifactCacheMetaData, ImmutableModuleIdentifierFactory moduleIdentifierFactory, ImmutableAttributesFactory attributesFactory, NamedObjectInstantiator instantiator) {
         this.timeProvider = timeProvider;
         this.cacheLockingManager = cacheLockingManager;
+        this.moduleIdentifierFactory = moduleIdentifierFactory;
+        this.moduleMetadataSerializer = new ModuleMetadataSerializer(attributesFactory, instantiator);
 
-        moduleMetadataStore = new ModuleMetadataStore(new DefaultPathKeyFileStore(artifactCacheMetaData.getMetaDataStoreDirectory()), new ModuleMetadataSerializer(attributesFactory, instantiator), moduleIdentifierFactory);
+        moduleMetadataStore = new ModuleMetadataStore(new DefaultPathKeyFileStore(artifactCacheMetaData.getMetaDataStoreDirectory()), moduleMetadataSerializer, moduleIdentifierFactory);
+        moduleMetadataIndex = Boolean.getBoolean(METADATA_INDEX_PROPERTY) ? new ModuleMetadataIndex(ModuleMetadataIndex.getIndexFile(artifactCacheMetaData.getCacheDir())) : null;
     }
 
     private PersistentIndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> getCache() {
@@ -71,7 +92,7 @@ public class DefaultModuleMetaDataCache implements ModuleMetaDataCache {
             public CachedMetaData create() {
                 ModuleMetadataCacheEntry entry = cache.get(key);
                 if (entry == null) {
-                    return null;
+                    return getIndexedModuleDescriptor(key);
                 }
                 if (entry.isMissing()) {
                     return new DefaultCachedMetaData(entry, null, timeProvider);
@@ -103,11 +124,70 @@ public class DefaultModuleMetaDataCache implements ModuleMetaDataCache {
                 moduleMetadataStore.putModuleDescriptor(key, metadata);
                 ModuleMetadataCacheEntry entry = createEntry(metadata);
                 getCache().put(key, entry);
+                if (moduleMetadataIndex != null && !metadata.isChanging()) {
+                    indexModuleDescriptor(key, entry, metadata);
+                }
                 return new DefaultCachedMetaData(entry, metadata, timeProvider);
             }
         });
     }
 
+    /**
+     * Looks up metadata that was cached by another Gradle version, and adds it to the cache of this version. Must be called while holding the cache lock.
+     */
+    private CachedMetaData getIndexedModuleDescriptor(ModuleComponentAtRepositoryKey key) {
+        if (moduleMetadataIndex == null) {
+            return null;
+        }
+        byte[] value = moduleMetadataIndex.get(createIndexKey(key));
+        if (value == null) {
+            return null;
+        }
+        ModuleMetadataCacheEntry entry;
+        MutableModuleComponentResolveMetadata metadata;
+        try {
+            KryoBackedDecoder decoder = new KryoBackedDecoder(value, 0, value.length);
+            entry = cacheEntrySerializer.read(decoder);
+            metadata = moduleMetadataSerializer.read(decoder, moduleIdentifierFactory);
+        } catch (Exception e) {
+            LOGGER.debug("Could not read module descriptor of {} from metadata index.", key.getComponentId(), e);
+            return null;
+        }
+        if (entry.isMissing()) {
+            return null;
+        }
+        ModuleComponentResolveMetadata configured = entry.configure(metadata);
+        moduleMetadataStore.putModuleDescriptor(key, configured);
+        getCache().put(key, entry);
+        return new DefaultCachedMetaData(entry, configured, timeProvider);
+    }
+
+    private void indexModuleDescriptor(ModuleComponentAtRepositoryKey key, ModuleMetadataCacheEntry entry, ModuleComponentResolveMetadata metadata) {
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        try {
+            KryoBackedEncoder encoder = new KryoBackedEncoder(value);
+            cacheEntrySerializer.write(encoder, entry);
+            moduleMetadataSerializer.write(encoder, metadata);
+            encoder.flush();
+        } catch (Exception e) {
+            LOGGER.debug("Could not add module descriptor of {} to metadata index.", key.getComponentId(), e);
+            return;
+        }
+        moduleMetadataIndex.put(createIndexKey(key), value.toByteArray());
+    }
+
+    private static String createIndexKey(ModuleComponentAtRepositoryKey key) {
+        ModuleComponentIdentifier id = key.getComponentId();
+        return ModuleMetadataSerializer.FORMAT_VERSION + ":" + key.getRepositoryId() + ":" + id.getGroup() + ":" + id.getModule() + ":" + id.getVersion();
+    }
+
+    @Override
+    public void stop() {
+        if (moduleMetadataIndex != null) {
+            moduleMetadataIndex.stop();
+        }
+    }
+
     private ModuleComponentAtRepositoryKey createKey(ModuleComponentRepository repository, ModuleComponentIdentifier id) {
         return new ModuleComponentAtRepositoryKey(repository.getId(), id);
     }
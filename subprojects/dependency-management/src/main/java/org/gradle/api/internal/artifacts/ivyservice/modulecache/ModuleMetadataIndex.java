@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import com.google.common.base.Charsets;
+import org.gradle.internal.concurrent.Stoppable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A binary index of module metadata that is shared by all Gradle versions, so that upgrading Gradle does not require all POM and Ivy
+ * files to be parsed again.
+ *
+ * <p>The index is a single append-only file. It starts with a header that holds the schema version of the index file, which is
+ * independent from the Gradle version, followed by records that each hold a key and a value. An index file with another schema version
+ * is stored at another path. A value is never replaced once it has been added, so the file does not need to be compacted.</p>
+ *
+ * <p>The file is memory mapped. The keys of the records are read when the index is first used, and values are only read when they are
+ * requested. Records added by other processes are read when a key is not found.</p>
+ *
+ * <p>Any failure to read or write the index disables it, as the index is only an optimization. Callers must hold the lock of the
+ * artifact cache, which is shared by all Gradle versions, while using the index.</p>
+ */
+class ModuleMetadataIndex implements Stoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModuleMetadataIndex.class);
+
+    static final int SCHEMA_VERSION = 1;
+    private static final byte[] HEADER = {'G', 'M', 'I', SCHEMA_VERSION};
+
+    private final File indexFile;
+    private final Map<String, Long> records = new HashMap<String, Long>();
+    private RandomAccessFile file;
+    private MappedByteBuffer mapped;
+    private long scannedLength;
+    private boolean disabled;
+
+    ModuleMetadataIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    static File getIndexFile(File cacheDir) {
+        return new File(cacheDir, "metadata-index-" + SCHEMA_VERSION + "/module-metadata.bin");
+    }
+
+    /**
+     * Returns the value stored for the given key, or null when there is none.
+     */
+    @Nullable
+    synchronized byte[] get(String key) {
+        if (disabled) {
+            return null;
+        }
+        try {
+            Long position = records.get(key);
+            if (position == null && open() && scan()) {
+                position = records.get(key);
+            }
+            return position == null ? null : readValue(position);
+        } catch (IOException e) {
+            disable(e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the value for the given key, unless a value is already stored.
+     */
+    synchronized void put(String key, byte[] value) {
+        if (disabled) {
+            return;
+        }
+        try {
+            if (!open()) {
+                return;
+            }
+            scan();
+            if (records.containsKey(key)) {
+                return;
+            }
+            byte[] keyBytes = key.getBytes(Charsets.UTF_8);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + keyBytes.length + value.length);
+            DataOutputStream record = new DataOutputStream(bytes);
+            record.writeInt(4 + keyBytes.length + value.length);
+            record.writeInt(keyBytes.length);
+            record.write(keyBytes);
+            record.write(value);
+            // Drop a record that was partially written by a process that did not complete
+            if (file.length() != scannedLength) {
+                file.setLength(scannedLength);
+            }
+            file.seek(scannedLength);
+            // The record is read back by the next scan, so that it is mapped before it is used
+            file.write(bytes.toByteArray());
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        records.clear();
+        mapped = null;
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close module metadata index {}.", indexFile, e);
+            }
+            file = null;
+        }
+    }
+
+    private boolean open() throws IOException {
+        if (file != null) {
+            return true;
+        }
+        File parentDir = indexFile.getParentFile();
+        if (!parentDir.isDirectory() && !parentDir.mkdirs()) {
+            throw new IOException("Could not create directory " + parentDir);
+        }
+        file = new RandomAccessFile(indexFile, "rw");
+        if (file.length() < HEADER.length) {
+            file.setLength(0);
+            file.write(HEADER);
+        } else {
+            byte[] header = new byte[HEADER.length];
+            file.readFully(header);
+            if (!Arrays.equals(header, HEADER)) {
+                LOGGER.debug("Ignoring module metadata index {} with unknown header.", indexFile);
+                disabled = true;
+                stop();
+                return false;
+            }
+        }
+        scannedLength = HEADER.length;
+        return true;
+    }
+
+    /**
+     * Reads the keys of the records that have been added since the index was last scanned.
+     *
+     * @return true when new records were found.
+     */
+    private boolean scan() throws IOException {
+        long length = file.length();
+        if (length == scannedLength) {
+            return false;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Module metadata index is too large.");
+        }
+        mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        boolean found = false;
+        long position = scannedLength;
+        while (position + 8 <= length) {
+            int recordLength = mapped.getInt((int) position);
+            long end = position + 4 + recordLength;
+            if (recordLength < 4 || end > length) {
+                // A record that is still being written, or that was not completed
+                break;
+            }
+            int keyLength = mapped.getInt((int) position + 4);
+            if (keyLength < 0 || keyLength > recordLength - 4) {
+                throw new IOException("Module metadata index is corrupt.");
+            }
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer buffer = mapped.duplicate();
+            buffer.position((int) position + 8);
+            buffer.get(keyBytes);
+            records.put(new String(keyBytes, Charsets.UTF_8), position);
+            found = true;
+            position = end;
+        }
+        scannedLength = position;
+        return found;
+    }
+
+    private byte[] readValue(long position) {
+        int recordLength = mapped.getInt((int) position);
+        int keyLength = mapped.getInt((int) position + 4);
+        byte[] value = new byte[recordLength - 4 - keyLength];
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position((int) position + 8 + keyLength);
+        buffer.get(value);
+        return value;
+    }
+
+    private void disable(IOException e) {
+        LOGGER.debug("Disabling module metadata index {}.", indexFile, e);
+        disabled = true;
+        stop();
+    }
+}
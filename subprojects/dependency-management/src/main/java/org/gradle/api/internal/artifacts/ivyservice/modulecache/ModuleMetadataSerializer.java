@@ -67,6 +67,12 @@ import java.util.Map;
 import java.util.Set;
 
 public class ModuleMetadataSerializer {
+    /**
+     * The version of the format written by this serializer and by {@link ModuleMetadataCacheEntrySerializer}. This version must be
+     * changed whenever the format changes, as it is used to share metadata between Gradle versions.
+     */
+    public static final int FORMAT_VERSION = 1;
+
     private static final byte TYPE_IVY = 1;
     private static final byte TYPE_MAVEN = 2;
     private static final byte STRING_ATTRIBUTE = 1;
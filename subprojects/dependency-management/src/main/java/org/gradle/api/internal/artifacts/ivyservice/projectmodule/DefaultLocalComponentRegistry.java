@@ -39,11 +39,18 @@ public class DefaultLocalComponentRegistry implements LocalComponentRegistry {
         if (metaData !=null) {
             return metaData;
         }
-        for (LocalComponentProvider provider : providers) {
-            LocalComponentMetadata componentMetaData = provider.getComponent(projectIdentifier);
-            if (componentMetaData != null) {
-                projects.putIfAbsent(projectIdentifier, componentMetaData);
-                return componentMetaData;
+        // Building the metadata reads and finalizes the configurations of the project, which must not happen concurrently when configurations are resolved in parallel
+        synchronized (projects) {
+            metaData = projects.get(projectIdentifier);
+            if (metaData != null) {
+                return metaData;
+            }
+            for (LocalComponentProvider provider : providers) {
+                LocalComponentMetadata componentMetaData = provider.getComponent(projectIdentifier);
+                if (componentMetaData != null) {
+                    projects.put(projectIdentifier, componentMetaData);
+                    return componentMetaData;
+                }
             }
         }
         return null;
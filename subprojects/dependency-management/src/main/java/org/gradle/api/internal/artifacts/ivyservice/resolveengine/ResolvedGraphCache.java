@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine;
+
+import org.gradle.api.Action;
+import org.gradle.api.artifacts.ModuleVersionSelector;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.repositories.ArtifactRepository;
+import org.gradle.api.artifacts.repositories.IvyArtifactRepository;
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
+import org.gradle.api.internal.artifacts.ResolveContext;
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentIdentifierSerializer;
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.Factory;
+import org.gradle.internal.component.model.ConfigurationMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.component.model.Exclude;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.serialize.ListSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Remembers the components of the graphs resolved in previous builds, keyed by a hash of the declared dependencies, resolution strategy and
+ * repositories of the resolved configuration.
+ *
+ * <p>When a configuration with the same key is resolved again, the metadata of all of the components it resolved to last time is loaded
+ * concurrently before the graph is traversed, so that the traversal finds all of the metadata in the in-memory caches of the repositories,
+ * instead of loading it from the persistent cache or the repositories one level of the graph at a time. The traversal itself still runs
+ * and produces the result, so a stale or colliding key only costs the loading of some metadata that is not used.</p>
+ *
+ * <p>The resolved graph and artifacts are not replayed from the cache, as the artifact sets of a resolved configuration refer to the
+ * repositories and to file collections of the build, which cannot be persisted.</p>
+ */
+public class ResolvedGraphCache {
+    public static final String ENABLED_PROPERTY = "org.gradle.internal.dependency.resolved-graph-cache";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResolvedGraphCache.class);
+    private static final int KEY_VERSION = 1;
+
+    private final CacheLockingManager cacheLockingManager;
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final boolean enabled;
+    private PersistentIndexedCache<String, List<ComponentIdentifier>> cache;
+
+    public ResolvedGraphCache(CacheLockingManager cacheLockingManager, BuildOperationExecutor buildOperationExecutor) {
+        this(cacheLockingManager, buildOperationExecutor, Boolean.getBoolean(ENABLED_PROPERTY));
+    }
+
+    ResolvedGraphCache(CacheLockingManager cacheLockingManager, BuildOperationExecutor buildOperationExecutor, boolean enabled) {
+        this.cacheLockingManager = cacheLockingManager;
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.enabled = enabled;
+    }
+
+    private synchronized PersistentIndexedCache<String, List<ComponentIdentifier>> getCache() {
+        if (cache == null) {
+            cache = cacheLockingManager.createCache("resolved-graphs", BaseSerializerFactory.STRING_SERIALIZER, new ListSerializer<ComponentIdentifier>(new ComponentIdentifierSerializer()));
+        }
+        return cache;
+    }
+
+    /**
+     * Loads the metadata of the components that the given configuration resolved to last time, if any.
+     *
+     * @return a visitor that records the components of the graph, which must be visited when the graph has been resolved. Returns {@link DependencyGraphVisitor#NO_OP} when the cache is disabled.
+     */
+    public DependencyGraphVisitor prefetch(ResolveContext resolveContext, List<? extends ResolutionAwareRepository> repositories, ComponentMetaDataResolver metaDataResolver) {
+        if (!enabled) {
+            return DependencyGraphVisitor.NO_OP;
+        }
+        final String key = createKey(resolveContext, repositories);
+        if (key == null) {
+            return DependencyGraphVisitor.NO_OP;
+        }
+        final PersistentIndexedCache<String, List<ComponentIdentifier>> cache = getCache();
+        List<ComponentIdentifier> components = cacheLockingManager.useCache(new Factory<List<ComponentIdentifier>>() {
+            @Override
+            public List<ComponentIdentifier> create() {
+                return cache.get(key);
+            }
+        });
+        if (components == null) {
+            components = Collections.emptyList();
+        } else {
+            LOGGER.debug("Loading metadata of {} components previously resolved for {}", components.size(), resolveContext.getDisplayName());
+            loadMetadata(components, metaDataResolver);
+        }
+        return new RecordingVisitor(key, components);
+    }
+
+    @Nullable
+    static String createKey(ResolveContext resolveContext, List<? extends ResolutionAwareRepository> repositories) {
+        ConfigurationMetadata configuration = resolveContext.toRootComponentMetaData().getConfiguration(resolveContext.getName());
+        if (configuration == null) {
+            return null;
+        }
+        Hasher hasher = Hashing.md5().newHasher();
+        hasher.putInt(KEY_VERSION);
+        List<? extends DependencyMetadata> dependencies = configuration.getDependencies();
+        hasher.putInt(dependencies.size());
+        for (DependencyMetadata dependency : dependencies) {
+            hasher.putString(dependency.getSelector().getDisplayName());
+            hasher.putBoolean(dependency.isForce());
+            hasher.putBoolean(dependency.isTransitive());
+            hasher.putBoolean(dependency.isChanging());
+            List<Exclude> excludes = dependency.getExcludes();
+            hasher.putInt(excludes.size());
+            for (Exclude exclude : excludes) {
+                hasher.putString(exclude.getModuleId().toString());
+            }
+        }
+        ResolutionStrategyInternal resolutionStrategy = resolveContext.getResolutionStrategy();
+        hasher.putString(resolutionStrategy.getConflictResolution().name());
+        Set<ModuleVersionSelector> forcedModules = resolutionStrategy.getForcedModules();
+        hasher.putInt(forcedModules.size());
+        for (ModuleVersionSelector forcedModule : forcedModules) {
+            hasher.putString(forcedModule.getGroup() + ":" + forcedModule.getName() + ":" + forcedModule.getVersion());
+        }
+        hasher.putInt(repositories.size());
+        for (ResolutionAwareRepository repository : repositories) {
+            hasher.putString(repository.getClass().getName());
+            if (repository instanceof ArtifactRepository) {
+                hasher.putString(((ArtifactRepository) repository).getName());
+            }
+            if (repository instanceof MavenArtifactRepository) {
+                hasher.putString(String.valueOf(((MavenArtifactRepository) repository).getUrl()));
+            } else if (repository instanceof IvyArtifactRepository) {
+                hasher.putString(String.valueOf(((IvyArtifactRepository) repository).getUrl()));
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private void loadMetadata(final List<ComponentIdentifier> components, final ComponentMetaDataResolver metaDataResolver) {
+        buildOperationExecutor.runAll(new Action<BuildOperationQueue<RunnableBuildOperation>>() {
+            @Override
+            public void execute(BuildOperationQueue<RunnableBuildOperation> queue) {
+                for (ComponentIdentifier component : components) {
+                    queue.add(new LoadMetadataOperation(component, metaDataResolver));
+                }
+            }
+        });
+    }
+
+    private static class LoadMetadataOperation implements RunnableBuildOperation {
+        private final ComponentIdentifier component;
+        private final ComponentMetaDataResolver metaDataResolver;
+
+        LoadMetadataOperation(ComponentIdentifier component, ComponentMetaDataResolver metaDataResolver) {
+            this.component = component;
+            this.metaDataResolver = metaDataResolver;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            try {
+                // Speculative, so that a failure does not blacklist a repository that the traversal may still need
+                metaDataResolver.resolve(component, new DefaultComponentOverrideMetadata().withSpeculative(), new DefaultBuildableComponentResolveResult());
+            } catch (RuntimeException e) {
+                // The traversal reports the failure if the component is still part of the graph
+                LOGGER.debug("Could not load metadata of {}", component, e);
+            }
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Load metadata of " + component);
+        }
+    }
+
+    private class RecordingVisitor implements DependencyGraphVisitor {
+        private final String key;
+        private final List<ComponentIdentifier> previousComponents;
+        private final Set<ComponentIdentifier> components = new LinkedHashSet<ComponentIdentifier>();
+
+        RecordingVisitor(String key, List<ComponentIdentifier> previousComponents) {
+            this.key = key;
+            this.previousComponents = previousComponents;
+        }
+
+        @Override
+        public void start(DependencyGraphNode root) {
+        }
+
+        @Override
+        public void visitNode(DependencyGraphNode node) {
+            ComponentIdentifier componentId = node.getOwner().getComponentId();
+            if (componentId instanceof ModuleComponentIdentifier) {
+                components.add(componentId);
+            }
+        }
+
+        @Override
+        public void visitSelector(DependencyGraphSelector selector) {
+        }
+
+        @Override
+        public void visitEdges(DependencyGraphNode node) {
+        }
+
+        @Override
+        public void finish(DependencyGraphNode root) {
+            final List<ComponentIdentifier> resolvedComponents = new ArrayList<ComponentIdentifier>(components);
+            if (resolvedComponents.equals(previousComponents)) {
+                return;
+            }
+            final PersistentIndexedCache<String, List<ComponentIdentifier>> cache = getCache();
+            cacheLockingManager.useCache(new Runnable() {
+                @Override
+                public void run() {
+                    cache.put(key, resolvedComponents);
+                }
+            });
+        }
+    }
+}
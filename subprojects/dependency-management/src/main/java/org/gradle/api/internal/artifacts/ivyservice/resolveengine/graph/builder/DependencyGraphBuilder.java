@@ -59,6 +59,11 @@ import java.util.Map;
 import java.util.Set;
 
 public class DependencyGraphBuilder {
+    /**
+     * When set, the metadata of the whole graph reachable through static versions is downloaded concurrently, rather than the direct dependencies of one node at a time.
+     */
+    public static final String PREFETCH_TRANSITIVE_METADATA_PROPERTY = "org.gradle.internal.dependency.prefetch-transitive-metadata";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DependencyGraphBuilder.class);
     private static final Predicate<SelectorState> ALL_SELECTORS = Predicates.alwaysTrue();
     private final ConflictHandler conflictHandler;
@@ -72,6 +77,7 @@ public class DependencyGraphBuilder {
     private final ModuleReplacementsData moduleReplacementsData;
     private final DependencySubstitutionApplicator dependencySubstitutionApplicator;
     private final ComponentSelectorConverter componentSelectorConverter;
+    private final boolean prefetchTransitiveMetadata;
 
     public DependencyGraphBuilder(DependencyToComponentIdResolver componentIdResolver, ComponentMetaDataResolver componentMetaDataResolver,
                                   ResolveContextToComponentResolver resolveContextToComponentResolver,
@@ -91,6 +97,7 @@ public class DependencyGraphBuilder {
         this.moduleReplacementsData = moduleReplacementsData;
         this.dependencySubstitutionApplicator = dependencySubstitutionApplicator;
         this.componentSelectorConverter = componentSelectorConverter;
+        this.prefetchTransitiveMetadata = Boolean.getBoolean(PREFETCH_TRANSITIVE_METADATA_PROPERTY);
     }
 
     public void resolve(final ResolveContext resolveContext, final DependencyGraphVisitor modelVisitor) {
@@ -122,6 +129,7 @@ public class DependencyGraphBuilder {
             resolveState.getOptionalDependencies(),
             resolveState.getComponentSelectorConverter(),
             resolveState.getDependencySubstitutionApplicator());
+        final TransitiveMetadataPrefetcher prefetcher = prefetchTransitiveMetadata ? new TransitiveMetadataPrefetcher(metaDataResolver, buildOperationExecutor) : null;
 
         while (resolveState.peek() != null || conflictHandler.hasConflicts()) {
             if (resolveState.peek() != null) {
@@ -133,7 +141,7 @@ public class DependencyGraphBuilder {
                 dependenciesMissingLocalMetadata.clear();
                 node.visitOutgoingDependencies(dependencies, optionalDependenciesHandler);
 
-                resolveEdges(node, dependencies, dependenciesMissingLocalMetadata, resolveState, componentIdentifierCache);
+                resolveEdges(node, dependencies, dependenciesMissingLocalMetadata, resolveState, componentIdentifierCache, prefetcher);
             } else {
                 // We have some batched up conflicts. Resolve the first, and continue traversing the graph
                 conflictHandler.resolveNextConflict(resolveState.getReplaceSelectionWithConflictResultAction());
@@ -212,13 +220,18 @@ public class DependencyGraphBuilder {
                               final List<EdgeState> dependencies,
                               final List<EdgeState> dependenciesMissingMetadataLocally,
                               final ResolveState resolveState,
-                              final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache) {
+                              final Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache,
+                              @Nullable final TransitiveMetadataPrefetcher prefetcher) {
         if (dependencies.isEmpty()) {
             return;
         }
         performSelectionSerially(dependencies, resolveState);
-        computePreemptiveDownloadList(dependencies, dependenciesMissingMetadataLocally, componentIdentifierCache);
-        downloadMetadataConcurrently(node, dependenciesMissingMetadataLocally);
+        if (prefetcher != null) {
+            prefetcher.prefetch(node, dependencies);
+        } else {
+            computePreemptiveDownloadList(dependencies, dependenciesMissingMetadataLocally, componentIdentifierCache);
+            downloadMetadataConcurrently(node, dependenciesMissingMetadataLocally);
+        }
         attachToTargetRevisionsSerially(dependencies);
 
     }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder;
+
+import org.gradle.api.Action;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.ConfigurationMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Downloads the metadata of the components that the traversal of a dependency graph is likely to reach, so that the traversal does not wait
+ * for each level of the graph in turn.
+ *
+ * <p>When the metadata of a component has been downloaded, the metadata of the components it depends on is downloaded straight away, on the
+ * same build operation queue, while the other downloads are still in flight. Only dependencies on a static version of a module are followed,
+ * as their target is known without listing versions. Dependency substitution rules, excludes and conflict resolution are not applied to the
+ * speculative downloads, so some metadata may be downloaded that the graph does not use. The metadata ends up in the repository caches, from
+ * which the traversal reads it. The traversal itself remains serial, so the resulting graph is the same as without prefetching.</p>
+ *
+ * <p>Each component is downloaded at most once per traversal. Selected targets whose metadata is already known or cheap to fetch are not downloaded
+ * concurrently, only their dependencies are. The downloads of dependencies are made as speculative requests, whose failures do not blacklist
+ * the repository. Such failures are otherwise ignored, the traversal reports them when it reaches the component.</p>
+ */
+class TransitiveMetadataPrefetcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransitiveMetadataPrefetcher.class);
+    private static final VersionSelectorScheme VERSION_SELECTOR_SCHEME = new DefaultVersionSelectorScheme(new DefaultVersionComparator());
+
+    private final ComponentMetaDataResolver metaDataResolver;
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final Set<ModuleComponentIdentifier> seen = Collections.newSetFromMap(new ConcurrentHashMap<ModuleComponentIdentifier, Boolean>());
+
+    TransitiveMetadataPrefetcher(ComponentMetaDataResolver metaDataResolver, BuildOperationExecutor buildOperationExecutor) {
+        this.metaDataResolver = metaDataResolver;
+        this.buildOperationExecutor = buildOperationExecutor;
+    }
+
+    /**
+     * Downloads the metadata of the selected targets of the given edges, and of the components they transitively depend on. Returns when all downloads have completed.
+     */
+    void prefetch(NodeState node, List<EdgeState> dependencies) {
+        final List<ComponentState> targets = new ArrayList<ComponentState>();
+        final List<ComponentState> cheapTargets = new ArrayList<ComponentState>();
+        for (EdgeState dependency : dependencies) {
+            ComponentState targetComponent = dependency.getTargetComponent();
+            if (targetComponent == null || !targetComponent.isSelected()) {
+                continue;
+            }
+            ModuleComponentIdentifier id = DefaultModuleComponentIdentifier.newId(targetComponent.getId());
+            if (!seen.add(id)) {
+                continue;
+            }
+            if (targetComponent.fastResolve() || metaDataResolver.isFetchingMetadataCheap(id)) {
+                cheapTargets.add(targetComponent);
+            } else {
+                targets.add(targetComponent);
+            }
+        }
+        if (targets.isEmpty() && cheapTargets.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("Prefetching metadata of {} components and their dependencies for {}", targets.size() + cheapTargets.size(), node);
+        buildOperationExecutor.runAll(new Action<BuildOperationQueue<RunnableBuildOperation>>() {
+            @Override
+            public void execute(BuildOperationQueue<RunnableBuildOperation> queue) {
+                for (ComponentState target : targets) {
+                    queue.add(new DownloadTargetOperation(queue, target));
+                }
+                for (ComponentState target : cheapTargets) {
+                    ComponentResolveMetadata metadata = target.getMetaData();
+                    if (metadata != null) {
+                        prefetchDependencies(queue, metadata);
+                    }
+                }
+            }
+        });
+    }
+
+    private void prefetchDependencies(BuildOperationQueue<RunnableBuildOperation> queue, ComponentResolveMetadata metadata) {
+        ConfigurationMetadata defaultConfiguration = metadata.getConfiguration(Dependency.DEFAULT_CONFIGURATION);
+        if (defaultConfiguration != null) {
+            prefetchDependencies(queue, defaultConfiguration);
+        } else {
+            for (ConfigurationMetadata variant : metadata.getVariantsForGraphTraversal()) {
+                prefetchDependencies(queue, variant);
+            }
+        }
+    }
+
+    private void prefetchDependencies(BuildOperationQueue<RunnableBuildOperation> queue, ConfigurationMetadata configuration) {
+        for (DependencyMetadata dependency : configuration.getDependencies()) {
+            if (dependency.isOptional()) {
+                continue;
+            }
+            ModuleComponentIdentifier id = toStaticComponentId(dependency.getSelector());
+            if (id != null && seen.add(id)) {
+                queue.add(new DownloadDependencyOperation(queue, id, dependency));
+            }
+        }
+    }
+
+    @Nullable
+    private static ModuleComponentIdentifier toStaticComponentId(ComponentSelector selector) {
+        if (!(selector instanceof ModuleComponentSelector)) {
+            return null;
+        }
+        ModuleComponentSelector moduleSelector = (ModuleComponentSelector) selector;
+        String version = moduleSelector.getVersionConstraint().getPreferredVersion();
+        if (version == null || version.isEmpty() || VERSION_SELECTOR_SCHEME.parseSelector(version).isDynamic()) {
+            return null;
+        }
+        return DefaultModuleComponentIdentifier.newId(moduleSelector.getGroup(), moduleSelector.getModule(), version);
+    }
+
+    private class DownloadTargetOperation implements RunnableBuildOperation {
+        private final BuildOperationQueue<RunnableBuildOperation> queue;
+        private final ComponentState target;
+
+        DownloadTargetOperation(BuildOperationQueue<RunnableBuildOperation> queue, ComponentState target) {
+            this.queue = queue;
+            this.target = target;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            ComponentResolveMetadata metadata = target.getMetaData();
+            if (metadata != null) {
+                prefetchDependencies(queue, metadata);
+            }
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Resolve " + target);
+        }
+    }
+
+    private class DownloadDependencyOperation implements RunnableBuildOperation {
+        private final BuildOperationQueue<RunnableBuildOperation> queue;
+        private final ModuleComponentIdentifier id;
+        private final DependencyMetadata dependency;
+
+        DownloadDependencyOperation(BuildOperationQueue<RunnableBuildOperation> queue, ModuleComponentIdentifier id, DependencyMetadata dependency) {
+            this.queue = queue;
+            this.id = id;
+            this.dependency = dependency;
+        }
+
+        @Override
+        public void run(BuildOperationContext context) {
+            DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
+            try {
+                metaDataResolver.resolve(id, DefaultComponentOverrideMetadata.forDependency(dependency).withSpeculative(), result);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Could not prefetch metadata of {}", id, e);
+                return;
+            }
+            if (result.getFailure() == null && dependency.isTransitive()) {
+                prefetchDependencies(queue, result.getMetaData());
+            }
+        }
+
+        @Override
+        public BuildOperationDescriptor.Builder description() {
+            return BuildOperationDescriptor.displayName("Prefetch metadata of " + id);
+        }
+    }
+}
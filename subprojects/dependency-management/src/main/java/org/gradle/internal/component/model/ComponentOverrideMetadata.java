@@ -37,4 +37,12 @@ public interface ComponentOverrideMetadata {
     boolean isChanging();
 
     ComponentOverrideMetadata withChanging();
+
+    /**
+     * Returns true if the request is made ahead of the resolution reaching the component, and the component may not be part of the result.
+     * Failures of such requests must not affect the rest of the resolution.
+     */
+    boolean isSpeculative();
+
+    ComponentOverrideMetadata withSpeculative();
 }
@@ -26,19 +26,21 @@ import java.util.Set;
 
 public class DefaultComponentOverrideMetadata implements ComponentOverrideMetadata {
     private final boolean changing;
+    private final boolean speculative;
     private final Set<IvyArtifactName> artifacts;
     private final ClientModule clientModule;
 
     public static ComponentOverrideMetadata forDependency(DependencyMetadata dependencyMetadata) {
-        return new DefaultComponentOverrideMetadata(dependencyMetadata.isChanging(), dependencyMetadata.getArtifacts(), extractClientModule(dependencyMetadata));
+        return new DefaultComponentOverrideMetadata(dependencyMetadata.isChanging(), false, dependencyMetadata.getArtifacts(), extractClientModule(dependencyMetadata));
     }
 
     public DefaultComponentOverrideMetadata() {
-        this(false, Collections.<IvyArtifactName>emptySet(), null);
+        this(false, false, Collections.<IvyArtifactName>emptySet(), null);
     }
 
-    private DefaultComponentOverrideMetadata(boolean changing, Set<IvyArtifactName> artifacts, ClientModule clientModule) {
+    private DefaultComponentOverrideMetadata(boolean changing, boolean speculative, Set<IvyArtifactName> artifacts, ClientModule clientModule) {
         this.changing = changing;
+        this.speculative = speculative;
         this.artifacts = Sets.newHashSet(artifacts);
         this.clientModule = clientModule;
     }
@@ -55,7 +57,12 @@ public class DefaultComponentOverrideMetadata implements ComponentOverrideMetada
 
     @Override
     public ComponentOverrideMetadata withChanging() {
-        return new DefaultComponentOverrideMetadata(true, artifacts, clientModule);
+        return new DefaultComponentOverrideMetadata(true, speculative, artifacts, clientModule);
+    }
+
+    @Override
+    public ComponentOverrideMetadata withSpeculative() {
+        return new DefaultComponentOverrideMetadata(changing, true, artifacts, clientModule);
     }
 
     @Override
@@ -68,6 +75,11 @@ public class DefaultComponentOverrideMetadata implements ComponentOverrideMetada
         return changing;
     }
 
+    @Override
+    public boolean isSpeculative() {
+        return speculative;
+    }
+
     @Override
     public ClientModule getClientModule() {
         return clientModule;
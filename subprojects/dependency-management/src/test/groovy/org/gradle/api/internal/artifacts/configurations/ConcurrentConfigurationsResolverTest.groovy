@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.configurations
+
+import org.gradle.api.artifacts.Configuration
+import org.gradle.internal.operations.BuildOperationExecutor
+import org.gradle.internal.operations.BuildOperationQueue
+import org.gradle.internal.operations.RunnableBuildOperation
+import org.gradle.util.Path
+import spock.lang.Specification
+
+class ConcurrentConfigurationsResolverTest extends Specification {
+    def operations = []
+    def buildOperationExecutor = Mock(BuildOperationExecutor) {
+        runAll(_) >> { args ->
+            def queue = Mock(BuildOperationQueue) {
+                add(_) >> { RunnableBuildOperation operation ->
+                    operations << operation.description().build().displayName
+                    operation.run(null)
+                }
+            }
+            args[0].execute(queue)
+        }
+    }
+    def resolver = new ConcurrentConfigurationsResolver(buildOperationExecutor)
+
+    def "resolves the configurations of each project in one operation"() {
+        def a1 = configuration(":a:compile")
+        def a2 = configuration(":a:runtime")
+        def b = configuration(":b:compile")
+
+        when:
+        resolver.resolveAll([a1, b, a2])
+
+        then:
+        1 * a1.getResolvedConfiguration()
+        1 * a2.getResolvedConfiguration()
+        1 * b.getResolvedConfiguration()
+        operations == ["Resolve configurations of :a", "Resolve configurations of :b"]
+    }
+
+    def "skips configurations that cannot be resolved or have been resolved"() {
+        def unresolvable = configuration(":a:api", false)
+        def resolved = configuration(":a:compile", true, Configuration.State.RESOLVED)
+
+        when:
+        resolver.resolveAll([unresolvable, resolved])
+
+        then:
+        0 * unresolvable.getResolvedConfiguration()
+        0 * resolved.getResolvedConfiguration()
+        0 * buildOperationExecutor.runAll(_)
+    }
+
+    private ConfigurationInternal configuration(String path, boolean canBeResolved = true, Configuration.State state = Configuration.State.UNRESOLVED) {
+        def configuration = Mock(ConfigurationInternal)
+        _ * configuration.identityPath >> Path.path(path)
+        _ * configuration.canBeResolved >> canBeResolved
+        _ * configuration.state >> state
+        return configuration
+    }
+}
@@ -105,6 +105,23 @@ class ErrorHandlingModuleComponentRepositoryTest extends Specification {
         0 * delegate._
     }
 
+    def "does not blacklist repo when speculative resolution of component meta data fails"() {
+        given:
+        def moduleComponentIdentifier = new DefaultModuleComponentIdentifier('a', 'b', '1.0')
+        def requestMetaData = Mock(ComponentOverrideMetadata)
+        def result = Mock(BuildableModuleComponentMetaDataResolveResult)
+        requestMetaData.isSpeculative() >> true
+        repositoryBlacklister.isBlacklisted(REPOSITORY_ID) >> false
+
+        when:
+        access.resolveComponentMetaData(moduleComponentIdentifier, requestMetaData, result)
+
+        then:
+        1 * delegate.resolveComponentMetaData(moduleComponentIdentifier, requestMetaData, result) >> { throw someException }
+        1 * result.failed(_ as ModuleVersionResolveException)
+        0 * repositoryBlacklister.blacklistRepository(_, _)
+    }
+
     def "can resolve artifacts with type"() {
         given:
         def component = Mock(ComponentResolveMetadata)
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser
+
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.resource.local.LocalFileStandInExternalResource
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class ParsedPomCacheTest extends Specification {
+    @Rule final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def cache = new ParsedPomCache()
+
+    def "reuses parsed POM until the POM file changes"() {
+        def pomFile = tmpDir.file("pom.xml")
+        pomFile.text = "<project><groupId>group-one</groupId></project>"
+        def resource = new LocalFileStandInExternalResource(pomFile, TestFiles.fileSystem())
+
+        when:
+        def first = cache.parse(resource)
+
+        then:
+        first.name == "project"
+        cache.parse(resource).is(first)
+
+        when:
+        pomFile.text = "<project><groupId>group-two</groupId><version>1.0</version></project>"
+        def second = cache.parse(resource)
+
+        then:
+        !second.is(first)
+        second.children*.text == ["group-two", "1.0"]
+    }
+}
@@ -850,4 +850,40 @@ class PomReaderTest extends AbstractPomReaderTest {
         pomReader.artifactId == pomReader.parentArtifactId
         pomReader.version == pomReader.parentVersion
     }
+
+    def "reads text with entities and CDATA sections and ignores elements that are not used"() {
+        when:
+        pomFile << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId><![CDATA[group-one]]></groupId>
+    <artifactId>artifact-one</artifactId>
+    <version>version-one</version>
+    <description>Copyright &copy; the authors</description>
+    <properties>
+        <some.prop>a&nbsp;b</some.prop>
+    </properties>
+    <build>
+        <plugins>
+            <plugin>
+                <artifactId>plugin-one</artifactId>
+                <dependencies>
+                    <dependency>
+                        <groupId>plugin-group</groupId>
+                        <artifactId>plugin-dependency</artifactId>
+                    </dependency>
+                </dependencies>
+            </plugin>
+        </plugins>
+    </build>
+</project>
+"""
+        pomReader = new PomReader(locallyAvailableExternalResource, moduleIdentifierFactory)
+
+        then:
+        pomReader.groupId == 'group-one'
+        pomReader.artifactId == 'artifact-one'
+        pomReader.properties['some.prop'] == 'a\u00a0b'
+        pomReader.dependencies.isEmpty()
+    }
 }
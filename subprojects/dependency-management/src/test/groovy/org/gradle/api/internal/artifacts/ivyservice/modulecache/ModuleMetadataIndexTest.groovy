@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class ModuleMetadataIndexTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmpDir
+    def indexFile = tmpDir.file("index/module-metadata.bin")
+    def index = new ModuleMetadataIndex(indexFile)
+
+    def cleanup() {
+        index.stop()
+    }
+
+    def "returns null for keys that have not been stored"() {
+        expect:
+        index.get("missing") == null
+    }
+
+    def "keeps the first value stored for a key"() {
+        when:
+        index.put("key", [1, 2, 3] as byte[])
+        index.put("key", [4] as byte[])
+
+        then:
+        index.get("key") == [1, 2, 3] as byte[]
+    }
+
+    def "reads values stored by another instance"() {
+        def other = new ModuleMetadataIndex(indexFile)
+
+        when:
+        index.put("a", [1] as byte[])
+        other.put("b", [2] as byte[])
+
+        then:
+        index.get("b") == [2] as byte[]
+        other.get("a") == [1] as byte[]
+
+        cleanup:
+        other.stop()
+    }
+
+    def "values survive reopening the index"() {
+        given:
+        index.put("key", [1, 2] as byte[])
+        index.stop()
+
+        when:
+        index = new ModuleMetadataIndex(indexFile)
+
+        then:
+        index.get("key") == [1, 2] as byte[]
+    }
+
+    def "discards a record that was not completely written"() {
+        given:
+        index.put("a", [1] as byte[])
+        index.stop()
+        indexFile.append([0, 0, 0, 100, 1] as byte[])
+
+        when:
+        index = new ModuleMetadataIndex(indexFile)
+        index.put("b", [2] as byte[])
+        index.stop()
+        index = new ModuleMetadataIndex(indexFile)
+
+        then:
+        index.get("a") == [1] as byte[]
+        index.get("b") == [2] as byte[]
+    }
+
+    def "ignores an index file with another schema"() {
+        given:
+        indexFile.parentFile.mkdirs()
+        indexFile.bytes = [(byte) 'G', (byte) 'M', (byte) 'I', 99, 0, 0] as byte[]
+
+        when:
+        index.put("key", [1] as byte[])
+
+        then:
+        index.get("key") == null
+        indexFile.bytes == [(byte) 'G', (byte) 'M', (byte) 'I', 99, 0, 0] as byte[]
+    }
+}
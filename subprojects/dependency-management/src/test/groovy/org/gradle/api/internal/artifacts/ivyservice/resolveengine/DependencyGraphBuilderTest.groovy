@@ -58,6 +58,8 @@ import org.gradle.internal.resolve.resolver.DependencyToComponentIdResolver
 import org.gradle.internal.resolve.resolver.ResolveContextToComponentResolver
 import org.gradle.internal.resolve.result.BuildableComponentIdResolveResult
 import org.gradle.internal.resolve.result.BuildableComponentResolveResult
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
 import spock.lang.Specification
 
 import static org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier.newId
@@ -65,6 +67,7 @@ import static org.gradle.internal.component.external.model.DefaultModuleComponen
 import static org.gradle.internal.component.local.model.TestComponentIdentifiers.newProjectId
 
 class DependencyGraphBuilderTest extends Specification {
+    @Rule SetSystemProperties sysProp = new SetSystemProperties()
     def configuration = Mock(ConfigurationInternal)
     def conflictResolver = Mock(ModuleConflictResolver)
     def idResolver = Mock(DependencyToComponentIdResolver)
@@ -182,6 +185,30 @@ class DependencyGraphBuilderTest extends Specification {
         result.components == ids(root, a, b, c, d)
     }
 
+    def "prefetches metadata of transitive dependencies with static versions when enabled"() {
+        given:
+        System.setProperty(DependencyGraphBuilder.PREFETCH_TRANSITIVE_METADATA_PROPERTY, "true")
+        def prefetchingBuilder = new DependencyGraphBuilder(idResolver, metaDataResolver, moduleResolver, new DefaultConflictHandler(conflictResolver, moduleReplacements), Specs.satisfyAll(), attributesSchema, moduleExclusions, buildOperationProcessor, moduleReplacements, dependencySubstitutionApplicator, componentSelectorConverter)
+        def a = revision("a")
+        def b = revision("b")
+        def c = revision("c")
+        traverses root, a
+        selectorResolvesTo(dependsOn(a, b.id), b.componentId, b.id)
+        selectorResolvesTo(dependsOn(b, c.id), c.componentId, c.id)
+
+        when:
+        def result = resolve(prefetchingBuilder)
+        result.rethrowFailure()
+
+        then:
+        // Once speculatively when prefetched while resolving the root, and once more from the repository caches when traversed
+        1 * metaDataResolver.resolve(b.componentId, { it.speculative }, _) >> { ComponentIdentifier id, ComponentOverrideMetadata requestMetaData, BuildableComponentResolveResult r -> r.resolved(b) }
+        1 * metaDataResolver.resolve(b.componentId, { !it.speculative }, _) >> { ComponentIdentifier id, ComponentOverrideMetadata requestMetaData, BuildableComponentResolveResult r -> r.resolved(b) }
+        1 * metaDataResolver.resolve(c.componentId, { it.speculative }, _) >> { ComponentIdentifier id, ComponentOverrideMetadata requestMetaData, BuildableComponentResolveResult r -> r.resolved(c) }
+        1 * metaDataResolver.resolve(c.componentId, { !it.speculative }, _) >> { ComponentIdentifier id, ComponentOverrideMetadata requestMetaData, BuildableComponentResolveResult r -> r.resolved(c) }
+        result.components == ids(root, a, b, c)
+    }
+
     def "does not include evicted module or dependencies when selected module already traversed before conflict detected"() {
         given:
         def selected = revision('a', '1.2')
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine
+
+import org.gradle.api.internal.artifacts.ResolveContext
+import org.gradle.api.internal.artifacts.configurations.ConflictResolution
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal
+import org.gradle.api.internal.artifacts.dependencies.DefaultMutableVersionConstraint
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ErrorHandlingModuleComponentRepository
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ModuleComponentRepositoryAccess
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.RepositoryBlacklister
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor
+import org.gradle.cache.PersistentIndexedCache
+import org.gradle.internal.Factory
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.component.model.ConfigurationMetadata
+import org.gradle.internal.component.model.DependencyMetadata
+import org.gradle.internal.operations.BuildOperationExecutor
+import org.gradle.internal.operations.BuildOperationQueue
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.DefaultBuildableModuleComponentMetaDataResolveResult
+import spock.lang.Specification
+
+import static org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier.newId
+import static org.gradle.internal.component.external.model.DefaultModuleComponentSelector.newSelector
+import static org.gradle.internal.component.local.model.TestComponentIdentifiers.newProjectId
+
+class ResolvedGraphCacheTest extends Specification {
+    def entries = [:]
+    def persistentCache = Stub(PersistentIndexedCache) {
+        get(_) >> { args -> entries[args[0]] }
+        put(_, _) >> { args -> entries[args[0]] = args[1] }
+    }
+    def cacheLockingManager = Stub(CacheLockingManager) {
+        createCache(_, _, _) >> persistentCache
+        useCache(_ as Factory) >> { Factory factory -> factory.create() }
+        useCache(_ as Runnable) >> { Runnable action -> action.run() }
+    }
+    def buildOperationExecutor = Stub(BuildOperationExecutor) {
+        runAll(_) >> { args ->
+            args[0].execute(Stub(BuildOperationQueue) {
+                add(_) >> { operation -> operation[0].run(null) }
+            })
+        }
+    }
+    def metaDataResolver = Mock(ComponentMetaDataResolver)
+    def cache = new ResolvedGraphCache(cacheLockingManager, buildOperationExecutor, true)
+
+    def "does nothing when disabled"() {
+        def disabledCache = new ResolvedGraphCache(cacheLockingManager, buildOperationExecutor, false)
+
+        expect:
+        disabledCache.prefetch(resolveContext("1.0"), [], metaDataResolver) == DependencyGraphVisitor.NO_OP
+    }
+
+    def "loads metadata of the components resolved last time for the same declarations"() {
+        given:
+        def recorder = cache.prefetch(resolveContext("1.0"), [], metaDataResolver)
+        recorder.visitNode(node(newProjectId(":root")))
+        recorder.visitNode(node(newId("org", "a", "1.0")))
+        recorder.visitNode(node(newId("org", "b", "2.0")))
+        recorder.finish(null)
+
+        when:
+        cache.prefetch(resolveContext("1.0"), [], metaDataResolver)
+
+        then:
+        1 * metaDataResolver.resolve(newId("org", "a", "1.0"), _, _)
+        1 * metaDataResolver.resolve(newId("org", "b", "2.0"), _, _)
+        0 * metaDataResolver._
+    }
+
+    def "does not load metadata when the declared dependencies have changed"() {
+        given:
+        def recorder = cache.prefetch(resolveContext("1.0"), [], metaDataResolver)
+        recorder.visitNode(node(newId("org", "a", "1.0")))
+        recorder.finish(null)
+
+        when:
+        cache.prefetch(resolveContext("1.1"), [], metaDataResolver)
+
+        then:
+        0 * metaDataResolver._
+    }
+
+    def "loads metadata speculatively"() {
+        given:
+        def recorder = cache.prefetch(resolveContext("1.0"), [], metaDataResolver)
+        recorder.visitNode(node(newId("org", "a", "1.0")))
+        recorder.finish(null)
+
+        when:
+        cache.prefetch(resolveContext("1.0"), [], metaDataResolver)
+
+        then:
+        1 * metaDataResolver.resolve(newId("org", "a", "1.0"), { it.speculative }, _)
+        0 * metaDataResolver._
+    }
+
+    def "failure to load metadata does not blacklist the repository"() {
+        given:
+        def delegate = Mock(ModuleComponentRepositoryAccess)
+        def blacklister = Mock(RepositoryBlacklister)
+        def access = new ErrorHandlingModuleComponentRepository.ErrorHandlingModuleComponentRepositoryAccess(delegate, "repo", blacklister)
+        def resolver = Stub(ComponentMetaDataResolver) {
+            resolve(_, _, _) >> { args -> access.resolveComponentMetaData(args[0], args[1], new DefaultBuildableModuleComponentMetaDataResolveResult()) }
+        }
+        def recorder = cache.prefetch(resolveContext("1.0"), [], resolver)
+        recorder.visitNode(node(newId("org", "a", "1.0")))
+        recorder.finish(null)
+
+        when:
+        cache.prefetch(resolveContext("1.0"), [], resolver)
+
+        then:
+        1 * delegate.resolveComponentMetaData(newId("org", "a", "1.0"), _, _) >> { throw new RuntimeException("broken") }
+        0 * blacklister.blacklistRepository(_, _)
+    }
+
+    private ResolveContext resolveContext(String version) {
+        def dependency = Stub(DependencyMetadata) {
+            getSelector() >> newSelector("org", "a", new DefaultMutableVersionConstraint(version))
+            getExcludes() >> []
+        }
+        def configuration = Stub(ConfigurationMetadata) {
+            getDependencies() >> [dependency]
+        }
+        def rootComponent = Stub(ComponentResolveMetadata) {
+            getConfiguration("compile") >> configuration
+        }
+        def resolutionStrategy = Stub(ResolutionStrategyInternal) {
+            getConflictResolution() >> ConflictResolution.latest
+            getForcedModules() >> ([] as Set)
+        }
+        return Stub(ResolveContext) {
+            getName() >> "compile"
+            getDisplayName() >> "configuration 'compile'"
+            toRootComponentMetaData() >> rootComponent
+            getResolutionStrategy() >> resolutionStrategy
+        }
+    }
+
+    private DependencyGraphNode node(def componentId) {
+        def component = Stub(DependencyGraphComponent) {
+            getComponentId() >> componentId
+        }
+        return Stub(DependencyGraphNode) {
+            getOwner() >> component
+        }
+    }
+}
@@ -70,6 +70,26 @@ class DefaultBinaryStoreTest extends Specification {
 
     }
 
+    def "data can be read independently of data that contains the same strings"() {
+        def store = new DefaultBinaryStore(temp.file("foo.bin"))
+
+        when:
+        store.write({ it.writeString("x"); it.writeString("x") } as BinaryStore.WriteAction)
+        def data1 = store.done()
+        store.write({ it.writeString("x"); it.writeNullableString(null) } as BinaryStore.WriteAction)
+        def data2 = store.done()
+
+        then:
+        data2.read({ [it.readString(), it.readNullableString()] } as BinaryStore.ReadAction) == ["x", null]
+        data2.close()
+
+        data1.read({ [it.readString(), it.readString()] } as BinaryStore.ReadAction) == ["x", "x"]
+        data1.close()
+
+        cleanup:
+        store.close()
+    }
+
     class SomeException extends RuntimeException {}
 
     def "write action exception is propagated to the client"() {
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.serialize.kryo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.util.Random;
+
+/**
+ * Compares the Kryo backed encoders and decoders on records that look like resolution results: a few longs and strings that are often repeated.
+ *
+ * <ul>
+ * <li>{@code unpooled}: allocates a new buffer for each encoder and decoder, as before buffers were pooled.</li>
+ * <li>{@code pooled}: uses the default encoder and decoder, which take their buffers from the pool.</li>
+ * <li>{@code array}: decodes directly from a byte array, without a buffer. Encodes like {@code pooled}.</li>
+ * <li>{@code deduplicating}: writes each distinct string once.</li>
+ * </ul>
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class KryoBackedCodecBenchmark {
+    @Param({"unpooled", "pooled", "array", "deduplicating"})
+    String codec;
+
+    @Param({"10", "1000"})
+    int records;
+
+    @Param({"20"})
+    int distinctStrings;
+
+    String[] strings;
+    byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(1234L);
+        strings = new String[records * 2];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = "org.gradle.sample:module-" + random.nextInt(distinctStrings);
+        }
+        encoded = encode();
+    }
+
+    @Benchmark
+    public void encode(Blackhole blackhole) {
+        blackhole.consume(encode());
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws EOFException {
+        KryoBackedDecoder decoder = newDecoder();
+        for (int i = 0; i < records; i++) {
+            blackhole.consume(decoder.readSmallLong());
+            blackhole.consume(decoder.readString());
+            blackhole.consume(decoder.readNullableString());
+        }
+        decoder.close();
+    }
+
+    private byte[] encode() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(records * 64);
+        KryoBackedEncoder encoder = newEncoder(outputStream);
+        for (int i = 0; i < records; i++) {
+            encoder.writeSmallLong(i);
+            encoder.writeString(strings[2 * i]);
+            encoder.writeNullableString(strings[2 * i + 1]);
+        }
+        encoder.close();
+        return outputStream.toByteArray();
+    }
+
+    private KryoBackedEncoder newEncoder(ByteArrayOutputStream outputStream) {
+        if (codec.equals("unpooled")) {
+            return new KryoBackedEncoder(outputStream, KryoBufferPool.BUFFER_SIZE);
+        }
+        if (codec.equals("deduplicating")) {
+            return new StringDeduplicatingKryoBackedEncoder(outputStream);
+        }
+        return new KryoBackedEncoder(outputStream);
+    }
+
+    private KryoBackedDecoder newDecoder() {
+        if (codec.equals("unpooled")) {
+            return new KryoBackedDecoder(new ByteArrayInputStream(encoded), KryoBufferPool.BUFFER_SIZE);
+        }
+        if (codec.equals("array")) {
+            return new KryoBackedDecoder(encoded, 0, encoded.length);
+        }
+        if (codec.equals("deduplicating")) {
+            return new StringDeduplicatingKryoBackedDecoder(new ByteArrayInputStream(encoded));
+        }
+        return new KryoBackedDecoder(new ByteArrayInputStream(encoded));
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.remote.internal;
+
+import java.nio.channels.SelectableChannel;
+
+/**
+ * <p>A {@link RemoteConnection} whose incoming data can be waited for using a {@link java.nio.channels.Selector}, rather than by blocking a thread in {@link #receive()}.</p>
+ *
+ * <p>Once the channel is readable, or some input is buffered, {@link #receive()} blocks only until the rest of the message has been received.</p>
+ */
+public interface SelectableConnection<T> extends RemoteConnection<T> {
+    /**
+     * Returns the channel that this connection reads its incoming data from.
+     */
+    SelectableChannel getChannel();
+
+    /**
+     * Returns true when some incoming data has already been read from the channel and is buffered by this connection.
+     */
+    boolean hasBufferedInput();
+}
@@ -17,6 +17,7 @@
 package org.gradle.internal.remote.internal.hub;
 
 import org.gradle.api.Action;
+import org.gradle.internal.Cast;
 import org.gradle.internal.concurrent.AsyncStoppable;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.concurrent.ManagedExecutor;
@@ -25,11 +26,17 @@ import org.gradle.internal.dispatch.Dispatch;
 import org.gradle.internal.remote.internal.Connection;
 import org.gradle.internal.remote.internal.RecoverableMessageIOException;
 import org.gradle.internal.remote.internal.RemoteConnection;
+import org.gradle.internal.remote.internal.SelectableConnection;
 import org.gradle.internal.remote.internal.hub.protocol.*;
 import org.gradle.internal.remote.internal.hub.queue.EndPointQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -40,15 +47,24 @@ import java.util.concurrent.locks.ReentrantLock;
  * Use {@link #addHandler(String, Object)} to create a worker for incoming messages on a given channel.
  * Use {@link #addConnection(RemoteConnection)} to attach another router to this router.
  *
+ * When a {@link MessageHubEventLoop} is given, connections that implement {@link SelectableConnection} are handled by the event loop. Otherwise, each connection
+ * uses a thread to receive messages and a thread to dispatch messages.
  */
 public class MessageHub implements AsyncStoppable {
     private enum State {Running, Stopping, Stopped}
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageHub.class);
     private static final Discard DISCARD = new Discard();
+    // The time to wait for further outgoing messages before flushing a connection that is busy, 0 to flush as soon as the queue is empty
+    private static final long BATCH_WINDOW_NANOS = TimeUnit.MICROSECONDS.toNanos(Integer.getInteger("org.gradle.internal.remote.batch-window-micros", 500));
+    private static final int MAX_BATCH_SIZE = 1000;
     private final ManagedExecutor workers;
     private final String displayName;
     private final Action<? super Throwable> errorHandler;
+    private final MessageHubEventLoop eventLoop;
     private final Lock lock = new ReentrantLock();
+    private final Condition eventLoopTasksFinished = lock.newCondition();
+    private int runningEventLoopTasks;
     private State state = State.Running;
     private final IncomingQueue incomingQueue = new IncomingQueue(lock);
     private final OutgoingQueue outgoingQueue = new OutgoingQueue(incomingQueue, lock);
@@ -58,8 +74,17 @@ public class MessageHub implements AsyncStoppable {
      * @param errorHandler Notified when some asynch. activity fails. Must be thread-safe.
      */
     public MessageHub(String displayName, ExecutorFactory executorFactory, Action<? super Throwable> errorHandler) {
+        this(displayName, executorFactory, errorHandler, null);
+    }
+
+    /**
+     * @param errorHandler Notified when some asynch. activity fails. Must be thread-safe.
+     * @param eventLoop The event loop that handles selectable connections, or null to handle each connection on its own threads.
+     */
+    public MessageHub(String displayName, ExecutorFactory executorFactory, Action<? super Throwable> errorHandler, @Nullable MessageHubEventLoop eventLoop) {
         this.displayName = displayName;
         this.errorHandler = errorHandler;
+        this.eventLoop = eventLoop;
         workers = executorFactory.create(displayName + " workers");
     }
 
@@ -144,8 +169,15 @@ public class MessageHub implements AsyncStoppable {
         try {
             assertRunning("add connection");
             ConnectionState connectionState = connections.add(connection);
-            workers.execute(new ConnectionDispatch(connectionState));
-            workers.execute(new ConnectionReceive(connectionState));
+            if (eventLoop != null && connection instanceof SelectableConnection) {
+                SelectableConnection<InterHubMessage> selectableConnection = Cast.uncheckedCast(connection);
+                runningEventLoopTasks += 2;
+                eventLoop.executeOutgoing(new EventLoopDispatch(connectionState));
+                new EventLoopReceive(connectionState, selectableConnection).schedule();
+            } else {
+                workers.execute(new ConnectionDispatch(connectionState));
+                workers.execute(new ConnectionReceive(connectionState));
+            }
         } finally {
             lock.unlock();
         }
@@ -215,6 +247,9 @@ public class MessageHub implements AsyncStoppable {
             lock.lock();
             try {
                 requestStop();
+                while (runningEventLoopTasks > 0) {
+                    eventLoopTasksFinished.awaitUninterruptibly();
+                }
             } finally {
                 lock.unlock();
             }
@@ -284,6 +319,167 @@ public class MessageHub implements AsyncStoppable {
         }
     }
 
+    private void eventLoopTaskFinished() {
+        runningEventLoopTasks--;
+        eventLoopTasksFinished.signalAll();
+    }
+
+    /**
+     * Receives the messages of a connection on the event loop. Runs when the connection has some data to receive, and receives messages until
+     * no more data is buffered.
+     */
+    private class EventLoopReceive implements Runnable {
+        private final SelectableConnection<InterHubMessage> connection;
+        private final ConnectionState connectionState;
+        private boolean finished;
+
+        EventLoopReceive(ConnectionState connectionState, SelectableConnection<InterHubMessage> connection) {
+            this.connection = connection;
+            this.connectionState = connectionState;
+        }
+
+        void schedule() {
+            if (connection.hasBufferedInput()) {
+                eventLoop.executeIncoming(this);
+            } else {
+                eventLoop.whenReadable(connection, this);
+            }
+        }
+
+        public void run() {
+            if (finished) {
+                return;
+            }
+            try {
+                boolean done = true;
+                try {
+                    int received = 0;
+                    while (true) {
+                        try {
+                            InterHubMessage message = connection.receive();
+                            if (message == null || message instanceof EndOfStream) {
+                                return;
+                            }
+                            addToIncoming(message);
+                        } catch (RecoverableMessageIOException e) {
+                            addToIncoming(new StreamFailureMessage(e));
+                        }
+                        // Give other connections a turn once some messages have been received
+                        if (!connection.hasBufferedInput() || ++received >= MAX_BATCH_SIZE) {
+                            schedule();
+                            done = false;
+                            return;
+                        }
+                    }
+                } finally {
+                    if (done) {
+                        finished = true;
+                        lock.lock();
+                        try {
+                            connectionState.receiveFinished();
+                            eventLoopTaskFinished();
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                errorHandler.execute(e);
+            }
+        }
+    }
+
+    /**
+     * Dispatches the outgoing messages of a connection on the event loop. Runs when some messages have been queued for the connection, and dispatches
+     * messages until the queue is empty. Unlike {@link ConnectionDispatch}, does not wait for further messages before flushing, as this would hold up an
+     * event loop thread.
+     */
+    private class EventLoopDispatch implements Runnable {
+        private final RemoteConnection<InterHubMessage> connection;
+        private final EndPointQueue queue;
+        private final ConnectionState connectionState;
+        private final List<InterHubMessage> messages = new ArrayList<InterHubMessage>();
+        private final Runnable schedule = new Runnable() {
+            @Override
+            public void run() {
+                eventLoop.executeOutgoing(EventLoopDispatch.this);
+            }
+        };
+        private boolean finished;
+
+        EventLoopDispatch(ConnectionState connectionState) {
+            this.connection = connectionState.getConnection();
+            this.queue = connectionState.getDispatchQueue();
+            this.connectionState = connectionState;
+        }
+
+        public void run() {
+            if (finished) {
+                return;
+            }
+            try {
+                boolean done = true;
+                try {
+                    int dispatched = 0;
+                    boolean flushed = false;
+                    while (true) {
+                        boolean taken;
+                        lock.lock();
+                        try {
+                            // Flush before asking to be notified, as the notification may run this dispatch on another thread
+                            taken = flushed ? queue.takeOrNotify(messages, schedule) : queue.poll(messages);
+                        } finally {
+                            lock.unlock();
+                        }
+                        if (!taken) {
+                            if (flushed) {
+                                done = false;
+                                return;
+                            }
+                            connection.flush();
+                            flushed = true;
+                            continue;
+                        }
+                        flushed = false;
+                        for (InterHubMessage message : messages) {
+                            try {
+                                connection.dispatch(message);
+                            } catch (RecoverableMessageIOException e) {
+                                addToIncoming(new StreamFailureMessage(e));
+                            }
+                            if (message instanceof EndOfStream) {
+                                connection.flush();
+                                return;
+                            }
+                        }
+                        dispatched += messages.size();
+                        messages.clear();
+                        // Give other connections a turn once some messages have been dispatched
+                        if (dispatched >= MAX_BATCH_SIZE) {
+                            connection.flush();
+                            schedule.run();
+                            done = false;
+                            return;
+                        }
+                    }
+                } finally {
+                    if (done) {
+                        finished = true;
+                        lock.lock();
+                        try {
+                            connectionState.dispatchFinished();
+                            eventLoopTaskFinished();
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                }
+            } catch (Throwable t) {
+                errorHandler.execute(t);
+            }
+        }
+    }
+
     private void addToIncoming(InterHubMessage message) {
         lock.lock();
         try {
@@ -297,6 +493,9 @@ public class MessageHub implements AsyncStoppable {
         private final RemoteConnection<InterHubMessage> connection;
         private final EndPointQueue queue;
         private final ConnectionState connectionState;
+        private long dispatched;
+        private long flushes;
+        private int largestBatch;
 
         private ConnectionDispatch(ConnectionState connectionState) {
             this.connection = connectionState.getConnection();
@@ -304,9 +503,26 @@ public class MessageHub implements AsyncStoppable {
             this.connectionState = connectionState;
         }
 
+        private boolean takeMore(List<InterHubMessage> messages, long timeoutNanos) {
+            lock.lock();
+            try {
+                return queue.take(messages, timeoutNanos, TimeUnit.NANOSECONDS);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void flush(int batchSize) {
+            connection.flush();
+            flushes++;
+            dispatched += batchSize;
+            largestBatch = Math.max(largestBatch, batchSize);
+        }
+
         public void run() {
             try {
                 List<InterHubMessage> messages = new ArrayList<InterHubMessage>();
+                boolean busy = false;
                 try {
                     while (true) {
                         lock.lock();
@@ -315,19 +531,31 @@ public class MessageHub implements AsyncStoppable {
                         } finally {
                             lock.unlock();
                         }
-                        for (InterHubMessage message : messages) {
-                            try {
-                                connection.dispatch(message);
-                            } catch (RecoverableMessageIOException e) {
-                                addToIncoming(new StreamFailureMessage(e));
+                        // When more than one message is queued at a time, wait a little for further messages, so that they are written together
+                        busy = busy || messages.size() > 1;
+                        long lingerUntil = System.nanoTime() + BATCH_WINDOW_NANOS;
+                        int batchSize = 0;
+                        while (true) {
+                            for (InterHubMessage message : messages) {
+                                try {
+                                    connection.dispatch(message);
+                                } catch (RecoverableMessageIOException e) {
+                                    addToIncoming(new StreamFailureMessage(e));
+                                }
+                                batchSize++;
+                                if (message instanceof EndOfStream) {
+                                    flush(batchSize);
+                                    return;
+                                }
                             }
-                            if (message instanceof EndOfStream) {
-                                connection.flush();
-                                return;
+                            messages.clear();
+                            long remaining = lingerUntil - System.nanoTime();
+                            if (!busy || batchSize >= MAX_BATCH_SIZE || remaining <= 0 || !takeMore(messages, remaining)) {
+                                break;
                             }
                         }
-                        connection.flush();
-                        messages.clear();
+                        flush(batchSize);
+                        busy = batchSize > 1;
                     }
                 } finally {
                     lock.lock();
@@ -336,6 +564,9 @@ public class MessageHub implements AsyncStoppable {
                     } finally {
                         lock.unlock();
                     }
+                    if (flushes > 0) {
+                        LOGGER.debug("Dispatched {} messages to {} in {} flushes, with at most {} messages per flush.", dispatched, connection, flushes, largestBatch);
+                    }
                 }
             } catch (Throwable t) {
                 errorHandler.execute(t);
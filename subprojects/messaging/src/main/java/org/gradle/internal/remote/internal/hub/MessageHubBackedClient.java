@@ -22,16 +22,24 @@ import org.gradle.internal.remote.internal.OutgoingConnector;
 import org.gradle.internal.remote.MessagingClient;
 import org.gradle.internal.remote.ObjectConnection;
 
+import javax.annotation.Nullable;
+
 public class MessageHubBackedClient implements MessagingClient {
     private final OutgoingConnector connector;
     private final ExecutorFactory executorFactory;
+    private final MessageHubEventLoop eventLoop;
 
     public MessageHubBackedClient(OutgoingConnector connector, ExecutorFactory executorFactory) {
+        this(connector, executorFactory, null);
+    }
+
+    public MessageHubBackedClient(OutgoingConnector connector, ExecutorFactory executorFactory, @Nullable MessageHubEventLoop eventLoop) {
         this.connector = connector;
         this.executorFactory = executorFactory;
+        this.eventLoop = eventLoop;
     }
 
     public ObjectConnection getConnection(Address address) {
-        return new MessageHubBackedObjectConnection(executorFactory, connector.connect(address));
+        return new MessageHubBackedObjectConnection(executorFactory, connector.connect(address), eventLoop);
     }
 }
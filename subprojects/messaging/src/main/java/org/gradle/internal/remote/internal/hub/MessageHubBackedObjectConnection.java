@@ -39,6 +39,7 @@ import org.gradle.internal.serialize.kryo.TypeSafeSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -54,12 +55,16 @@ public class MessageHubBackedObjectConnection implements ObjectConnection {
     private Set<ClassLoader> methodParamClassLoaders = new HashSet<ClassLoader>();
 
     public MessageHubBackedObjectConnection(ExecutorFactory executorFactory, ConnectCompletion completion) {
+        this(executorFactory, completion, null);
+    }
+
+    public MessageHubBackedObjectConnection(ExecutorFactory executorFactory, ConnectCompletion completion, @Nullable MessageHubEventLoop eventLoop) {
         Action<Throwable> errorHandler = new Action<Throwable>() {
             public void execute(Throwable throwable) {
                 LOGGER.error("Unexpected exception thrown.", throwable);
             }
         };
-        this.hub = new MessageHub(completion.toString(), executorFactory, errorHandler);
+        this.hub = new MessageHub(completion.toString(), executorFactory, errorHandler, eventLoop);
         this.completion = completion;
     }
 
@@ -24,13 +24,21 @@ import org.gradle.internal.remote.internal.IncomingConnector;
 import org.gradle.internal.remote.ObjectConnection;
 import org.gradle.internal.remote.internal.ConnectCompletion;
 
+import javax.annotation.Nullable;
+
 public class MessageHubBackedServer implements MessagingServer {
     private final IncomingConnector connector;
     private final ExecutorFactory executorFactory;
+    private final MessageHubEventLoop eventLoop;
 
     public MessageHubBackedServer(IncomingConnector connector, ExecutorFactory executorFactory) {
+        this(connector, executorFactory, null);
+    }
+
+    public MessageHubBackedServer(IncomingConnector connector, ExecutorFactory executorFactory, @Nullable MessageHubEventLoop eventLoop) {
         this.connector = connector;
         this.executorFactory = executorFactory;
+        this.eventLoop = eventLoop;
     }
 
     public ConnectionAcceptor accept(Action<ObjectConnection> action) {
@@ -45,7 +53,7 @@ public class MessageHubBackedServer implements MessagingServer {
         }
 
         public void execute(ConnectCompletion completion) {
-            action.execute(new MessageHubBackedObjectConnection(executorFactory, completion));
+            action.execute(new MessageHubBackedObjectConnection(executorFactory, completion, eventLoop));
         }
     }
 
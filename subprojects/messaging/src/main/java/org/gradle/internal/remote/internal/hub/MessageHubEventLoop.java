@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.remote.internal.hub;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.remote.internal.SelectableConnection;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Handles the connections of message hubs on a small, fixed set of threads, rather than on a receive thread and a dispatch thread for each connection.
+ *
+ * <p>A single thread waits for incoming data on all connections using a {@link Selector}. When data arrives on a connection, its messages are received
+ * on one of the incoming threads. Outgoing messages are written to a connection on one of the outgoing threads once they have been queued. Incoming and
+ * outgoing messages use separate threads, so that threads waiting for a peer to read their messages never prevent messages from being received.</p>
+ *
+ * <p>The threads are started when the first connection is added.</p>
+ */
+public class MessageHubEventLoop implements Stoppable {
+    private final ExecutorFactory executorFactory;
+    private final int poolSize;
+    private final Object lock = new Object();
+    private final List<Registration> pendingRegistrations = new ArrayList<Registration>();
+    private Selector selector;
+    private ManagedExecutor selectorThread;
+    private ManagedExecutor incoming;
+    private ManagedExecutor outgoing;
+    private boolean stopped;
+
+    public MessageHubEventLoop(ExecutorFactory executorFactory) {
+        this(executorFactory, Math.min(4, Math.max(2, Runtime.getRuntime().availableProcessors() / 2)));
+    }
+
+    /**
+     * @param poolSize the number of threads used to receive messages, and the number of threads used to write messages.
+     */
+    public MessageHubEventLoop(ExecutorFactory executorFactory, int poolSize) {
+        this.executorFactory = executorFactory;
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Runs the given action once on one of the incoming threads, when the given connection has some data to receive.
+     */
+    void whenReadable(SelectableConnection<?> connection, Runnable action) {
+        Selector selector;
+        synchronized (lock) {
+            start();
+            pendingRegistrations.add(new Registration(connection.getChannel(), action));
+            selector = this.selector;
+        }
+        selector.wakeup();
+    }
+
+    void executeIncoming(Runnable action) {
+        synchronized (lock) {
+            start();
+        }
+        incoming.execute(action);
+    }
+
+    void executeOutgoing(Runnable action) {
+        synchronized (lock) {
+            start();
+        }
+        outgoing.execute(action);
+    }
+
+    private void start() {
+        if (stopped) {
+            throw new IllegalStateException("Cannot handle connection, as the message hub event loop has been stopped.");
+        }
+        if (selector != null) {
+            return;
+        }
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        incoming = executorFactory.create("Message hub incoming", poolSize);
+        outgoing = executorFactory.create("Message hub outgoing", poolSize);
+        selectorThread = executorFactory.create("Message hub selector");
+        selectorThread.execute(new SelectLoop(selector));
+    }
+
+    /**
+     * Stops the threads of this event loop. Connections that are still being handled are not notified of further incoming data.
+     */
+    @Override
+    public void stop() {
+        Selector selector;
+        synchronized (lock) {
+            stopped = true;
+            selector = this.selector;
+        }
+        if (selector == null) {
+            return;
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            CompositeStoppable.stoppable(selectorThread, incoming, outgoing).stop();
+        }
+    }
+
+    private void registerPending(Selector selector) {
+        List<Registration> registrations;
+        synchronized (lock) {
+            if (pendingRegistrations.isEmpty()) {
+                return;
+            }
+            registrations = new ArrayList<Registration>(pendingRegistrations);
+            pendingRegistrations.clear();
+        }
+        for (Registration registration : registrations) {
+            SelectionKey key = registration.channel.keyFor(selector);
+            try {
+                if (key == null) {
+                    registration.channel.register(selector, SelectionKey.OP_READ, registration.action);
+                } else {
+                    key.interestOps(SelectionKey.OP_READ);
+                    key.attach(registration.action);
+                }
+            } catch (ClosedChannelException e) {
+                // Let the action find out that the connection has been closed
+                incoming.execute(registration.action);
+            } catch (CancelledKeyException e) {
+                incoming.execute(registration.action);
+            }
+        }
+    }
+
+    private class SelectLoop implements Runnable {
+        private final Selector selector;
+
+        SelectLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    selector.select();
+                    if (!selector.isOpen()) {
+                        return;
+                    }
+                    registerPending(selector);
+                    Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                    while (selectedKeys.hasNext()) {
+                        SelectionKey key = selectedKeys.next();
+                        selectedKeys.remove();
+                        Runnable action = (Runnable) key.attach(null);
+                        if (key.isValid()) {
+                            // Each registration is notified once, the action registers again once it has received the buffered messages
+                            key.interestOps(0);
+                        }
+                        if (action != null) {
+                            incoming.execute(action);
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                // Stopped
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class Registration {
+        private final SelectableChannel channel;
+        private final Runnable action;
+
+        Registration(SelectableChannel channel, Runnable action) {
+            this.channel = channel;
+            this.action = action;
+        }
+    }
+}
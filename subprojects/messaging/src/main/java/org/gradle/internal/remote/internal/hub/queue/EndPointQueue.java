@@ -23,12 +23,14 @@ import org.gradle.internal.remote.internal.hub.protocol.InterHubMessage;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 
 public class EndPointQueue implements Dispatch<InterHubMessage> {
     private final List<InterHubMessage> queue = new ArrayList<InterHubMessage>();
     private final MultiEndPointQueue owner;
     private final Condition condition;
+    private Runnable onDispatch;
 
     public EndPointQueue(MultiEndPointQueue owner, Condition condition) {
         this.owner = owner;
@@ -38,6 +40,11 @@ public class EndPointQueue implements Dispatch<InterHubMessage> {
     public void dispatch(InterHubMessage message) {
         queue.add(message);
         condition.signalAll();
+        if (onDispatch != null) {
+            Runnable action = onDispatch;
+            onDispatch = null;
+            action.run();
+        }
     }
 
     public void take(Collection<InterHubMessage> drainTo) {
@@ -55,6 +62,62 @@ public class EndPointQueue implements Dispatch<InterHubMessage> {
         queue.clear();
     }
 
+    /**
+     * Takes the queued messages, waiting at most the given time for a message to be queued.
+     *
+     * @return true if some messages were taken, false if the time elapsed.
+     */
+    public boolean take(Collection<InterHubMessage> drainTo, long timeout, TimeUnit unit) {
+        if (queue.isEmpty()) {
+            owner.empty(this);
+            long remaining = unit.toNanos(timeout);
+            while (queue.isEmpty()) {
+                if (remaining <= 0) {
+                    owner.notWaiting(this);
+                    return false;
+                }
+                try {
+                    remaining = condition.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+        }
+        drainTo.addAll(queue);
+        queue.clear();
+        return true;
+    }
+
+    /**
+     * Takes the queued messages without waiting.
+     *
+     * @return true if some messages were taken.
+     */
+    public boolean poll(Collection<InterHubMessage> drainTo) {
+        if (queue.isEmpty()) {
+            return false;
+        }
+        drainTo.addAll(queue);
+        queue.clear();
+        return true;
+    }
+
+    /**
+     * Takes the queued messages without waiting. When no messages are queued, the given action is run once a message has been queued.
+     *
+     * @return true if some messages were taken, false if the action will be run.
+     */
+    public boolean takeOrNotify(Collection<InterHubMessage> drainTo, Runnable onDispatch) {
+        if (queue.isEmpty()) {
+            this.onDispatch = onDispatch;
+            owner.empty(this);
+            return false;
+        }
+        drainTo.addAll(queue);
+        queue.clear();
+        return true;
+    }
+
     public void stop() {
         owner.stopped(this);
     }
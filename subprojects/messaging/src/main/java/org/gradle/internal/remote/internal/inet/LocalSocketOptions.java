@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.internal.remote.internal.inet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Tunes sockets that connect two processes on the same machine, such as the client and the daemon, or the daemon and its test workers.
+ *
+ * <p>These connections carry many small messages, for example test events and log output. Nagle's algorithm is disabled, so that a
+ * small message is sent as soon as it is flushed rather than held back until the previous message is acknowledged. The socket buffers
+ * are enlarged, so that bursts of messages do not stall the writer while the reader catches up.</p>
+ */
+class LocalSocketOptions {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalSocketOptions.class);
+
+    static final int SOCKET_BUFFER_SIZE = 256 * 1024;
+    static final int LOCAL_READ_BUFFER_SIZE = 64 * 1024;
+    static final int REMOTE_READ_BUFFER_SIZE = 4096;
+
+    private LocalSocketOptions() {
+    }
+
+    static boolean isLocal(InetAddress address) {
+        return address.isLoopbackAddress();
+    }
+
+    static boolean isLocal(SocketChannel socket) {
+        SocketAddress remoteAddress = socket.socket().getRemoteSocketAddress();
+        return remoteAddress instanceof InetSocketAddress && isLocal(((InetSocketAddress) remoteAddress).getAddress());
+    }
+
+    /**
+     * Sets the options that must be set before the socket connects, as they affect the TCP handshake.
+     */
+    static void configureBeforeConnect(Socket socket) {
+        try {
+            socket.setReceiveBufferSize(SOCKET_BUFFER_SIZE);
+        } catch (SocketException e) {
+            LOGGER.debug("Could not set receive buffer size of local socket.", e);
+        }
+    }
+
+    /**
+     * Sets the options for a connected socket, when it connects to a process on the same machine.
+     */
+    static void configureConnected(SocketChannel socketChannel) {
+        if (!isLocal(socketChannel)) {
+            return;
+        }
+        Socket socket = socketChannel.socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSendBufferSize(SOCKET_BUFFER_SIZE);
+        } catch (SocketException e) {
+            LOGGER.debug("Could not configure local socket.", e);
+        }
+    }
+}
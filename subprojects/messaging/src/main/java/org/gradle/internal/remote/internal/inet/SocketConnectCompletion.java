@@ -28,6 +28,7 @@ class SocketConnectCompletion implements ConnectCompletion {
 
     public SocketConnectCompletion(SocketChannel socket) {
         this.socket = socket;
+        LocalSocketOptions.configureConnected(socket);
     }
 
     @Override
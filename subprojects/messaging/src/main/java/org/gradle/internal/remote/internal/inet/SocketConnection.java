@@ -20,33 +20,38 @@ import com.google.common.base.Objects;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.CompositeStoppable;
 import org.gradle.internal.remote.internal.RecoverableMessageIOException;
+import org.gradle.internal.remote.internal.SelectableConnection;
+import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.FlushableEncoder;
 import org.gradle.internal.serialize.ObjectReader;
 import org.gradle.internal.serialize.ObjectWriter;
 import org.gradle.internal.serialize.StatefulSerializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 import org.gradle.internal.remote.internal.MessageIOException;
 import org.gradle.internal.remote.internal.MessageSerializer;
-import org.gradle.internal.remote.internal.RemoteConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 
-public class SocketConnection<T> implements RemoteConnection<T> {
+public class SocketConnection<T> implements SelectableConnection<T> {
     private static final Logger LOGGER = LoggerFactory.getLogger(SocketConnection.class);
     private final SocketChannel socket;
     private final SocketInetAddress localAddress;
     private final SocketInetAddress remoteAddress;
     private final ObjectWriter<T> objectWriter;
     private final ObjectReader<T> objectReader;
-    private final InputStream instr;
+    private final SocketInputStream instr;
     private final OutputStream outstr;
+    private final Decoder decoder;
     private final FlushableEncoder encoder;
 
     public SocketConnection(SocketChannel socket, MessageSerializer streamSerializer, StatefulSerializer<T> messageSerializer) {
@@ -56,7 +61,7 @@ public class SocketConnection<T> implements RemoteConnection<T> {
             // keeping writes active. For example, Socket.shutdownInput() does not work on Windows.
             socket.configureBlocking(false);
             outstr = new SocketOutputStream(socket);
-            instr = new SocketInputStream(socket);
+            instr = new SocketInputStream(socket, LocalSocketOptions.isLocal(socket) ? LocalSocketOptions.LOCAL_READ_BUFFER_SIZE : LocalSocketOptions.REMOTE_READ_BUFFER_SIZE);
         } catch (IOException e) {
             throw UncheckedException.throwAsUncheckedException(e);
         }
@@ -64,7 +69,8 @@ public class SocketConnection<T> implements RemoteConnection<T> {
         localAddress = new SocketInetAddress(localSocketAddress.getAddress(), localSocketAddress.getPort());
         InetSocketAddress remoteSocketAddress = (InetSocketAddress) socket.socket().getRemoteSocketAddress();
         remoteAddress = new SocketInetAddress(remoteSocketAddress.getAddress(), remoteSocketAddress.getPort());
-        objectReader = messageSerializer.newReader(streamSerializer.newDecoder(instr));
+        decoder = streamSerializer.newDecoder(instr);
+        objectReader = messageSerializer.newReader(decoder);
         encoder = streamSerializer.newEncoder(outstr);
         objectWriter = messageSerializer.newWriter(encoder);
     }
@@ -74,6 +80,20 @@ public class SocketConnection<T> implements RemoteConnection<T> {
         return "socket connection from " + localAddress + " to " + remoteAddress;
     }
 
+    @Override
+    public SelectableChannel getChannel() {
+        return socket;
+    }
+
+    @Override
+    public boolean hasBufferedInput() {
+        if (instr.available() > 0) {
+            return true;
+        }
+        // The decoder reads ahead, so it may hold bytes that have been read from the socket but not decoded yet
+        return decoder instanceof KryoBackedDecoder && ((KryoBackedDecoder) decoder).getReadPosition() < instr.getBytesRead();
+    }
+
     public T receive() throws MessageIOException {
         try {
             return objectReader.read();
@@ -145,16 +165,16 @@ public class SocketConnection<T> implements RemoteConnection<T> {
     }
 
     private static class SocketInputStream extends InputStream {
-        private final Selector selector;
         private final ByteBuffer buffer;
         private final SocketChannel socket;
         private final byte[] readBuffer = new byte[1];
+        private Selector selector;
+        private boolean closed;
+        private long bytesRead;
 
-        public SocketInputStream(SocketChannel socket) throws IOException {
+        public SocketInputStream(SocketChannel socket, int bufferSize) {
             this.socket = socket;
-            selector = Selector.open();
-            socket.register(selector, SelectionKey.OP_READ);
-            buffer = ByteBuffer.allocateDirect(4096);
+            buffer = ByteBuffer.allocateDirect(bufferSize);
             buffer.limit(0);
         }
 
@@ -174,29 +194,25 @@ public class SocketConnection<T> implements RemoteConnection<T> {
             }
 
             if (buffer.remaining() == 0) {
-                try {
-                    selector.select();
-                } catch (ClosedSelectorException e) {
-                    return -1;
-                }
-                if (!selector.isOpen()) {
-                    return -1;
-                }
-
-                buffer.clear();
-                int nread;
-                try {
-                    nread = socket.read(buffer);
-                } catch (IOException e) {
-                    if (isEndOfStream(e)) {
-                        buffer.position(0);
-                        buffer.limit(0);
+                // Only wait for the socket when it has no data yet. The selector is created when first needed, as connections whose data
+                // is waited for by an event loop usually never need it
+                int nread = readFromSocket();
+                while (nread == 0) {
+                    Selector selector = getSelector();
+                    if (selector == null) {
+                        return -1;
+                    }
+                    try {
+                        selector.select();
+                    } catch (ClosedSelectorException e) {
+                        return -1;
+                    }
+                    if (!selector.isOpen()) {
                         return -1;
                     }
-                    throw e;
+                    selector.selectedKeys().clear();
+                    nread = readFromSocket();
                 }
-                buffer.flip();
-
                 if (nread < 0) {
                     return -1;
                 }
@@ -204,12 +220,56 @@ public class SocketConnection<T> implements RemoteConnection<T> {
 
             int count = Math.min(buffer.remaining(), max);
             buffer.get(dest, offset, count);
+            bytesRead += count;
             return count;
         }
 
+        private int readFromSocket() throws IOException {
+            buffer.clear();
+            int nread;
+            try {
+                nread = socket.read(buffer);
+            } catch (IOException e) {
+                if (isEndOfStream(e) || e instanceof ClosedChannelException) {
+                    buffer.position(0);
+                    buffer.limit(0);
+                    return -1;
+                }
+                throw e;
+            }
+            buffer.flip();
+            return nread;
+        }
+
+        private synchronized Selector getSelector() throws IOException {
+            if (closed) {
+                return null;
+            }
+            if (selector == null) {
+                selector = Selector.open();
+                socket.register(selector, SelectionKey.OP_READ);
+            }
+            return selector;
+        }
+
+        /**
+         * Returns the number of bytes that have been read from this stream.
+         */
+        long getBytesRead() {
+            return bytesRead;
+        }
+
         @Override
-        public void close() throws IOException {
-            selector.close();
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            closed = true;
+            if (selector != null) {
+                selector.close();
+            }
         }
     }
 
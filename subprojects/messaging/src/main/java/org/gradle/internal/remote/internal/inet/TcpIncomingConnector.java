@@ -54,6 +54,8 @@ public class TcpIncomingConnector implements IncomingConnector {
         int localPort;
         try {
             serverSocket = ServerSocketChannel.open();
+            // Accepted sockets inherit the receive buffer size, which has to be set before the connection is established
+            serverSocket.socket().setReceiveBufferSize(LocalSocketOptions.SOCKET_BUFFER_SIZE);
             serverSocket.socket().bind(new InetSocketAddress(addressFactory.getLocalBindingAddress(), 0));
             localPort = serverSocket.socket().getLocalPort();
         } catch (Exception e) {
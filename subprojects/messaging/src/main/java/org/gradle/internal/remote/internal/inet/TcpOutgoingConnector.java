@@ -77,6 +77,9 @@ public class TcpOutgoingConnector implements OutgoingConnector {
         SocketChannel socketChannel = SocketChannel.open();
 
         try {
+            if (LocalSocketOptions.isLocal(candidate)) {
+                LocalSocketOptions.configureBeforeConnect(socketChannel.socket());
+            }
             socketChannel.socket().connect(new InetSocketAddress(candidate, address.getPort()), CONNECT_TIMEOUT);
 
             if (!detectSelfConnect(socketChannel)) {
@@ -28,6 +28,7 @@ import org.gradle.internal.remote.MessagingClient;
 import org.gradle.internal.remote.MessagingServer;
 import org.gradle.internal.remote.internal.hub.MessageHubBackedClient;
 import org.gradle.internal.remote.internal.hub.MessageHubBackedServer;
+import org.gradle.internal.remote.internal.hub.MessageHubEventLoop;
 import org.gradle.internal.remote.internal.inet.InetAddressFactory;
 import org.gradle.internal.remote.internal.inet.TcpIncomingConnector;
 import org.gradle.internal.remote.internal.inet.TcpOutgoingConnector;
@@ -46,6 +47,8 @@ import java.util.UUID;
  * </ul>
  */
 public class MessagingServices extends DefaultServiceRegistry implements Stoppable {
+    // Handles all connections on a few shared threads, rather than on two threads per connection
+    private static final boolean USE_EVENT_LOOP = Boolean.getBoolean("org.gradle.internal.remote.event-loop");
     private final IdGenerator<UUID> idGenerator = new UUIDGenerator();
 
     public void stop() {
@@ -72,15 +75,21 @@ public class MessagingServices extends DefaultServiceRegistry implements Stoppab
         );
     }
 
-    protected MessagingClient createMessagingClient(OutgoingConnector outgoingConnector, ExecutorFactory executorFactory) {
+    protected MessageHubEventLoop createMessageHubEventLoop(ExecutorFactory executorFactory) {
+        return new MessageHubEventLoop(executorFactory);
+    }
+
+    protected MessagingClient createMessagingClient(OutgoingConnector outgoingConnector, ExecutorFactory executorFactory, MessageHubEventLoop eventLoop) {
         return new MessageHubBackedClient(
                 outgoingConnector,
-                executorFactory);
+                executorFactory,
+                USE_EVENT_LOOP ? eventLoop : null);
     }
 
-    protected MessagingServer createMessagingServer(IncomingConnector incomingConnector, ExecutorFactory executorFactory) {
+    protected MessagingServer createMessagingServer(IncomingConnector incomingConnector, ExecutorFactory executorFactory, MessageHubEventLoop eventLoop) {
         return new MessageHubBackedServer(
                 incomingConnector,
-                executorFactory);
+                executorFactory,
+                USE_EVENT_LOOP ? eventLoop : null);
     }
 }
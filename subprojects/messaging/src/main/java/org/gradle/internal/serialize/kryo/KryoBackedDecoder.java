@@ -29,21 +29,42 @@ import java.io.InputStream;
 /**
  * Note that this decoder uses buffering, so will attempt to read beyond the end of the encoded data. This means you should use this type only when this decoder will be used to decode the entire
  * stream.
+ *
+ * The decoder created with the default buffer size uses a pooled buffer, which is returned to the pool when the decoder is closed. The decoder created for a byte array
+ * reads directly from the array, without copying it.
  */
 public class KryoBackedDecoder extends AbstractDecoder implements Decoder, Closeable {
     private final Input input;
     private final InputStream inputStream;
+    private final int startOffset;
+    private byte[] pooledBuffer;
     private long extraSkipped;
 
     public KryoBackedDecoder(InputStream inputStream) {
-        this(inputStream, 4096);
+        this.inputStream = inputStream;
+        this.startOffset = 0;
+        pooledBuffer = KryoBufferPool.take();
+        input = new Input(pooledBuffer);
+        input.setInputStream(inputStream);
     }
 
     public KryoBackedDecoder(InputStream inputStream, int bufferSize) {
         this.inputStream = inputStream;
+        this.startOffset = 0;
         input = new Input(this.inputStream, bufferSize);
     }
 
+    /**
+     * Creates a decoder that reads the given bytes of the given array. The array must not be changed while it is being decoded.
+     */
+    public KryoBackedDecoder(byte[] bytes, int offset, int count) {
+        this.inputStream = null;
+        this.startOffset = offset;
+        input = new Input(bytes, offset, count);
+        // Older Kryo versions treat the count as the limit
+        input.setLimit(offset + count);
+    }
+
     @Override
     protected int maybeReadBytes(byte[] buffer, int offset, int count) {
         return input.read(buffer, offset, count);
@@ -54,6 +75,9 @@ public class KryoBackedDecoder extends AbstractDecoder implements Decoder, Close
         // Work around some bugs in Input.skip()
         int remaining = input.limit() - input.position();
         if (remaining == 0) {
+            if (inputStream == null) {
+                return 0;
+            }
             long skipped = inputStream.skip(count);
             if (skipped > 0) {
                 extraSkipped += skipped;
@@ -147,10 +171,17 @@ public class KryoBackedDecoder extends AbstractDecoder implements Decoder, Close
      * Returns the total number of bytes consumed by this decoder. Some additional bytes may also be buffered by this decoder but have not been consumed.
      */
     public long getReadPosition() {
-        return input.total() + extraSkipped;
+        return input.total() - startOffset + extraSkipped;
     }
 
     public void close() throws IOException {
-        input.close();
+        try {
+            input.close();
+        } finally {
+            if (pooledBuffer != null) {
+                KryoBufferPool.release(pooledBuffer);
+                pooledBuffer = null;
+            }
+        }
     }
 }
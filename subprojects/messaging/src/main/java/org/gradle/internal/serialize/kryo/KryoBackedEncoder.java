@@ -24,11 +24,18 @@ import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.OutputStream;
 
+/**
+ * Note that the encoder created with the default buffer size uses a pooled buffer, which is returned to the pool when the encoder is closed.
+ * This encoder must not be used after it has been closed.
+ */
 public class KryoBackedEncoder extends AbstractEncoder implements FlushableEncoder, Closeable {
     private final Output output;
+    private byte[] pooledBuffer;
 
     public KryoBackedEncoder(OutputStream outputStream) {
-        this(outputStream, 4096);
+        pooledBuffer = KryoBufferPool.take();
+        output = new Output(pooledBuffer);
+        output.setOutputStream(outputStream);
     }
 
     public KryoBackedEncoder(OutputStream outputStream, int bufferSize) {
@@ -86,6 +93,13 @@ public class KryoBackedEncoder extends AbstractEncoder implements FlushableEncod
     }
 
     public void close() {
-        output.close();
+        try {
+            output.close();
+        } finally {
+            if (pooledBuffer != null) {
+                KryoBufferPool.release(pooledBuffer);
+                pooledBuffer = null;
+            }
+        }
     }
 }
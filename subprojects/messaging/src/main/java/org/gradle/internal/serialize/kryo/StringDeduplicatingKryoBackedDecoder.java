@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.serialize.kryo;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder.FIRST_REFERENCE;
+import static org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder.NEW_STRING;
+import static org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder.NULL_STRING;
+
+/**
+ * Reads the data written by a {@link StringDeduplicatingKryoBackedEncoder}. Repeated strings are decoded to the same instance.
+ */
+public class StringDeduplicatingKryoBackedDecoder extends KryoBackedDecoder {
+    private final List<String> strings = new ArrayList<String>();
+
+    public StringDeduplicatingKryoBackedDecoder(InputStream inputStream) {
+        super(inputStream);
+    }
+
+    public StringDeduplicatingKryoBackedDecoder(InputStream inputStream, int bufferSize) {
+        super(inputStream, bufferSize);
+    }
+
+    @Override
+    public String readNullableString() throws EOFException {
+        int marker = readSmallInt();
+        if (marker == NULL_STRING) {
+            return null;
+        }
+        if (marker == NEW_STRING) {
+            String string = super.readNullableString();
+            strings.add(string);
+            return string;
+        }
+        int index = marker - FIRST_REFERENCE;
+        if (index < 0 || index >= strings.size()) {
+            throw new IllegalStateException("Invalid reference to string " + index + ", only " + strings.size() + " strings have been read.");
+        }
+        return strings.get(index);
+    }
+}
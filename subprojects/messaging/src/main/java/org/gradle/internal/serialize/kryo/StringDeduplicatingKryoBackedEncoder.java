@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.serialize.kryo;
+
+import javax.annotation.Nullable;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link KryoBackedEncoder} that writes each distinct string once. Later occurrences of a string are written as a reference to the first occurrence.
+ *
+ * <p>The data must be read by a {@link StringDeduplicatingKryoBackedDecoder}, from the point where this encoder started writing or where {@link #done()} was last called.</p>
+ */
+public class StringDeduplicatingKryoBackedEncoder extends KryoBackedEncoder {
+    static final int NULL_STRING = 0;
+    static final int NEW_STRING = 1;
+    static final int FIRST_REFERENCE = 2;
+
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    public StringDeduplicatingKryoBackedEncoder(OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    public StringDeduplicatingKryoBackedEncoder(OutputStream outputStream, int bufferSize) {
+        super(outputStream, bufferSize);
+    }
+
+    @Override
+    public void writeString(CharSequence value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cannot encode a null string.");
+        }
+        writeNullableString(value);
+    }
+
+    @Override
+    public void writeNullableString(@Nullable CharSequence value) {
+        if (value == null) {
+            writeSmallInt(NULL_STRING);
+            return;
+        }
+        String string = value.toString();
+        Integer index = strings.get(string);
+        if (index != null) {
+            writeSmallInt(FIRST_REFERENCE + index);
+            return;
+        }
+        strings.put(string, strings.size());
+        writeSmallInt(NEW_STRING);
+        super.writeString(string);
+    }
+
+    /**
+     * Forgets the strings that have been written, so that the data written after this call can be read without reading the data written before it.
+     */
+    public void done() {
+        strings.clear();
+    }
+}
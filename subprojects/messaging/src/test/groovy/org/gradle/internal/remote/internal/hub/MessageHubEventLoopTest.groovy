@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.remote.internal.hub
+
+import org.gradle.internal.id.UUIDGenerator
+import org.gradle.internal.remote.ObjectConnection
+import org.gradle.internal.remote.internal.inet.InetAddressFactory
+import org.gradle.internal.remote.internal.inet.TcpIncomingConnector
+import org.gradle.internal.remote.internal.inet.TcpOutgoingConnector
+import org.gradle.test.fixtures.concurrent.ConcurrentSpec
+import spock.lang.Timeout
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@Timeout(60)
+class MessageHubEventLoopTest extends ConcurrentSpec {
+    final eventLoop = new MessageHubEventLoop(executorFactory, 2)
+    final server = new MessageHubBackedServer(new TcpIncomingConnector(executorFactory, new InetAddressFactory(), new UUIDGenerator()), executorFactory, eventLoop)
+    final client = new MessageHubBackedClient(new TcpOutgoingConnector(), executorFactory, eventLoop)
+
+    def cleanup() {
+        eventLoop.stop()
+    }
+
+    def "delivers messages in order over connections handled by the event loop"() {
+        given:
+        def received = new CopyOnWriteArrayList<String>()
+        def allReceived = new CountDownLatch(3000)
+        def handler = { String message ->
+            received << message
+            allReceived.countDown()
+        } as TestProtocol
+        def serverConnections = new CopyOnWriteArrayList<ObjectConnection>()
+        def acceptor = server.accept { ObjectConnection connection ->
+            connection.addIncoming(TestProtocol, handler)
+            connection.connect()
+            serverConnections << connection
+        }
+        def connections = (1..3).collect { client.getConnection(acceptor.address) }
+        def outgoing = connections.collect { it.addOutgoing(TestProtocol) }
+        connections*.connect()
+
+        when:
+        outgoing.eachWithIndex { TestProtocol dispatch, int index ->
+            1000.times { dispatch.send("$index:$it".toString()) }
+        }
+
+        then:
+        allReceived.await(30, TimeUnit.SECONDS)
+        (0..2).every { index -> received.findAll { it.startsWith("$index:") } == (0..999).collect { "$index:$it".toString() } }
+
+        cleanup:
+        connections*.stop()
+        serverConnections*.stop()
+        acceptor?.stop()
+    }
+
+    interface TestProtocol {
+        void send(String message)
+    }
+}
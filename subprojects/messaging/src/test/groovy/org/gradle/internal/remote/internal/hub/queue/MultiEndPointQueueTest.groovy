@@ -18,6 +18,8 @@ package org.gradle.internal.remote.internal.hub.queue
 
 import org.gradle.internal.remote.internal.hub.protocol.EndOfStream
 
+import java.util.concurrent.TimeUnit
+
 class MultiEndPointQueueTest extends AbstractQueueTest {
     final MultiEndPointQueue queue = new MultiEndPointQueue(lock)
 
@@ -162,4 +164,41 @@ class MultiEndPointQueueTest extends AbstractQueueTest {
         messages.size() == 1
         messages[0] instanceof EndOfStream
     }
+
+    def "timed take returns queued messages without waiting"() {
+        given:
+        def message = unicast()
+        def endpoint = queue.newEndpoint()
+        queue.dispatch(message)
+
+        when:
+        def messages = []
+        def taken = endpoint.take(messages, 1, TimeUnit.MILLISECONDS)
+
+        then:
+        taken
+        messages == [message]
+    }
+
+    def "endpoint is no longer waiting when timed take gives up"() {
+        given:
+        def message = unicast()
+        def endpoint = queue.newEndpoint()
+
+        when:
+        def messages = []
+        def taken = endpoint.take(messages, 1, TimeUnit.MILLISECONDS)
+        queue.dispatch(message)
+
+        then:
+        !taken
+        messages.empty
+
+        when:
+        def queued = []
+        queue.drain(queued)
+
+        then:
+        queued == [message]
+    }
 }
@@ -91,6 +91,22 @@ class TcpConnectorTest extends ConcurrentSpec {
         connection?.stop()
     }
 
+    def "local connections send small messages without delay"() {
+        Action action = Mock()
+
+        when:
+        def acceptor = incomingConnector.accept(action, false)
+        def completion = outgoingConnector.connect(acceptor.address)
+        def connection = completion.create(serializer)
+
+        then:
+        completion.socket.socket().tcpNoDelay
+
+        cleanup:
+        acceptor?.stop()
+        connection?.stop()
+    }
+
     def "client throws exception when cannot connect to server"() {
         def address = new MultiChoiceAddress(idGenerator.generateId(), portAllocator.assignPort(), [InetAddress.getByName("localhost")])
 
@@ -95,4 +95,54 @@ class KryoBackedCodecTest extends AbstractCodecTest {
         instr.available() == 0
         decoder.readPosition == 4108
     }
+
+    def "can decode part of a byte array"() {
+        def outstr = new ByteArrayOutputStream()
+        def encoder = new KryoBackedEncoder(outstr)
+        encoder.writeString("ignored")
+        def start = encoder.writePosition
+        encoder.writeString("some string")
+        encoder.writeSmallInt(12)
+        def end = encoder.writePosition
+        encoder.writeLong(1234)
+        encoder.close()
+        def bytes = outstr.toByteArray()
+
+        when:
+        def decoder = new KryoBackedDecoder(bytes, start, end - start)
+
+        then:
+        decoder.readString() == "some string"
+        decoder.readSmallInt() == 12
+        decoder.readPosition == end - start
+
+        when:
+        decoder.readLong()
+
+        then:
+        thrown(EOFException)
+    }
+
+    def "encoders and decoders that have been closed do not share buffers with new encoders and decoders"() {
+        def outstr = new ByteArrayOutputStream()
+        def encoder = new KryoBackedEncoder(outstr)
+        encoder.writeString("first")
+        encoder.close()
+        encoder.close()
+
+        when:
+        def other1 = new ByteArrayOutputStream()
+        def encoder1 = new KryoBackedEncoder(other1)
+        def other2 = new ByteArrayOutputStream()
+        def encoder2 = new KryoBackedEncoder(other2)
+        encoder1.writeString("second")
+        encoder2.writeString("third")
+        encoder1.close()
+        encoder2.close()
+
+        then:
+        new KryoBackedDecoder(new ByteArrayInputStream(outstr.toByteArray())).readString() == "first"
+        new KryoBackedDecoder(new ByteArrayInputStream(other1.toByteArray())).readString() == "second"
+        new KryoBackedDecoder(new ByteArrayInputStream(other2.toByteArray())).readString() == "third"
+    }
 }
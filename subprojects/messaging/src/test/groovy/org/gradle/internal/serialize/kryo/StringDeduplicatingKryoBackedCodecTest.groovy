@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.serialize.kryo
+
+import org.gradle.internal.serialize.AbstractCodecTest
+import org.gradle.internal.serialize.Decoder
+import org.gradle.internal.serialize.Encoder
+
+class StringDeduplicatingKryoBackedCodecTest extends AbstractCodecTest {
+    @Override
+    void encodeTo(OutputStream outputStream, Closure<Encoder> closure) {
+        def encoder = new StringDeduplicatingKryoBackedEncoder(outputStream, 10)
+        closure.call(encoder)
+        encoder.flush()
+    }
+
+    @Override
+    void decodeFrom(InputStream inputStream, Closure<Decoder> closure) {
+        def decoder = new StringDeduplicatingKryoBackedDecoder(inputStream, 10)
+        closure.call(decoder)
+    }
+
+    def "writes each distinct string once"() {
+        def once = encode { Encoder encoder ->
+            encoder.writeString("some string")
+        }
+        def bytes = encode { Encoder encoder ->
+            encoder.writeString("some string")
+            encoder.writeNullableString("some string")
+            encoder.writeString(new StringBuilder("some string"))
+            encoder.writeNullableString(null)
+            encoder.writeString("other")
+            encoder.writeString("some string")
+        }
+
+        expect:
+        bytes.length < once.length * 2
+        decode(bytes) { Decoder decoder ->
+            assert decoder.readString() == "some string"
+            assert decoder.readNullableString() == "some string"
+            assert decoder.readString() == "some string"
+            assert decoder.readNullableString() == null
+            assert decoder.readString() == "other"
+            assert decoder.readString() == "some string"
+        }
+    }
+
+    def "strings written after done are written again"() {
+        def outstr = new ByteArrayOutputStream()
+        def encoder = new StringDeduplicatingKryoBackedEncoder(outstr)
+        encoder.writeString("some string")
+        encoder.flush()
+        def start = outstr.size()
+
+        when:
+        encoder.done()
+        encoder.writeString("some string")
+        encoder.close()
+        def bytes = outstr.toByteArray()
+
+        then:
+        def decoder = new StringDeduplicatingKryoBackedDecoder(new ByteArrayInputStream(bytes, start, bytes.length - start))
+        decoder.readString() == "some string"
+    }
+}
@@ -26,6 +26,8 @@ public class PersistentIndexedCacheParameters<K, V> {
     private final Serializer<K> keySerializer;
     private final Serializer<V> valueSerializer;
     private CacheDecorator cacheDecorator;
+    private boolean memoryMapped;
+    private boolean logStructured;
 
     public PersistentIndexedCacheParameters(String cacheName, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
         this.cacheName = cacheName;
@@ -67,4 +69,30 @@ public class PersistentIndexedCacheParameters<K, V> {
         this.cacheDecorator = cacheDecorator;
         return this;
     }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Requests that the backing file of this cache is read using memory mapping, rather than a seek and read per block. Only applies to the default B-tree storage.
+     * This suits caches that are read much more often than they are written. Ignored on platforms where memory mapping is not supported for cache files.
+     */
+    public PersistentIndexedCacheParameters<K, V> memoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        return this;
+    }
+
+    public boolean isLogStructured() {
+        return logStructured;
+    }
+
+    /**
+     * Requests that this cache is stored in append-only segment files, rather than in a B-tree that is updated in place.
+     * This suits caches with a high rate of updates, as writes are sequential and the files are compacted in the background.
+     */
+    public PersistentIndexedCacheParameters<K, V> logStructured(boolean logStructured) {
+        this.logStructured = logStructured;
+        return this;
+    }
 }
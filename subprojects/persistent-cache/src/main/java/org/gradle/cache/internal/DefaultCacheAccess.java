@@ -28,8 +28,13 @@ import org.gradle.cache.LockOptions;
 import org.gradle.cache.LockTimeoutException;
 import org.gradle.cache.MultiProcessSafePersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.PersistentIndexedCacheStore;
 import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.cache.internal.btree.BlockStore;
+import org.gradle.cache.internal.btree.FileBackedBlockStore;
+import org.gradle.cache.internal.btree.MemoryMappedBlockStore;
 import org.gradle.cache.internal.cacheops.CacheAccessOperationsStack;
+import org.gradle.cache.internal.logstructured.LogStructuredPersistentIndexedCache;
 import org.gradle.internal.Cast;
 import org.gradle.internal.Factories;
 import org.gradle.internal.Factory;
@@ -37,6 +42,7 @@ import org.gradle.internal.SystemProperties;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.util.CollectionUtils;
 import org.slf4j.Logger;
@@ -74,6 +80,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
     private final CacheAccessOperationsStack operations;
 
     private ManagedExecutor cacheUpdateExecutor;
+    private ManagedExecutor compactionExecutor;
     private CacheAccessWorker cacheAccessWorker;
     private final Lock stateLock = new ReentrantLock(); // protects the following state
     private final Condition condition = stateLock.newCondition();
@@ -129,6 +136,13 @@ public class DefaultCacheAccess implements CacheCoordinator {
         return cacheAccessWorker;
     }
 
+    private synchronized ManagedExecutor getCompactionExecutor() {
+        if (compactionExecutor == null) {
+            compactionExecutor = executorFactory.create("Cache compaction for " + cacheDisplayName);
+        }
+        return compactionExecutor;
+    }
+
     @Override
     public void open() {
         stateLock.lock();
@@ -161,6 +175,10 @@ public class DefaultCacheAccess implements CacheCoordinator {
             cacheUpdateExecutor.stop();
             cacheUpdateExecutor = null;
         }
+        if (compactionExecutor != null) {
+            compactionExecutor.stop();
+            compactionExecutor = null;
+        }
         stateLock.lock();
         try {
             // Take ownership
@@ -284,9 +302,9 @@ public class DefaultCacheAccess implements CacheCoordinator {
             if (entry == null) {
                 final File cacheFile = new File(baseDir, parameters.getCacheName() + ".bin");
                 LOG.info("Creating new cache for {}, path {}, access {}", parameters.getCacheName(), cacheFile, this);
-                Factory<BTreePersistentIndexedCache<K, V>> indexedCacheFactory = new Factory<BTreePersistentIndexedCache<K, V>>() {
-                    public BTreePersistentIndexedCache<K, V> create() {
-                        return doCreateCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
+                Factory<PersistentIndexedCacheStore<K, V>> indexedCacheFactory = new Factory<PersistentIndexedCacheStore<K, V>>() {
+                    public PersistentIndexedCacheStore<K, V> create() {
+                        return doCreateCache(cacheFile, parameters);
                     }
                 };
 
@@ -312,8 +330,15 @@ public class DefaultCacheAccess implements CacheCoordinator {
         }
     }
 
-    <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
-        return new BTreePersistentIndexedCache<K, V>(cacheFile, keySerializer, valueSerializer);
+    <K, V> PersistentIndexedCacheStore<K, V> doCreateCache(File cacheFile, PersistentIndexedCacheParameters<K, V> parameters) {
+        if (parameters.isLogStructured()) {
+            File cacheDir = new File(baseDir, parameters.getCacheName());
+            return new LogStructuredPersistentIndexedCache<K, V>(cacheDir, parameters.getKeySerializer(), parameters.getValueSerializer(), getCompactionExecutor());
+        }
+        BlockStore backingStore = parameters.isMemoryMapped() && !OperatingSystem.current().isWindows()
+            ? new MemoryMappedBlockStore(cacheFile)
+            : new FileBackedBlockStore(cacheFile);
+        return new BTreePersistentIndexedCache<K, V>(cacheFile, backingStore, parameters.getKeySerializer(), parameters.getValueSerializer());
     }
 
     /**
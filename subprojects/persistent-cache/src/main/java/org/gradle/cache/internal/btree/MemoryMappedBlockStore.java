@@ -0,0 +1,444 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.Striped;
+import org.gradle.api.UncheckedIOException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * A {@link BlockStore} that reads blocks from memory mapped regions of the cache file, rather than seeking and reading the file for each block.
+ *
+ * <p>The file is mapped in fixed size regions. Blocks are written using positional writes to the file channel, and are visible to the mapped regions
+ * through the shared page cache. Each region is guarded by a striped read-write lock, so that many readers can read from the store concurrently.
+ * Regions that are already mapped are read without further locking; the mapping lock is only taken when a region has to be mapped or remapped.</p>
+ *
+ * <p>Concurrent writers are also safe: each write serializes its block into its own buffer, and block allocation and growing the file are guarded
+ * by a lock. Writing the same block from several threads at once is not supported.</p>
+ *
+ * <p>Uses the same file format as {@link FileBackedBlockStore}, so a cache file can be opened using either implementation.</p>
+ */
+public class MemoryMappedBlockStore implements BlockStore {
+    private static final int DEFAULT_REGION_SIZE = 16 * 1024 * 1024;
+    private static final int LOCK_STRIPES = 16;
+    private static final MappedByteBuffer[] NO_REGIONS = new MappedByteBuffer[0];
+
+    private final File cacheFile;
+    private final int regionSize;
+    private final Striped<ReadWriteLock> regionLocks = Striped.readWriteLock(LOCK_STRIPES);
+    private final Object mappingLock = new Object();
+    private final Object allocationLock = new Object();
+    private RandomAccessFile file;
+    private FileChannel channel;
+    // Replaced rather than updated in place, so that readers can use it without holding the mapping lock
+    private volatile MappedByteBuffer[] regions = NO_REGIONS;
+    private volatile long currentFileSize;
+    private long nextBlock;
+    private Factory factory;
+
+    public MemoryMappedBlockStore(File cacheFile) {
+        this(cacheFile, DEFAULT_REGION_SIZE);
+    }
+
+    MemoryMappedBlockStore(File cacheFile, int regionSize) {
+        this.cacheFile = cacheFile;
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public String toString() {
+        return "cache '" + cacheFile + "'";
+    }
+
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            file = new RandomAccessFile(cacheFile, "rw");
+            channel = file.getChannel();
+            currentFileSize = file.length();
+            nextBlock = currentFileSize;
+            if (currentFileSize == 0) {
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void close() {
+        synchronized (mappingLock) {
+            regions = NO_REGIONS;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void clear() {
+        synchronized (mappingLock) {
+            regions = NO_REGIONS;
+        }
+        synchronized (allocationLock) {
+            try {
+                file.setLength(0);
+                currentFileSize = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            nextBlock = 0;
+        }
+    }
+
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    public void flush() {
+    }
+
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(BlockPointer.pos(0), payloadType);
+    }
+
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            blockImpl.write();
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long alloc(long length) {
+        synchronized (allocationLock) {
+            long pos = nextBlock;
+            nextBlock += length;
+            return pos;
+        }
+    }
+
+    private void growTo(long size) throws IOException {
+        synchronized (allocationLock) {
+            if (currentFileSize < size) {
+                file.setLength(size);
+                currentFileSize = size;
+            }
+        }
+    }
+
+    /**
+     * Returns the locks for the regions covering the given range of the file, in an order that is safe to acquire them.
+     */
+    private List<ReadWriteLock> locksFor(long start, long end) {
+        int first = (int) (start / regionSize);
+        int last = (int) ((end - 1) / regionSize);
+        if (first == last) {
+            return ImmutableList.of(regionLocks.get(first));
+        }
+        ImmutableList.Builder<Integer> keys = ImmutableList.builder();
+        for (int i = first; i <= last; i++) {
+            keys.add(i);
+        }
+        return ImmutableList.copyOf(regionLocks.bulkGet(keys.build()));
+    }
+
+    private static void lockAll(List<ReadWriteLock> locks, boolean exclusive) {
+        for (ReadWriteLock lock : locks) {
+            (exclusive ? lock.writeLock() : lock.readLock()).lock();
+        }
+    }
+
+    private static void unlockAll(List<ReadWriteLock> locks, boolean exclusive) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            Lock lock = exclusive ? locks.get(i).writeLock() : locks.get(i).readLock();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a view of the given region, mapping it if required. The region is mapped up to at least the given limit.
+     */
+    private ByteBuffer region(int index, long limit) throws IOException {
+        long regionStart = (long) index * regionSize;
+        MappedByteBuffer region = mappedRegion(regions, index, regionStart, limit);
+        if (region != null) {
+            return region.duplicate();
+        }
+        synchronized (mappingLock) {
+            MappedByteBuffer[] current = regions;
+            region = mappedRegion(current, index, regionStart, limit);
+            if (region == null) {
+                long size = Math.min(regionSize, currentFileSize - regionStart);
+                region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, size);
+                MappedByteBuffer[] newRegions = new MappedByteBuffer[Math.max(index + 1, current.length)];
+                System.arraycopy(current, 0, newRegions, 0, current.length);
+                newRegions[index] = region;
+                regions = newRegions;
+            }
+            return region.duplicate();
+        }
+    }
+
+    private static MappedByteBuffer mappedRegion(MappedByteBuffer[] regions, int index, long regionStart, long limit) {
+        if (index >= regions.length) {
+            return null;
+        }
+        MappedByteBuffer region = regions[index];
+        if (region == null || regionStart + region.capacity() < limit) {
+            return null;
+        }
+        return region;
+    }
+
+    private final class BlockImpl extends Block {
+        private static final int HEADER_SIZE = 1 + INT_SIZE; // type, payload size
+        private static final int TAIL_SIZE = INT_SIZE;
+
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = BlockPointer.pos(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            long pos = getPos().getPos();
+
+            BlockPayload payload = getPayload();
+
+            // Serialize header, body and count
+            BlockBuffer writeBuffer = new BlockBuffer();
+            DataOutputStream outputStream = new DataOutputStream(writeBuffer);
+            outputStream.writeByte(payload.getType());
+            outputStream.writeInt(payloadSize);
+            payload.write(outputStream);
+            long bytesWritten = writeBuffer.size();
+            if (bytesWritten > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Block payload exceeds maximum size");
+            }
+            outputStream.writeInt((int) bytesWritten);
+            outputStream.flush();
+
+            long finalSize = pos + HEADER_SIZE + TAIL_SIZE + payloadSize;
+            ByteBuffer content = writeBuffer.asByteBuffer();
+            List<ReadWriteLock> locks = locksFor(pos, pos + content.remaining());
+            lockAll(locks, true);
+            try {
+                long writePos = pos;
+                while (content.hasRemaining()) {
+                    writePos += channel.write(content, writePos);
+                }
+
+                // Pad
+                growTo(finalSize);
+            } finally {
+                unlockAll(locks, true);
+            }
+        }
+
+        public void read() throws Exception {
+            long pos = getPos().getPos();
+            assert pos >= 0;
+            long fileSize = currentFileSize;
+            if (pos + HEADER_SIZE >= fileSize) {
+                throw blockCorruptedException();
+            }
+
+            BlockPayload payload = getPayload();
+            List<ReadWriteLock> locks = locksFor(pos, pos + HEADER_SIZE);
+            lockAll(locks, false);
+            try {
+                DataInputStream header = new DataInputStream(new MappedInputStream(pos, pos + HEADER_SIZE));
+
+                // Read header
+                byte type = header.readByte();
+                if (type != payload.getType()) {
+                    throw blockCorruptedException();
+                }
+                payloadSize = header.readInt();
+            } finally {
+                unlockAll(locks, false);
+            }
+
+            long end = pos + HEADER_SIZE + TAIL_SIZE + payloadSize;
+            if (payloadSize < 0 || end > fileSize) {
+                throw blockCorruptedException();
+            }
+
+            locks = locksFor(pos, end);
+            lockAll(locks, false);
+            try {
+                CountingInputStream countingInputStream = new CountingInputStream(new MappedInputStream(pos + HEADER_SIZE, end));
+                DataInputStream inputStream = new DataInputStream(countingInputStream);
+
+                // Read body
+                payload.read(inputStream);
+
+                // Read and verify count
+                long actualCount = HEADER_SIZE + countingInputStream.getCount();
+                long count = inputStream.readInt();
+                if (actualCount != count) {
+                    throw blockCorruptedException();
+                }
+            } finally {
+                unlockAll(locks, false);
+            }
+        }
+
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MemoryMappedBlockStore.this));
+        }
+    }
+
+    /**
+     * Reads a range of the file from the mapped regions, crossing region boundaries as required.
+     */
+    private class MappedInputStream extends InputStream {
+        private final long end;
+        private long pos;
+        private ByteBuffer current;
+
+        MappedInputStream(long start, long end) {
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            pos++;
+            return current.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            int count = (int) Math.min(Math.min(len, current.remaining()), end - pos);
+            current.get(b, off, count);
+            pos += count;
+            return count;
+        }
+
+        private boolean ensureAvailable() throws IOException {
+            if (pos >= end) {
+                return false;
+            }
+            if (current == null || !current.hasRemaining()) {
+                int index = (int) (pos / regionSize);
+                long regionStart = (long) index * regionSize;
+                current = region(index, Math.min(end, regionStart + regionSize));
+                current.position((int) (pos - regionStart));
+            }
+            return true;
+        }
+    }
+
+    private static class BlockBuffer extends ByteArrayOutputStream {
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,633 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured;
+
+import com.google.common.hash.Hashing;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.PersistentIndexedCacheStore;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.io.RandomAccessFileInputStream;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only, log structured indexed cache.
+ *
+ * <p>Entries are appended to segment files in a directory, so that updates are always sequential writes and never rewrite existing data. An in-memory index maps
+ * the hash of each key to the location of its latest record. When the active segment reaches its maximum size, a new segment is started. Once at least half of
+ * the sealed segments is made up of overwritten or removed entries, the live entries of the sealed segments are copied into a single new segment on a background
+ * thread, while the cache remains usable.</p>
+ *
+ * <p>The index is written to a hint file on close, so that it does not need to be rebuilt by scanning the segments the next time the cache is opened.
+ * Segments written after the hint file are scanned on open. Torn or corrupt records at the end of a segment are discarded.</p>
+ *
+ * <p>Record layout: {@code int bodyLength, body, int crc32(body)}, where the body is {@code long keyHash, byte kind, int keyLength, key, value}.</p>
+ */
+public class LogStructuredPersistentIndexedCache<K, V> implements PersistentIndexedCacheStore<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogStructuredPersistentIndexedCache.class);
+    private static final long DEFAULT_MAX_SEGMENT_SIZE = 32 * 1024 * 1024;
+    private static final int INDEX_FORMAT_VERSION = 1;
+    private static final String INDEX_FILE_NAME = "index.bin";
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 0;
+    private static final int RECORD_OVERHEAD = 4 + 4;
+    private static final int BODY_HEADER_SIZE = 8 + 1 + 4;
+
+    private final File dir;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final Executor compactionExecutor;
+    private final long maxSegmentSize;
+    private final Map<Long, RecordLocation> index = new HashMap<Long, RecordLocation>();
+    private final NavigableMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+    private final ByteArrayOutputStream serializeBuffer = new ByteArrayOutputStream();
+    private final KryoBackedEncoder serializeEncoder = new KryoBackedEncoder(serializeBuffer);
+    private Segment activeSegment;
+    private FutureTask<Void> compaction;
+
+    public LogStructuredPersistentIndexedCache(File dir, Serializer<K> keySerializer, Serializer<V> valueSerializer, Executor compactionExecutor) {
+        this(dir, keySerializer, valueSerializer, compactionExecutor, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    LogStructuredPersistentIndexedCache(File dir, Serializer<K> keySerializer, Serializer<V> valueSerializer, Executor compactionExecutor, long maxSegmentSize) {
+        this.dir = dir;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.compactionExecutor = compactionExecutor;
+        this.maxSegmentSize = maxSegmentSize;
+        try {
+            open();
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not open %s.", this), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cache " + dir.getName() + " (" + dir + ")";
+    }
+
+    private synchronized void open() throws IOException {
+        LOGGER.debug("Opening {}", this);
+        dir.mkdirs();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException(String.format("Could not list contents of %s.", dir));
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // Left over from an interrupted compaction or index write
+                file.delete();
+            } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                long seq = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(seq, new Segment(seq, file));
+            }
+        }
+
+        if (!loadIndex()) {
+            index.clear();
+            for (Segment segment : segments.values()) {
+                segment.length = 0;
+                segment.liveBytes = 0;
+            }
+        }
+        for (Segment segment : segments.values()) {
+            scan(segment);
+        }
+
+        if (segments.isEmpty()) {
+            activeSegment = newSegment(1);
+        } else {
+            activeSegment = segments.lastEntry().getValue();
+        }
+        maybeCompact();
+    }
+
+    @Nullable
+    public synchronized V get(K key) {
+        try {
+            byte[] keyBytes = serialize(keySerializer, key);
+            long hash = hash(keyBytes);
+            RecordLocation location = index.get(hash);
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer body = readBody(location);
+            if (body == null) {
+                LOGGER.warn("Corrupted record found in {} for entry '{}'. Discarding.", this, key);
+                index.remove(hash);
+                return null;
+            }
+            body.position(body.position() + 8 + 1);
+            int keyLength = body.getInt();
+            int keyStart = body.position();
+            if (keyLength != keyBytes.length || !ByteBuffer.wrap(body.array(), keyStart, keyLength).equals(ByteBuffer.wrap(keyBytes))) {
+                // Hash collision
+                return null;
+            }
+            int valueStart = keyStart + keyLength;
+            return valueSerializer.read(new KryoBackedDecoder(body.array(), valueStart, body.limit() - valueStart));
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not read entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    public synchronized void put(K key, V value) {
+        try {
+            byte[] keyBytes = serialize(keySerializer, key);
+            byte[] valueBytes = serialize(valueSerializer, value);
+            append(PUT, keyBytes, valueBytes);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+        }
+    }
+
+    public synchronized void remove(K key) {
+        try {
+            byte[] keyBytes = serialize(keySerializer, key);
+            if (!index.containsKey(hash(keyBytes))) {
+                return;
+            }
+            append(REMOVE, keyBytes, new byte[0]);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    public void close() {
+        LOGGER.debug("Closing {}", this);
+        // Wait without holding the lock, as the compaction needs it to install its result
+        waitForCompaction();
+        synchronized (this) {
+            try {
+                writeIndex();
+            } catch (Exception e) {
+                throw new UncheckedIOException(String.format("Could not write index of %s.", this), e);
+            } finally {
+                for (Segment segment : segments.values()) {
+                    segment.close();
+                }
+                segments.clear();
+                index.clear();
+            }
+        }
+    }
+
+    private void waitForCompaction() {
+        FutureTask<Void> compaction;
+        synchronized (this) {
+            compaction = this.compaction;
+        }
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } catch (ExecutionException e) {
+            LOGGER.warn("Could not compact {}.", this, e.getCause());
+        }
+    }
+
+    private void append(byte kind, byte[] keyBytes, byte[] valueBytes) throws IOException {
+        long hash = hash(keyBytes);
+        int bodyLength = BODY_HEADER_SIZE + keyBytes.length + valueBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + bodyLength);
+        record.putInt(bodyLength);
+        record.putLong(hash);
+        record.put(kind);
+        record.putInt(keyBytes.length);
+        record.put(keyBytes);
+        record.put(valueBytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, bodyLength);
+        record.putInt((int) crc.getValue());
+
+        Segment segment = activeSegment;
+        long offset = segment.length;
+        RandomAccessFile file = segment.access();
+        file.seek(offset);
+        file.write(record.array());
+        segment.length += record.capacity();
+        apply(segment, offset, record.capacity(), hash, kind);
+
+        if (segment.length >= maxSegmentSize) {
+            activeSegment = newSegment(segment.seq + 1);
+            maybeCompact();
+        }
+    }
+
+    /**
+     * Updates the index with a record found in or appended to the given segment.
+     */
+    private void apply(Segment segment, long offset, int length, long hash, byte kind) {
+        RecordLocation previous = index.remove(hash);
+        if (previous != null) {
+            Segment previousSegment = segments.get(previous.segment);
+            if (previousSegment != null) {
+                previousSegment.liveBytes -= previous.length;
+            }
+        }
+        if (kind == PUT) {
+            index.put(hash, new RecordLocation(segment.seq, offset, length));
+            segment.liveBytes += length;
+        }
+    }
+
+    /**
+     * Reads the record at the given location, returning a buffer positioned at the start of the record body, or null when the record is corrupt.
+     */
+    @Nullable
+    private ByteBuffer readBody(RecordLocation location) throws IOException {
+        Segment segment = segments.get(location.segment);
+        RandomAccessFile file = segment.access();
+        byte[] record = new byte[location.length];
+        file.seek(location.offset);
+        file.readFully(record);
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        int bodyLength = buffer.getInt();
+        if (bodyLength != location.length - RECORD_OVERHEAD) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 4, bodyLength);
+        buffer.position(4 + bodyLength);
+        if (buffer.getInt() != (int) crc.getValue()) {
+            return null;
+        }
+        return ByteBuffer.wrap(record, 4, bodyLength);
+    }
+
+    /**
+     * Reads the records of the given segment that are not yet included in the index. Discards the remainder of the segment when a corrupt record is found.
+     */
+    private void scan(Segment segment) throws IOException {
+        RandomAccessFile file = segment.access();
+        long fileLength = file.length();
+        long offset = segment.length;
+        if (offset >= fileLength) {
+            return;
+        }
+        file.seek(offset);
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new RandomAccessFileInputStream(file)));
+        CRC32 crc = new CRC32();
+        while (offset < fileLength) {
+            int bodyLength;
+            byte[] body;
+            int checksum;
+            try {
+                bodyLength = inputStream.readInt();
+                if (bodyLength < BODY_HEADER_SIZE || offset + RECORD_OVERHEAD + bodyLength > fileLength) {
+                    break;
+                }
+                body = new byte[bodyLength];
+                inputStream.readFully(body);
+                checksum = inputStream.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            crc.reset();
+            crc.update(body);
+            if (checksum != (int) crc.getValue()) {
+                break;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            long hash = buffer.getLong();
+            byte kind = buffer.get();
+            int length = RECORD_OVERHEAD + bodyLength;
+            apply(segment, offset, length, hash, kind);
+            offset += length;
+        }
+        if (offset < fileLength) {
+            LOGGER.warn("{} contains a corrupt record in segment {}. Discarding the remainder of the segment.", this, segment.file.getName());
+            file.setLength(offset);
+        }
+        segment.length = offset;
+    }
+
+    private Segment newSegment(long seq) throws IOException {
+        Segment segment = new Segment(seq, new File(dir, String.format("%016d%s", seq, SEGMENT_SUFFIX)));
+        segment.access().setLength(0);
+        segments.put(seq, segment);
+        return segment;
+    }
+
+    /**
+     * Starts compacting the sealed segments in the background, when at least half of their content is garbage.
+     */
+    private void maybeCompact() {
+        if (compaction != null && !compaction.isDone()) {
+            return;
+        }
+        final List<Segment> sealed = new ArrayList<Segment>(segments.headMap(activeSegment.seq, false).values());
+        if (sealed.isEmpty()) {
+            return;
+        }
+        long totalBytes = 0;
+        long liveBytes = 0;
+        for (Segment segment : sealed) {
+            totalBytes += segment.length;
+            liveBytes += segment.liveBytes;
+        }
+        if (liveBytes * 2 > totalBytes) {
+            return;
+        }
+
+        final Segment target = sealed.get(sealed.size() - 1);
+        final Map<Long, RecordLocation> liveRecords = new HashMap<Long, RecordLocation>();
+        for (Map.Entry<Long, RecordLocation> entry : index.entrySet()) {
+            if (entry.getValue().segment <= target.seq) {
+                liveRecords.put(entry.getKey(), entry.getValue());
+            }
+        }
+        LOGGER.debug("Compacting {} segments of {}", sealed.size(), this);
+        compaction = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                compact(sealed, target, liveRecords);
+                return null;
+            }
+        });
+        compactionExecutor.execute(compaction);
+    }
+
+    /**
+     * Copies the given live records of the sealed segments into a new segment, then replaces the sealed segments with it. Sealed segments are never modified,
+     * so the copy is made without holding the lock.
+     */
+    private void compact(List<Segment> sealed, Segment target, Map<Long, RecordLocation> liveRecords) throws IOException {
+        List<Map.Entry<Long, RecordLocation>> records = new ArrayList<Map.Entry<Long, RecordLocation>>(liveRecords.entrySet());
+        Collections.sort(records, new Comparator<Map.Entry<Long, RecordLocation>>() {
+            @Override
+            public int compare(Map.Entry<Long, RecordLocation> o1, Map.Entry<Long, RecordLocation> o2) {
+                return o1.getValue().compareTo(o2.getValue());
+            }
+        });
+
+        File tempFile = new File(dir, target.file.getName() + TEMP_SUFFIX);
+        Map<Long, RecordLocation> moved = new HashMap<Long, RecordLocation>(records.size());
+        Map<Long, File> segmentFiles = new HashMap<Long, File>();
+        for (Segment segment : sealed) {
+            segmentFiles.put(segment.seq, segment.file);
+        }
+        Map<Long, RandomAccessFile> readers = new HashMap<Long, RandomAccessFile>();
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            long offset = 0;
+            byte[] record = new byte[0];
+            for (Map.Entry<Long, RecordLocation> entry : records) {
+                RecordLocation location = entry.getValue();
+                RandomAccessFile reader = readers.get(location.segment);
+                if (reader == null) {
+                    reader = new RandomAccessFile(segmentFiles.get(location.segment), "r");
+                    readers.put(location.segment, reader);
+                }
+                if (record.length < location.length) {
+                    record = new byte[location.length];
+                }
+                reader.seek(location.offset);
+                reader.readFully(record, 0, location.length);
+                outputStream.write(record, 0, location.length);
+                moved.put(entry.getKey(), new RecordLocation(target.seq, offset, location.length));
+                offset += location.length;
+            }
+        } finally {
+            outputStream.close();
+            for (RandomAccessFile reader : readers.values()) {
+                reader.close();
+            }
+        }
+
+        synchronized (this) {
+            install(sealed, target, tempFile, moved);
+        }
+    }
+
+    private void install(List<Segment> sealed, Segment target, File tempFile, Map<Long, RecordLocation> moved) throws IOException {
+        for (Segment segment : sealed) {
+            segment.close();
+            segments.remove(segment.seq);
+        }
+        // Delete the older segments first, so that an interrupted compaction can lose entries but never resurrect removed ones
+        for (Segment segment : sealed) {
+            if (segment != target) {
+                segment.file.delete();
+            }
+        }
+        target.file.delete();
+        if (!tempFile.renameTo(target.file)) {
+            // Forget everything that lived in the sealed segments
+            List<Long> lost = new ArrayList<Long>();
+            for (Map.Entry<Long, RecordLocation> entry : index.entrySet()) {
+                if (entry.getValue().segment <= target.seq) {
+                    lost.add(entry.getKey());
+                }
+            }
+            index.keySet().removeAll(lost);
+            throw new IOException(String.format("Could not rename %s to %s.", tempFile, target.file));
+        }
+
+        Segment compacted = new Segment(target.seq, target.file);
+        segments.put(compacted.seq, compacted);
+        for (Map.Entry<Long, RecordLocation> entry : moved.entrySet()) {
+            RecordLocation current = index.get(entry.getKey());
+            RecordLocation location = entry.getValue();
+            if (current != null && current.segment <= target.seq) {
+                index.put(entry.getKey(), location);
+                compacted.liveBytes += location.length;
+            }
+        }
+        compacted.length = compacted.file.length();
+    }
+
+    /**
+     * Loads the index written when the cache was last closed, and discards the hint file so that it is never used once the segments have changed.
+     */
+    private boolean loadIndex() {
+        File indexFile = new File(dir, INDEX_FILE_NAME);
+        if (!indexFile.isFile()) {
+            return false;
+        }
+        try {
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (inputStream.readInt() != INDEX_FORMAT_VERSION) {
+                    return false;
+                }
+                int segmentCount = inputStream.readInt();
+                long maxSeq = 0;
+                for (int i = 0; i < segmentCount; i++) {
+                    long seq = inputStream.readLong();
+                    long length = inputStream.readLong();
+                    long liveBytes = inputStream.readLong();
+                    Segment segment = segments.get(seq);
+                    if (segment == null || segment.file.length() < length) {
+                        return false;
+                    }
+                    segment.length = length;
+                    segment.liveBytes = liveBytes;
+                    maxSeq = Math.max(maxSeq, seq);
+                }
+                if (segments.headMap(maxSeq, true).size() != segmentCount) {
+                    return false;
+                }
+                int entryCount = inputStream.readInt();
+                for (int i = 0; i < entryCount; i++) {
+                    long hash = inputStream.readLong();
+                    long seq = inputStream.readLong();
+                    long offset = inputStream.readLong();
+                    int length = inputStream.readInt();
+                    index.put(hash, new RecordLocation(seq, offset, length));
+                }
+                return true;
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not read index of {}. Rebuilding.", this, e);
+            return false;
+        } finally {
+            indexFile.delete();
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        File indexFile = new File(dir, INDEX_FILE_NAME);
+        File tempFile = new File(dir, INDEX_FILE_NAME + TEMP_SUFFIX);
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            outputStream.writeInt(INDEX_FORMAT_VERSION);
+            outputStream.writeInt(segments.size());
+            for (Segment segment : segments.values()) {
+                outputStream.writeLong(segment.seq);
+                outputStream.writeLong(segment.length);
+                outputStream.writeLong(segment.liveBytes);
+            }
+            outputStream.writeInt(index.size());
+            for (Map.Entry<Long, RecordLocation> entry : index.entrySet()) {
+                RecordLocation location = entry.getValue();
+                outputStream.writeLong(entry.getKey());
+                outputStream.writeLong(location.segment);
+                outputStream.writeLong(location.offset);
+                outputStream.writeInt(location.length);
+            }
+        } finally {
+            outputStream.close();
+        }
+        indexFile.delete();
+        if (!tempFile.renameTo(indexFile)) {
+            throw new IOException(String.format("Could not rename %s to %s.", tempFile, indexFile));
+        }
+    }
+
+    private <T> byte[] serialize(Serializer<T> serializer, T value) throws Exception {
+        serializeBuffer.reset();
+        serializer.write(serializeEncoder, value);
+        serializeEncoder.flush();
+        return serializeBuffer.toByteArray();
+    }
+
+    private static long hash(byte[] keyBytes) {
+        return Hashing.md5().hashBytes(keyBytes).asLong();
+    }
+
+    private static class RecordLocation implements Comparable<RecordLocation> {
+        final long segment;
+        final long offset;
+        final int length;
+
+        RecordLocation(long segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(RecordLocation other) {
+            if (segment != other.segment) {
+                return segment < other.segment ? -1 : 1;
+            }
+            return offset < other.offset ? -1 : (offset == other.offset ? 0 : 1);
+        }
+    }
+
+    private static class Segment {
+        final long seq;
+        final File file;
+        long length;
+        long liveBytes;
+        private RandomAccessFile access;
+
+        Segment(long seq, File file) {
+            this.seq = seq;
+            this.file = file;
+        }
+
+        RandomAccessFile access() throws IOException {
+            if (access == null) {
+                access = new RandomAccessFile(file, "rw");
+            }
+            return access;
+        }
+
+        void close() {
+            if (access != null) {
+                try {
+                    access.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    access = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree
+
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+class MemoryMappedBlockStoreTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def cacheFile = tmpDir.file("cache.bin")
+
+    def "persists entries spanning multiple mapped regions"() {
+        def cache = mappedCache(64)
+
+        when:
+        (1..200).each { cache.put("key_$it".toString(), "value_$it".toString()) }
+
+        then:
+        (1..200).every { cache.get("key_$it".toString()) == "value_$it".toString() }
+        cache.verify()
+
+        when:
+        cache.reset()
+
+        then:
+        (1..200).every { cache.get("key_$it".toString()) == "value_$it".toString() }
+        cache.get("unknown") == null
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "uses the same file format as the file backed store"() {
+        def cache = mappedCache(128)
+        (1..50).each { cache.put("key_$it".toString(), "value_$it".toString()) }
+        cache.close()
+
+        when:
+        def fileBacked = new BTreePersistentIndexedCache<String, String>(cacheFile, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER)
+        fileBacked.put("key_51", "value_51")
+        fileBacked.close()
+        cache = mappedCache(128)
+
+        then:
+        (1..51).every { cache.get("key_$it".toString()) == "value_$it".toString() }
+        cache.verify()
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "sees updates and removals made after region was mapped"() {
+        def cache = mappedCache(256)
+
+        when:
+        cache.put("a", "1")
+        cache.get("a")
+        cache.put("a", "a much longer value that does not fit in the original block")
+        cache.put("b", "2")
+        cache.remove("b")
+
+        then:
+        cache.get("a") == "a much longer value that does not fit in the original block"
+        cache.get("b") == null
+        cache.verify()
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "blocks written concurrently do not overlap"() {
+        def store = new MemoryMappedBlockStore(cacheFile, 64)
+        store.open({} as Runnable, { type -> new TestBlock() } as BlockStore.Factory)
+        def written = new CopyOnWriteArrayList<TestBlock>()
+
+        when:
+        def threads = (1..8).collect { thread ->
+            Thread.start {
+                (1..50).each {
+                    def block = new TestBlock(value: "thread_${thread}_block_${it}".toString())
+                    store.attach(block)
+                    store.write(block)
+                    written << block
+                }
+            }
+        }
+        threads*.join()
+
+        then:
+        written.size() == 400
+        written.every { store.read(it.pos, TestBlock).value == it.value }
+
+        cleanup:
+        store?.close()
+    }
+
+    private static class TestBlock extends BlockPayload {
+        String value
+
+        @Override
+        protected int getSize() {
+            return 2 + value.length()
+        }
+
+        @Override
+        protected byte getType() {
+            return 0x7f
+        }
+
+        @Override
+        protected void read(DataInputStream inputStream) {
+            value = inputStream.readUTF()
+        }
+
+        @Override
+        protected void write(DataOutputStream outputStream) {
+            outputStream.writeUTF(value)
+        }
+    }
+
+    private BTreePersistentIndexedCache<String, String> mappedCache(int regionSize) {
+        return new BTreePersistentIndexedCache<String, String>(cacheFile, new MemoryMappedBlockStore(cacheFile, regionSize), BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER, (short) 4, 100)
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured
+
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+
+class LogStructuredPersistentIndexedCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def cacheDir = tmpDir.file("cache")
+    def executor = { Runnable r -> r.run() } as Executor
+
+    def "persists entries across reopen"() {
+        def cache = createCache()
+
+        when:
+        cache.put("a", "1")
+        cache.put("b", "2")
+        cache.put("a", "3")
+        cache.remove("b")
+
+        then:
+        cache.get("a") == "3"
+        cache.get("b") == null
+        cache.get("unknown") == null
+
+        when:
+        cache.close()
+        cache = createCache()
+
+        then:
+        cache.get("a") == "3"
+        cache.get("b") == null
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "rebuilds index from segments when index file is missing"() {
+        def cache = createCache()
+        (1..20).each { cache.put("key_$it".toString(), "value_$it".toString()) }
+        cache.remove("key_5")
+        cache.close()
+
+        when:
+        assert cacheDir.file("index.bin").delete()
+        cache = createCache()
+
+        then:
+        (1..20).every { it == 5 || cache.get("key_$it".toString()) == "value_$it".toString() }
+        cache.get("key_5") == null
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "discards torn record at end of segment"() {
+        def cache = createCache()
+        cache.put("a", "1")
+        cache.close()
+        cacheDir.file("index.bin").delete()
+        def segment = cacheDir.listFiles().find { it.name.endsWith(".segment") }
+        def length = segment.length()
+        segment << ([0, 0, 0, 100, 1, 2, 3] as byte[])
+
+        when:
+        cache = createCache()
+
+        then:
+        segment.length() == length
+        cache.get("a") == "1"
+
+        when:
+        cache.put("b", "2")
+
+        then:
+        cache.get("a") == "1"
+        cache.get("b") == "2"
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "compacts sealed segments once they are mostly garbage"() {
+        def cache = createCache(256)
+
+        when:
+        10.times { round ->
+            (1..10).each { cache.put("key_$it".toString(), "value_${it}_$round".toString()) }
+        }
+
+        then:
+        (1..10).every { cache.get("key_$it".toString()) == "value_${it}_9".toString() }
+        segmentFiles().size() < 10
+
+        when:
+        cache.close()
+        cache = createCache(256)
+
+        then:
+        (1..10).every { cache.get("key_$it".toString()) == "value_${it}_9".toString() }
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "does not resurrect removed entries after compaction"() {
+        def cache = createCache(128)
+
+        when:
+        cache.put("removed", "value")
+        cache.remove("removed")
+        20.times { cache.put("key_$it".toString(), "value_$it".toString()) }
+        20.times { cache.put("key_$it".toString(), "value_$it".toString()) }
+        cache.close()
+        cacheDir.file("index.bin").delete()
+        cache = createCache(128)
+
+        then:
+        cache.get("removed") == null
+        20.times { assert cache.get("key_$it".toString()) == "value_$it".toString() }
+
+        cleanup:
+        cache?.close()
+    }
+
+    private List<File> segmentFiles() {
+        cacheDir.listFiles().findAll { it.name.endsWith(".segment") }
+    }
+
+    private LogStructuredPersistentIndexedCache<String, String> createCache(long maxSegmentSize = 32 * 1024 * 1024) {
+        return new LogStructuredPersistentIndexedCache<String, String>(cacheDir, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER, executor, maxSegmentSize)
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.worker;
+
+import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+import org.gradle.api.internal.tasks.testing.WorkerTestClassProcessorFactory;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The messages sent to a test worker process that can run the tests of several test tasks, one after the other.
+ */
+public interface RemoteReusableTestClassProcessor {
+    /**
+     * Starts a session that runs tests with the processor created by the given factory. The given classpath is loaded in a class loader that is
+     * discarded at the end of the session. Does not block.
+     */
+    void startProcessing(WorkerTestClassProcessorFactory processorFactory, List<File> sessionClasspath);
+
+    /**
+     * Does not block.
+     */
+    void processTestClass(TestClassRunInfo testClass);
+
+    /**
+     * Ends the current session. The worker notifies {@link ReusableTestResultProcessor#processingStopped()} once the session has ended. Does not block.
+     */
+    void stop();
+
+    /**
+     * Stops the worker process. Does not block.
+     */
+    void stopWorker();
+}
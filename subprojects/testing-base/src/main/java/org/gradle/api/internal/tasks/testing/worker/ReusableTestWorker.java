@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.worker;
+
+import org.gradle.api.Action;
+import org.gradle.api.internal.tasks.testing.TestClassProcessor;
+import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+import org.gradle.api.internal.tasks.testing.WorkerTestClassProcessorFactory;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.classloader.ClassLoaderUtils;
+import org.gradle.internal.classloader.VisitableURLClassLoader;
+import org.gradle.internal.classpath.DefaultClassPath;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.dispatch.ContextClassLoaderProxy;
+import org.gradle.internal.id.IdGenerator;
+import org.gradle.internal.remote.ObjectConnection;
+import org.gradle.internal.service.DefaultServiceRegistry;
+import org.gradle.internal.time.Clock;
+import org.gradle.process.internal.worker.WorkerProcessContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A test worker that runs the tests of several test tasks, one after the other, in sessions.
+ *
+ * <p>The jar files of the test classpath are loaded by the application class loader of the worker process, and are shared by all sessions. The other
+ * entries of the classpath of a session are loaded in a new class loader, whose parent is the application class loader. Static state of classes
+ * from jar files is therefore kept between sessions, see {@link TestWorkerPool} for the consequences. The system properties of the worker process
+ * and its security manager are reset at the end of each session, so that a session does not see the changes made by the tests of earlier sessions.</p>
+ */
+public class ReusableTestWorker implements Action<WorkerProcessContext>, RemoteReusableTestClassProcessor, Serializable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReusableTestWorker.class);
+    private transient WorkerProcessContext workerProcessContext;
+    private transient CountDownLatch completed;
+    private transient ReusableTestResultProcessor resultProcessor;
+    private transient Properties systemProperties;
+    private transient ClassLoader sessionClassLoader;
+    private transient DefaultServiceRegistry testServices;
+    private transient TestClassProcessor processor;
+
+    @Override
+    public void execute(WorkerProcessContext workerProcessContext) {
+        LOGGER.info("{} started executing tests.", workerProcessContext.getDisplayName());
+
+        this.workerProcessContext = workerProcessContext;
+        completed = new CountDownLatch(1);
+
+        System.setProperty(TestWorker.WORKER_ID_SYS_PROPERTY, workerProcessContext.getWorkerId().toString());
+
+        ObjectConnection serverConnection = workerProcessContext.getServerConnection();
+        serverConnection.useParameterSerializers(TestEventSerializer.create());
+        resultProcessor = serverConnection.addOutgoing(ReusableTestResultProcessor.class);
+        serverConnection.addIncoming(RemoteReusableTestClassProcessor.class, this);
+        serverConnection.connect();
+
+        try {
+            completed.await();
+        } catch (InterruptedException e) {
+            throw new UncheckedException(e);
+        } finally {
+            LOGGER.info("{} finished executing tests.", workerProcessContext.getDisplayName());
+        }
+    }
+
+    @Override
+    public void startProcessing(WorkerTestClassProcessorFactory processorFactory, List<File> sessionClasspath) {
+        Thread.currentThread().setName("Test worker");
+        systemProperties = (Properties) System.getProperties().clone();
+        sessionClassLoader = new VisitableURLClassLoader(workerProcessContext.getApplicationClassLoader(), DefaultClassPath.of(sessionClasspath));
+        testServices = new TestWorker.TestFrameworkServiceRegistry(workerProcessContext);
+
+        TestClassProcessor targetProcessor = processorFactory.create(testServices);
+        IdGenerator<Object> idGenerator = testServices.get(IdGenerator.class);
+        targetProcessor = new WorkerTestClassProcessor(targetProcessor, idGenerator.generateId(),
+                workerProcessContext.getDisplayName(), testServices.get(Clock.class));
+        ContextClassLoaderProxy<TestClassProcessor> proxy = new ContextClassLoaderProxy<TestClassProcessor>(
+                TestClassProcessor.class, targetProcessor, sessionClassLoader);
+        processor = proxy.getSource();
+        processor.startProcessing(resultProcessor);
+    }
+
+    @Override
+    public void processTestClass(TestClassRunInfo testClass) {
+        Thread.currentThread().setName("Test worker");
+        try {
+            processor.processTestClass(testClass);
+        } finally {
+            // Clean the interrupted status
+            Thread.interrupted();
+        }
+    }
+
+    @Override
+    public void stop() {
+        Thread.currentThread().setName("Test worker");
+        try {
+            if (processor != null) {
+                processor.stop();
+            }
+        } finally {
+            try {
+                endSession();
+            } finally {
+                resultProcessor.processingStopped();
+            }
+        }
+    }
+
+    private void endSession() {
+        // Clean out any security manager the tests might have installed
+        System.setSecurityManager(null);
+        if (systemProperties != null) {
+            resetSystemProperties(systemProperties);
+        }
+        try {
+            CompositeStoppable.stoppable(testServices).stop();
+        } finally {
+            ClassLoaderUtils.tryClose(sessionClassLoader);
+            processor = null;
+            testServices = null;
+            sessionClassLoader = null;
+            systemProperties = null;
+        }
+    }
+
+    /**
+     * Restores the given system properties in place, as some code keeps a reference to the system properties object.
+     */
+    static void resetSystemProperties(Properties original) {
+        Properties current = System.getProperties();
+        for (Object key : new HashSet<Object>(current.keySet())) {
+            if (!original.containsKey(key)) {
+                current.remove(key);
+            }
+        }
+        for (Map.Entry<Object, Object> entry : original.entrySet()) {
+            if (!entry.getValue().equals(current.get(entry.getKey()))) {
+                current.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void stopWorker() {
+        completed.countDown();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.worker;
+
+import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent;
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal;
+import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.TestStartEvent;
+import org.gradle.api.internal.tasks.testing.WorkerTestClassProcessorFactory;
+import org.gradle.api.tasks.testing.TestOutputEvent;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.dispatch.StreamCompletion;
+import org.gradle.internal.remote.ObjectConnection;
+import org.gradle.process.internal.worker.WorkerProcess;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The client of a {@link ReusableTestWorker} process, which forwards the results of the current session to the result processor of the session.
+ */
+class ReusableTestWorkerClient implements ReusableTestResultProcessor, StreamCompletion, Stoppable {
+    private final Object key;
+    private final WorkerProcess workerProcess;
+    private final RemoteReusableTestClassProcessor remoteProcessor;
+    private final Object lock = new Object();
+    private volatile TestResultProcessor resultProcessor;
+    private boolean sessionRunning;
+    private boolean connectionLost;
+
+    ReusableTestWorkerClient(Object key, WorkerProcess workerProcess) {
+        this.key = key;
+        this.workerProcess = workerProcess;
+        ObjectConnection connection = workerProcess.getConnection();
+        connection.useParameterSerializers(TestEventSerializer.create());
+        connection.addIncoming(ReusableTestResultProcessor.class, this);
+        remoteProcessor = connection.addOutgoing(RemoteReusableTestClassProcessor.class);
+        connection.connect();
+    }
+
+    Object getKey() {
+        return key;
+    }
+
+    /**
+     * Returns true when this worker can run another session.
+     */
+    boolean isReusable() {
+        synchronized (lock) {
+            return !sessionRunning && !connectionLost;
+        }
+    }
+
+    /**
+     * Starts a session whose results are forwarded to the given processor, and returns the processor that sends the test classes to the worker.
+     */
+    RemoteTestClassProcessor startSession(WorkerTestClassProcessorFactory processorFactory, List<File> sessionClasspath, TestResultProcessor resultProcessor) {
+        synchronized (lock) {
+            if (sessionRunning) {
+                throw new IllegalStateException("A session is already running in this worker.");
+            }
+            sessionRunning = true;
+            this.resultProcessor = resultProcessor;
+        }
+        remoteProcessor.startProcessing(processorFactory, sessionClasspath);
+        return new RemoteTestClassProcessor() {
+            @Override
+            public void startProcessing() {
+            }
+
+            @Override
+            public void processTestClass(TestClassRunInfo testClass) {
+                remoteProcessor.processTestClass(testClass);
+            }
+
+            @Override
+            public void stop() {
+                remoteProcessor.stop();
+            }
+        };
+    }
+
+    /**
+     * Ends the current session, blocking until all results of the session have been received.
+     */
+    void stopSession() {
+        remoteProcessor.stop();
+        boolean failed;
+        synchronized (lock) {
+            while (sessionRunning && !connectionLost) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+            resultProcessor = null;
+            failed = sessionRunning;
+        }
+        if (failed) {
+            // The worker has gone away before the end of the session, report the reason why it stopped
+            workerProcess.waitForStop();
+        }
+    }
+
+    @Override
+    public void started(TestDescriptorInternal test, TestStartEvent event) {
+        resultProcessor.started(test, event);
+    }
+
+    @Override
+    public void completed(Object testId, TestCompleteEvent event) {
+        resultProcessor.completed(testId, event);
+    }
+
+    @Override
+    public void output(Object testId, TestOutputEvent event) {
+        resultProcessor.output(testId, event);
+    }
+
+    @Override
+    public void failure(Object testId, Throwable result) {
+        resultProcessor.failure(testId, result);
+    }
+
+    @Override
+    public void processingStopped() {
+        synchronized (lock) {
+            sessionRunning = false;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void endStream() {
+        synchronized (lock) {
+            connectionLost = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void stop() {
+        boolean running;
+        synchronized (lock) {
+            running = !connectionLost;
+        }
+        if (running) {
+            remoteProcessor.stopWorker();
+        }
+        workerProcess.waitForStop();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.worker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.gradle.api.logging.LogLevel;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.process.internal.JavaExecHandleBuilder;
+import org.gradle.process.internal.worker.WorkerProcess;
+import org.gradle.process.internal.worker.WorkerProcessBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps test worker processes alive between test tasks and builds, so that the tests of a later task can run in a warm JVM.
+ *
+ * <p>A worker is reused for a task when it was started with the same java command, the same shared packages and the same log level, and when
+ * the jar files on the application classpath of the worker have not changed since it was started. The other entries of the test classpath, such
+ * as the class directories of the projects, are loaded in a new class loader for each task by the {@link ReusableTestWorker}.</p>
+ *
+ * <p>Workers are reused when the {@value #REUSE_WORKERS_PROPERTY} system property is set to true. This is only safe for test suites that do not
+ * depend on the isolation of a fresh worker:</p>
+ * <ul>
+ * <li>Classes from jar files are shared by all the tasks that run in a worker, so static state held by these classes, such as caches and
+ * singletons of libraries, leaks from one task to the next.</li>
+ * <li>Classes from jar files cannot see the classes of the class directories, as these are loaded by a child class loader. Libraries that load
+ * classes by name through their own class loader, rather than through the context class loader, cannot find the classes under test.</li>
+ * </ul>
+ */
+public class TestWorkerPool implements Stoppable {
+    public static final String REUSE_WORKERS_PROPERTY = "org.gradle.internal.test.reuse-workers";
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestWorkerPool.class);
+    private static final int MAX_IDLE_WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private final boolean enabled;
+    private final Object lock = new Object();
+    private final LinkedList<ReusableTestWorkerClient> idleWorkers = new LinkedList<ReusableTestWorkerClient>();
+    private boolean stopped;
+
+    public TestWorkerPool() {
+        this(Boolean.getBoolean(REUSE_WORKERS_PROPERTY));
+    }
+
+    public TestWorkerPool(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reserves an idle worker that is compatible with the given builder, or starts a new worker using the builder.
+     */
+    ReusableTestWorkerClient reserve(WorkerProcessBuilder builder) {
+        Object key = new WorkerKey(builder);
+        List<ReusableTestWorkerClient> unusable = new ArrayList<ReusableTestWorkerClient>();
+        ReusableTestWorkerClient worker = null;
+        synchronized (lock) {
+            Iterator<ReusableTestWorkerClient> iterator = idleWorkers.iterator();
+            while (worker == null && iterator.hasNext()) {
+                ReusableTestWorkerClient candidate = iterator.next();
+                if (!candidate.isReusable()) {
+                    iterator.remove();
+                    unusable.add(candidate);
+                } else if (candidate.getKey().equals(key)) {
+                    iterator.remove();
+                    worker = candidate;
+                }
+            }
+        }
+        stopQuietly(unusable);
+        if (worker != null) {
+            LOGGER.debug("Reusing test worker process {}.", worker);
+            return worker;
+        }
+        WorkerProcess workerProcess = builder.build();
+        workerProcess.start();
+        return new ReusableTestWorkerClient(key, workerProcess);
+    }
+
+    /**
+     * Returns the given worker to the pool, once its session has ended. Stops the worker when it cannot be reused.
+     */
+    void release(ReusableTestWorkerClient worker) {
+        List<ReusableTestWorkerClient> toStop = new ArrayList<ReusableTestWorkerClient>();
+        synchronized (lock) {
+            if (stopped || !worker.isReusable()) {
+                toStop.add(worker);
+            } else {
+                idleWorkers.addLast(worker);
+                while (idleWorkers.size() > MAX_IDLE_WORKERS) {
+                    toStop.add(idleWorkers.removeFirst());
+                }
+            }
+        }
+        stopQuietly(toStop);
+    }
+
+    private static void stopQuietly(List<ReusableTestWorkerClient> workers) {
+        for (ReusableTestWorkerClient worker : workers) {
+            try {
+                worker.stop();
+            } catch (Exception e) {
+                LOGGER.debug("Could not stop test worker process.", e);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        List<ReusableTestWorkerClient> workers;
+        synchronized (lock) {
+            stopped = true;
+            workers = new ArrayList<ReusableTestWorkerClient>(idleWorkers);
+            idleWorkers.clear();
+        }
+        CompositeStoppable.stoppable(workers).stop();
+    }
+
+    private static class WorkerKey {
+        private final String executable;
+        private final List<String> jvmArgs;
+        private final File workingDir;
+        private final ImmutableMap<String, String> environment;
+        private final Set<String> sharedPackages;
+        private final List<ClasspathEntry> applicationClasspath;
+        private final LogLevel logLevel;
+
+        WorkerKey(WorkerProcessBuilder builder) {
+            JavaExecHandleBuilder javaCommand = builder.getJavaCommand();
+            executable = javaCommand.getExecutable();
+            jvmArgs = ImmutableList.copyOf(javaCommand.getAllJvmArgs());
+            workingDir = javaCommand.getWorkingDir();
+            environment = ImmutableMap.copyOf(javaCommand.getActualEnvironment());
+            sharedPackages = ImmutableSet.copyOf(builder.getSharedPackages());
+            ImmutableList.Builder<ClasspathEntry> classpath = ImmutableList.builder();
+            for (File file : builder.getApplicationClasspath()) {
+                classpath.add(new ClasspathEntry(file));
+            }
+            applicationClasspath = classpath.build();
+            logLevel = builder.getLogLevel();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            WorkerKey other = (WorkerKey) o;
+            return executable.equals(other.executable)
+                && jvmArgs.equals(other.jvmArgs)
+                && workingDir.equals(other.workingDir)
+                && environment.equals(other.environment)
+                && sharedPackages.equals(other.sharedPackages)
+                && applicationClasspath.equals(other.applicationClasspath)
+                && logLevel == other.logLevel;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = executable.hashCode();
+            result = 31 * result + jvmArgs.hashCode();
+            result = 31 * result + applicationClasspath.hashCode();
+            return result;
+        }
+    }
+
+    /**
+     * A file on the application classpath, along with its size and modification time when the worker was started.
+     */
+    private static class ClasspathEntry {
+        private final File file;
+        private final long length;
+        private final long lastModified;
+
+        ClasspathEntry(File file) {
+            this.file = file;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ClasspathEntry other = (ClasspathEntry) o;
+            return length == other.length && lastModified == other.lastModified && file.equals(other.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return file.hashCode();
+        }
+    }
+}
@@ -29,10 +29,14 @@ import org.gradle.process.internal.JavaExecHandleBuilder
 import org.gradle.process.internal.worker.WorkerProcess
 import org.gradle.process.internal.worker.WorkerProcessBuilder
 import org.gradle.process.internal.worker.WorkerProcessFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
 import spock.lang.Specification
 import spock.lang.Subject
 
 class ForkingTestClassProcessorTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
     WorkerLeaseRegistry.WorkerLease workerLease = Mock(WorkerLeaseRegistry.WorkerLease)
     WorkerProcessFactory workerProcessFactory = Mock(WorkerProcessFactory)
     WorkerProcessBuilder workerProcessBuilder = Mock(WorkerProcessBuilder)
@@ -76,6 +80,41 @@ class ForkingTestClassProcessorTest extends Specification {
         1 * workerProcessBuilder.setImplementationClasspath(_) >> { assert it[0].size() == 16 }
     }
 
+    def "runs tests in a reusable worker when a worker pool is used"() {
+        given:
+        def pool = Mock(TestWorkerPool)
+        def worker = Mock(ReusableTestWorkerClient)
+        def remoteProcessor = Mock(RemoteTestClassProcessor)
+        def completion = Mock(WorkerLeaseRegistry.WorkerLeaseCompletion)
+        def test = Mock(TestClassRunInfo)
+        def jar = tmpDir.createFile("lib.jar")
+        def classesDir = tmpDir.createDir("classes")
+        def processor = new ForkingTestClassProcessor(workerLease, workerProcessFactory, Mock(WorkerTestClassProcessorFactory), Mock(JavaForkOptions), [jar, classesDir], Mock(Action), moduleRegistry, pool)
+        _ * moduleRegistry.getModule(_) >> { module(it[0]) }
+        _ * moduleRegistry.getExternalModule(_) >> { module(it[0]) }
+        _ * workerProcessBuilder.getJavaCommand() >> Stub(JavaExecHandleBuilder)
+
+        when:
+        processor.processTestClass(test)
+        processor.stop()
+
+        then:
+        1 * workerLease.startChild() >> completion
+        1 * workerProcessFactory.create({ it instanceof ReusableTestWorker }) >> workerProcessBuilder
+        1 * workerProcessBuilder.applicationClasspath([jar])
+        1 * pool.reserve(workerProcessBuilder) >> worker
+        1 * worker.startSession(_, [classesDir], _) >> remoteProcessor
+        1 * remoteProcessor.processTestClass(test)
+
+        then:
+        1 * worker.stopSession()
+
+        then:
+        1 * pool.release(worker)
+        1 * completion.leaseFinish()
+        0 * workerProcessBuilder.build()
+    }
+
     def module(String module) {
         return Stub(Module) {
             _ * getImplementationClasspath() >> {
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.worker
+
+import org.gradle.api.internal.tasks.testing.TestClassProcessor
+import org.gradle.api.internal.tasks.testing.TestClassRunInfo
+import org.gradle.api.internal.tasks.testing.WorkerTestClassProcessorFactory
+import org.gradle.internal.remote.ObjectConnection
+import org.gradle.internal.service.DefaultServiceRegistry
+import org.gradle.internal.time.Clock
+import org.gradle.internal.time.Time
+import org.gradle.process.internal.worker.WorkerProcessContext
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+
+class ReusableTestWorkerTest extends Specification {
+    @Rule
+    SetSystemProperties properties = new SetSystemProperties()
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def workerContext = Mock(WorkerProcessContext)
+    def connection = Mock(ObjectConnection)
+    def resultProcessor = Mock(ReusableTestResultProcessor)
+    def factory = Mock(WorkerTestClassProcessorFactory)
+    def processor = Mock(TestClassProcessor)
+    def test = Mock(TestClassRunInfo)
+    def worker = new ReusableTestWorker()
+    def serviceRegistry = new DefaultServiceRegistry().add(Clock, Time.clock())
+
+    def setup() {
+        workerContext.workerId >> "<worker-id>"
+        workerContext.displayName >> "<worker>"
+        workerContext.serverConnection >> connection
+        workerContext.serviceRegistry >> serviceRegistry
+        workerContext.applicationClassLoader >> getClass().classLoader
+    }
+
+    def "runs each session in a new class loader and resets system properties at the end of each session"() {
+        given:
+        def classesDir = tmpDir.createDir("classes")
+        def sessionClassLoaders = []
+
+        when:
+        worker.execute(workerContext)
+
+        then:
+        1 * connection.addOutgoing(ReusableTestResultProcessor) >> resultProcessor
+        1 * connection.addIncoming(RemoteReusableTestClassProcessor, worker)
+        1 * connection.connect() >> {
+            worker.startProcessing(factory, [classesDir])
+            worker.processTestClass(test)
+            worker.stop()
+            worker.startProcessing(factory, [classesDir])
+            worker.stop()
+            worker.stopWorker()
+        }
+        2 * factory.create(_) >> processor
+        2 * processor.startProcessing(_) >> {
+            sessionClassLoaders << Thread.currentThread().contextClassLoader
+            System.setProperty("some.property", "value")
+            System.setProperty(TestWorker.WORKER_ID_SYS_PROPERTY, "changed")
+        }
+        1 * processor.processTestClass(test)
+        2 * processor.stop()
+        2 * resultProcessor.processingStopped()
+
+        and:
+        sessionClassLoaders.size() == 2
+        sessionClassLoaders[0] != sessionClassLoaders[1]
+        sessionClassLoaders.every { it.URLs as List == [classesDir.toURI().toURL()] && it.parent == getClass().classLoader }
+        System.getProperty("some.property") == null
+        System.getProperty(TestWorker.WORKER_ID_SYS_PROPERTY) == "<worker-id>"
+    }
+
+    def "resets system properties in place"() {
+        given:
+        def systemProperties = System.properties
+        System.setProperty("removed.property", "value")
+        System.setProperty("changed.property", "original")
+        def original = System.properties.clone() as Properties
+        System.clearProperty("removed.property")
+        System.setProperty("changed.property", "changed")
+        System.setProperty("added.property", "value")
+
+        when:
+        ReusableTestWorker.resetSystemProperties(original)
+
+        then:
+        System.properties.is(systemProperties)
+        System.getProperty("removed.property") == "value"
+        System.getProperty("changed.property") == "original"
+        System.getProperty("added.property") == null
+    }
+}
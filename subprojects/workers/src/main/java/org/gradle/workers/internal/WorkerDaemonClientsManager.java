@@ -29,6 +29,7 @@ import org.gradle.internal.logging.LoggingManagerInternal;
 import org.gradle.internal.logging.events.LogLevelChangeEvent;
 import org.gradle.internal.logging.events.OutputEvent;
 import org.gradle.internal.logging.events.OutputEventListener;
+import org.gradle.process.internal.health.memory.MemoryAmount;
 import org.gradle.util.CollectionUtils;
 
 import java.util.ArrayList;
@@ -36,9 +37,17 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
+/**
+ * Keeps track of the worker daemons and hands out idle worker daemons that are compatible with the requested fork options.
+ *
+ * <p>When several idle worker daemons are compatible, the one that uses the least memory is reused, so that larger worker daemons remain
+ * available for the requests that need them. When a limit is set for the total memory used by the worker daemons, idle worker daemons are
+ * stopped in least recently used order to stay under the limit, before a new worker daemon is started and when a worker daemon becomes idle.</p>
+ */
 public class WorkerDaemonClientsManager implements Stoppable {
 
     private static final Logger LOGGER = Logging.getLogger(WorkerDaemonClientsManager.class);
+    public static final String MAX_POOL_MEMORY_PROPERTY = "org.gradle.workers.internal.max-pool-memory";
 
     private final Object lock = new Object();
     private final List<WorkerDaemonClient> allClients = new ArrayList<WorkerDaemonClient>();
@@ -49,10 +58,21 @@ public class WorkerDaemonClientsManager implements Stoppable {
     private final LoggingManagerInternal loggingManager;
     private final SessionLifecycleListener stopSessionScopeWorkers;
     private final OutputEventListener logLevelChangeEventListener;
+    private final WorkerDaemonMemoryEstimator memoryEstimator;
+    private final long maxPoolMemory;
     private LogLevel currentLogLevel;
 
     public WorkerDaemonClientsManager(WorkerDaemonStarter workerDaemonStarter, ListenerManager listenerManager, LoggingManagerInternal loggingManager) {
+        this(workerDaemonStarter, listenerManager, loggingManager, new WorkerDaemonMemoryEstimator(WorkerDaemonMemoryEstimator.getTotalPhysicalMemory()), MemoryAmount.parseNotation(System.getProperty(MAX_POOL_MEMORY_PROPERTY)));
+    }
+
+    /**
+     * @param maxPoolMemory the maximum memory in bytes used by all worker daemons, or -1 for no limit.
+     */
+    WorkerDaemonClientsManager(WorkerDaemonStarter workerDaemonStarter, ListenerManager listenerManager, LoggingManagerInternal loggingManager, WorkerDaemonMemoryEstimator memoryEstimator, long maxPoolMemory) {
         this.workerDaemonStarter = workerDaemonStarter;
+        this.memoryEstimator = memoryEstimator;
+        this.maxPoolMemory = maxPoolMemory;
         this.listenerManager = listenerManager;
         this.loggingManager = loggingManager;
         this.stopSessionScopeWorkers = new StopSessionScopedWorkers();
@@ -69,25 +89,50 @@ public class WorkerDaemonClientsManager implements Stoppable {
 
     WorkerDaemonClient reserveIdleClient(DaemonForkOptions forkOptions, List<WorkerDaemonClient> clients) {
         synchronized (lock) {
+            List<WorkerDaemonClient> candidates = new ArrayList<WorkerDaemonClient>();
             Iterator<WorkerDaemonClient> it = clients.iterator();
             while (it.hasNext()) {
                 WorkerDaemonClient candidate = it.next();
                 if (candidate.isCompatibleWith(forkOptions)) {
-                    it.remove();
                     if (candidate.getLogLevel() != currentLogLevel) {
                         // TODO: Send a message to workers to change their log level rather than stopping
                         LOGGER.info("Log level has changed, stopping idle worker daemon with out-of-date log level.");
+                        it.remove();
+                        allClients.remove(candidate);
                         candidate.stop();
                     } else {
-                        return candidate;
+                        candidates.add(candidate);
                     }
                 }
             }
-            return null;
+            if (candidates.isEmpty()) {
+                return null;
+            }
+            WorkerDaemonClient selected = candidates.size() == 1 ? candidates.get(0) : selectSmallestClient(candidates);
+            clients.remove(selected);
+            return selected;
+        }
+    }
+
+    private WorkerDaemonClient selectSmallestClient(List<WorkerDaemonClient> candidates) {
+        WorkerDaemonClient selected = null;
+        long selectedMemory = 0;
+        for (WorkerDaemonClient candidate : candidates) {
+            long memory = memoryEstimator.getMemoryUsage(candidate);
+            if (selected == null || memory < selectedMemory) {
+                selected = candidate;
+                selectedMemory = memory;
+            }
         }
+        return selected;
     }
 
     public WorkerDaemonClient reserveNewClient(Class<? extends WorkerProtocol<ActionExecutionSpec>> workerProtocolImplementationClass, DaemonForkOptions forkOptions) {
+        if (maxPoolMemory >= 0) {
+            synchronized (lock) {
+                stopIdleClientsOverLimit(memoryEstimator.getExpectedMemoryUsage(forkOptions));
+            }
+        }
         //allow the daemon to be started concurrently
         WorkerDaemonClient client = workerDaemonStarter.startDaemon(workerProtocolImplementationClass, forkOptions);
         synchronized (lock) {
@@ -99,6 +144,34 @@ public class WorkerDaemonClientsManager implements Stoppable {
     public void release(WorkerDaemonClient client) {
         synchronized (lock) {
             idleClients.add(client);
+            if (maxPoolMemory >= 0) {
+                stopIdleClientsOverLimit(0);
+            }
+        }
+    }
+
+    /**
+     * Stops idle clients, least recently used first, until the memory used by all clients plus the given memory fits in the limit.
+     * Clients that are in use are never stopped, so the limit may still be exceeded.
+     */
+    private void stopIdleClientsOverLimit(long requiredMemory) {
+        long usedMemory = 0;
+        for (WorkerDaemonClient client : allClients) {
+            usedMemory += memoryEstimator.getMemoryUsage(client);
+        }
+        long memoryToRelease = usedMemory + requiredMemory - maxPoolMemory;
+        List<WorkerDaemonClient> clientsToStop = new ArrayList<WorkerDaemonClient>();
+        // Idle clients are kept in the order they were released
+        for (WorkerDaemonClient idleClient : idleClients) {
+            if (memoryToRelease <= 0) {
+                break;
+            }
+            clientsToStop.add(idleClient);
+            memoryToRelease -= memoryEstimator.getMemoryUsage(idleClient);
+        }
+        if (!clientsToStop.isEmpty()) {
+            LOGGER.debug("Worker daemon pool uses {} MB, stopping {} idle worker daemon(s) to stay under the limit of {} MB.", usedMemory / 1024 / 1024, clientsToStop.size(), maxPoolMemory / 1024 / 1024);
+            stopWorkers(clientsToStop);
         }
     }
 
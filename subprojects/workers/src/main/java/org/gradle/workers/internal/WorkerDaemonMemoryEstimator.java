@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.workers.internal;
+
+import org.gradle.process.internal.health.memory.MaximumHeapHelper;
+import org.gradle.process.internal.health.memory.MemoryAmount;
+import org.gradle.process.internal.health.memory.TotalPhysicalMemoryProvider;
+
+/**
+ * Estimates the memory used by worker daemons.
+ */
+class WorkerDaemonMemoryEstimator {
+    private final long osTotalMemory;
+
+    WorkerDaemonMemoryEstimator(long osTotalMemory) {
+        this.osTotalMemory = osTotalMemory;
+    }
+
+    /**
+     * Returns the memory currently used by the given worker daemon in bytes, or 0 when it cannot be estimated.
+     */
+    long getMemoryUsage(WorkerDaemonClient client) {
+        // prefer to use the actual memory usage reported by the worker
+        try {
+            return client.getJvmMemoryStatus().getCommittedMemory();
+        } catch (UnsupportedOperationException e) {
+            // This means the client does not support reporting jvm memory info
+        } catch (IllegalStateException e) {
+            // This means the client has not reported memory usage yet
+        }
+
+        // if the worker has not reported memory usage yet for some reason, or does not support it,
+        // use the max heap as an approximation
+        return getExpectedMemoryUsage(client.getForkOptions());
+    }
+
+    /**
+     * Returns the memory that a worker daemon started with the given fork options is expected to use in bytes, or 0 when it cannot be estimated.
+     */
+    long getExpectedMemoryUsage(DaemonForkOptions forkOptions) {
+        String forkOptionsMaxHeapSize = forkOptions.getJavaForkOptions().getMaxHeapSize();
+        long parsed = MemoryAmount.parseNotation(forkOptionsMaxHeapSize);
+        if (parsed != -1) {
+            // From fork options
+            return parsed;
+        }
+
+        // If we don't know what the max heap is, approximate it based on OS total memory
+        // according to JVM documentation
+        if (osTotalMemory != -1) {
+            return new MaximumHeapHelper().getDefaultMaximumHeapSize(osTotalMemory);
+        }
+
+        // If we get here, we have no idea how much memory the worker is using
+        return 0;
+    }
+
+    static long getTotalPhysicalMemory() {
+        try {
+            return TotalPhysicalMemoryProvider.getTotalPhysicalMemory();
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+}
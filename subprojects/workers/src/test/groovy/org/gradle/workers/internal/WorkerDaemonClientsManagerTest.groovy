@@ -230,4 +230,77 @@ class WorkerDaemonClientsManagerTest extends ConcurrentSpecification {
         0 * client2.stop()
         1 * client3.stop()
     }
+
+    def "reuses the compatible idle client that uses the least memory"() {
+        def estimator = Stub(WorkerDaemonMemoryEstimator)
+        manager = new WorkerDaemonClientsManager(starter, listenerManager, loggingManager, estimator, -1)
+        def large = Stub(WorkerDaemonClient) { isCompatibleWith(_) >> true }
+        def small = Stub(WorkerDaemonClient) { isCompatibleWith(_) >> true }
+        def incompatible = Stub(WorkerDaemonClient) { isCompatibleWith(_) >> false }
+        estimator.getMemoryUsage(large) >> 2048
+        estimator.getMemoryUsage(small) >> 512
+        estimator.getMemoryUsage(incompatible) >> 256
+        def input = [large, incompatible, small]
+
+        expect:
+        manager.reserveIdleClient(options, input) == small
+        input == [large, incompatible]
+    }
+
+    def "stops least recently used idle clients to stay under the pool memory limit"() {
+        def estimator = Stub(WorkerDaemonMemoryEstimator)
+        manager = new WorkerDaemonClientsManager(starter, listenerManager, loggingManager, estimator, 2048)
+        def client1 = Mock(WorkerDaemonClient)
+        def client2 = Mock(WorkerDaemonClient)
+        def client3 = Mock(WorkerDaemonClient)
+        estimator.getMemoryUsage(_) >> 1024
+        estimator.getExpectedMemoryUsage(_) >> 1024
+        starter.startDaemon(serverImpl.class, options) >>> [client1, client2, client3]
+
+        when:
+        manager.reserveNewClient(serverImpl.class, options)
+        manager.reserveNewClient(serverImpl.class, options)
+        manager.release(client2)
+        manager.release(client1)
+
+        then:
+        0 * _.stop()
+
+        when:
+        manager.reserveNewClient(serverImpl.class, options)
+
+        then:
+        1 * client2.stop()
+        0 * client1.stop()
+
+        when:
+        manager.release(client3)
+
+        then:
+        0 * _.stop()
+    }
+
+    def "does not stop clients that are in use to stay under the pool memory limit"() {
+        def estimator = Stub(WorkerDaemonMemoryEstimator)
+        manager = new WorkerDaemonClientsManager(starter, listenerManager, loggingManager, estimator, 1024)
+        def client1 = Mock(WorkerDaemonClient)
+        def client2 = Mock(WorkerDaemonClient)
+        estimator.getMemoryUsage(_) >> 1024
+        estimator.getExpectedMemoryUsage(_) >> 1024
+        starter.startDaemon(serverImpl.class, options) >>> [client1, client2]
+
+        when:
+        manager.reserveNewClient(serverImpl.class, options)
+        manager.reserveNewClient(serverImpl.class, options)
+
+        then:
+        0 * _.stop()
+
+        when:
+        manager.release(client1)
+
+        then:
+        1 * client1.stop()
+        0 * client2.stop()
+    }
 }